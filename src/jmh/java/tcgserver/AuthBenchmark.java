@@ -0,0 +1,97 @@
+package tcgserver;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent authenticating a request with the previous implementation, which split the header with a regex and read
+ * the user from Mongo on every request, and with {@link UserAuthenticator}, which parses the header without a regex
+ * and caches the resolved user for {@code tcg.users.auth-cache-ttl}, or only verifies the signature of a signed token.
+ * Needs a running Mongo and uses a {@code tcg-benchmark} database that is dropped afterwards.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthBenchmark {
+    @State(Scope.Benchmark)
+    public static class Server {
+        ConfigurableApplicationContext context;
+        UserRepository userRepository;
+        UserAuthenticator userAuthenticator;
+        String header;
+        String signedHeader;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            context = SpringApplication.run(Main.class, "--server.port=0",
+                    "--spring.data.mongodb.database=tcg-benchmark", "--tcg.users.signed-tokens=true");
+            userRepository = context.getBean(UserRepository.class);
+            userAuthenticator = context.getBean(UserAuthenticator.class);
+            User user = new User("benchmark", User.passwordToHash("benchmark"));
+            userRepository.save(user);
+            user.refreshAuthToken();
+            userRepository.save(user);
+            header = "Bearer " + new String(Base64.encodeBase64((user.getId() + ":" + user.getAuthToken()).getBytes()));
+            User signedUser = User.ofToken(user.getId(), "", 0);
+            userAuthenticator.issueToken(signedUser);
+            signedHeader = "Bearer " + new String(Base64.encodeBase64((user.getId() + ":" + signedUser.getAuthToken()).getBytes()));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.getBeanProvider(MongoTemplate.class).ifAvailable(mongoTemplate -> mongoTemplate.getDb().drop());
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public User previous(Server server) {
+        String[] headerSplit = server.header.split("\\s+");
+        String[] credentials = new String(Base64.decodeBase64(headerSplit[1])).split(":");
+        Optional<User> userObject = server.userRepository.findById(credentials[0]);
+        if (!userObject.isPresent() || !userObject.get().getAuthToken().equals(credentials[1])
+                || userObject.get().getExpiresIn() <= System.currentTimeMillis()) {
+            throw new IllegalStateException("Request was not authorized");
+        }
+
+        return userObject.get();
+    }
+
+    @Benchmark
+    public User cached(Server server) {
+        return authorize(server.userAuthenticator, server.header);
+    }
+
+    @Benchmark
+    public User signed(Server server) {
+        return authorize(server.userAuthenticator, server.signedHeader);
+    }
+
+    private static User authorize(UserAuthenticator userAuthenticator, String header) {
+        User user = userAuthenticator.getAuthorizedUser(header);
+        if (user == null) {
+            throw new IllegalStateException("Request was not authorized");
+        }
+
+        return user;
+    }
+}
@@ -0,0 +1,48 @@
+package tcgserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class BenchmarkGames {
+    static final CardCatalog CATALOG;
+
+    static {
+        List<Card> cards = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            cards.add(new Card(0));
+        }
+
+        CATALOG = CardCatalog.of(cards);
+    }
+
+    private BenchmarkGames() {
+    }
+
+    // Zero mana cards keep both players alive, so games last as long as their decks
+    static Game create(int deckSize, boolean isDrawCardAtTurnStart) {
+        int[] deck = new int[Math.max(deckSize, Game.START_CARD_COUNT)];
+        for (int i = 0; i < deck.length; i++) {
+            deck[i] = i % CATALOG.size();
+        }
+
+        Game game = new Game(CATALOG, deck, isDrawCardAtTurnStart, 1);
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) {
+            game.addPlayer(new Player("player" + i, CATALOG, deck));
+        }
+
+        return game;
+    }
+
+    static Game createStarted(int actionCount) {
+        Game game = create(actionCount / 3 + Game.START_CARD_COUNT + 1, true);
+        game.start();
+        while (game.getActions().size() < actionCount) {
+            int player = game.getActivePlayer();
+            if (!game.addAction(new Game.Action(player, Game.ActionType.PLAY_CARD, 0))) {
+                game.addAction(new Game.Action(player));
+            }
+        }
+
+        return game;
+    }
+}
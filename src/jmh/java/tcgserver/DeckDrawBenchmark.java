@@ -0,0 +1,82 @@
+package tcgserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drawing a whole deck of {@code size} cards from a deck shuffled once at game start, and with the previous
+ * implementation, which allocated a {@link Random} per draw and removed the drawn card from an {@link ArrayList}. Both
+ * include creating the deck each draw starts from.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeckDrawBenchmark {
+    @State(Scope.Thread)
+    public static class Deck {
+        @Param({"30", "1000", "10000", "100000"})
+        int size;
+
+        List<Card> cards;
+        CardCatalog catalog;
+        int[] deck;
+        long seed;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            cards = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                cards.add(new Card(i % 10));
+            }
+
+            catalog = CardCatalog.of(cards);
+            deck = catalog.indicesOf(cards);
+        }
+    }
+
+    @Benchmark
+    public List<Card> previous(Deck state) {
+        ArrayList<Card> deck = new ArrayList<>(state.cards);
+        ArrayList<Card> hand = new ArrayList<>();
+        while (deck.size() > 0) {
+            Random random = new Random();
+            int randomCardIndex = random.nextInt(deck.size());
+            Card randomCard = deck.get(randomCardIndex);
+            deck.remove(randomCardIndex);
+            if (hand.size() < Player.MAX_HAND_SIZE) {
+                hand.add(randomCard);
+            }
+        }
+
+        return hand;
+    }
+
+    @Benchmark
+    public Player shuffled(Deck state) {
+        Player player = new Player("player", state.catalog, state.deck);
+        player.shuffleDeck(new SplittableRandom(state.seed++));
+        while (player.drawRandomCard()) {
+            // Draws until the deck is empty
+        }
+
+        return player;
+    }
+}
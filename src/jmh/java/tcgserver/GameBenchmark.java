@@ -0,0 +1,82 @@
+package tcgserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Game engine operations. Each invocation works on a freshly set up game so every operation sees the same state. The
+ * GC profiler also counts the allocations of that setup; the baseline benchmarks only consume the state, so their
+ * B/op is what to subtract.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+    private static final int DECK_SIZE = 30;
+
+    @State(Scope.Thread)
+    public static class NewGame {
+        Game game;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            game = BenchmarkGames.create(DECK_SIZE, true);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class StartedGame {
+        Game game;
+        int player;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            game = BenchmarkGames.create(DECK_SIZE, false);
+            game.start();
+            player = game.getActivePlayer();
+        }
+    }
+
+    @Benchmark
+    public Game baselineNewGame(NewGame state) {
+        return state.game;
+    }
+
+    @Benchmark
+    public Game baselineStartedGame(StartedGame state) {
+        return state.game;
+    }
+
+    @Benchmark
+    public boolean start(NewGame state) {
+        return state.game.start();
+    }
+
+    @Benchmark
+    public boolean addActionDrawCard(StartedGame state) {
+        return state.game.addAction(new Game.Action(state.player, Game.ActionType.DRAW_CARD));
+    }
+
+    @Benchmark
+    public boolean addActionPlayCard(StartedGame state) {
+        return state.game.addAction(new Game.Action(state.player, Game.ActionType.PLAY_CARD, 0));
+    }
+
+    @Benchmark
+    public boolean addActionSkip(StartedGame state) {
+        return state.game.addAction(new Game.Action(state.player));
+    }
+}
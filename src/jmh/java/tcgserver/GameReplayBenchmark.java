@@ -0,0 +1,107 @@
+package tcgserver;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How fast a game is rebuilt from a snapshot and its action log, as done by
+ * {@link GameRepositoryCustomImpl#findCurrentById} when {@code tcg.games.event-sourced} is enabled: decoding the
+ * snapshot alone, and decoding it and replaying {@code length} actions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameReplayBenchmark {
+    @State(Scope.Benchmark)
+    public static class Log {
+        @Param({"100", "1000", "10000"})
+        int length;
+
+        MappingMongoConverter converter;
+        Document snapshot;
+        CardCatalog catalog;
+        List<Game.Action> actions;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            MongoMappingContext mappingContext = new MongoMappingContext();
+            mappingContext.afterPropertiesSet();
+            converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+            converter.afterPropertiesSet();
+
+            Game game = createGame(length);
+            snapshot = new Document();
+            converter.write(game, snapshot);
+            catalog = game.getCatalog();
+            while (game.getActions().size() < length) {
+                playNextAction(game);
+            }
+
+            actions = game.getActions();
+        }
+    }
+
+    @Benchmark
+    public Game decode(Log log) {
+        return read(log);
+    }
+
+    @Benchmark
+    public Game rebuild(Log log) {
+        Game game = read(log);
+        if (!game.replay(log.actions, log.actions.size())) {
+            throw new IllegalStateException("Replay diverged from the recorded game");
+        }
+
+        return game;
+    }
+
+    // The catalog is attached as CardCatalogs does after the conversion, all the cards of the game are in the one catalog
+    private static Game read(Log log) {
+        Game game = log.converter.read(Game.class, log.snapshot);
+        game.setCatalogs(version -> log.catalog);
+        return game;
+    }
+
+    private static Game createGame(int length) {
+        List<Card> deck = new ArrayList<>();
+        for (int i = 0; i < length / 3 + Game.START_CARD_COUNT + 1; i++) {
+            deck.add(new Card(0));
+        }
+
+        Game game = new Game(deck, true, 1);
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) {
+            game.addPlayer(new Player("player" + i, deck, Collections.emptyList()));
+        }
+        game.start();
+        return game;
+    }
+
+    private static void playNextAction(Game game) {
+        int player = game.getActivePlayer();
+        if (!game.addAction(new Game.Action(player, Game.ActionType.PLAY_CARD, 0))) {
+            game.addAction(new Game.Action(player));
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package tcgserver;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained appends to the {@link MemoryJournal} and the time to recover from it. {@code save} plays the next action of
+ * one of {@code games} games and saves the game to the {@link MemoryStore}, with and without the journal, starting a
+ * new game whenever one ends. {@code recover} replays a journal of {@code actions} actions into an empty store. The
+ * journal syncs every {@code sync} milliseconds and rolls over at {@code segment} bytes.
+ */
+@Fork(1)
+public class JournalBenchmark {
+    @State(Scope.Thread)
+    public static class Games {
+        @Param({"false", "true"})
+        boolean journaled;
+
+        @Param({"100"})
+        int games;
+
+        @Param({"100"})
+        long sync;
+
+        @Param({"67108864"})
+        int segment;
+
+        MemoryStore store;
+        Path directory;
+        List<Game> playing;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws Exception {
+            // Each iteration starts without the documents of the previous one, whose promotion slows the collections
+            store = createStore();
+            directory = Files.createTempDirectory("tcg-journal");
+            if (journaled) {
+                createJournal(store, directory, segment, sync);
+            }
+
+            playing = new ArrayList<>();
+            for (int i = 0; i < games; i++) {
+                playing.add(store.save(createGame()));
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            store.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Journal {
+        @Param({"1000000"})
+        int actions;
+
+        @Param({"100"})
+        int games;
+
+        @Param({"100"})
+        long sync;
+
+        @Param({"67108864"})
+        int segment;
+
+        Path directory;
+        long journaledActions;
+        MemoryStore recovered;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            directory = Files.createTempDirectory("tcg-journal");
+            MemoryStore store = createStore();
+            createJournal(store, directory, segment, sync);
+            List<Game> playing = new ArrayList<>();
+            for (int i = 0; i < games; i++) {
+                playing.add(store.save(createGame()));
+            }
+
+            for (int i = 0; i < actions; i++) {
+                play(store, playing, i % games);
+            }
+
+            journaledActions = countActions(store);
+            store.close();
+        }
+
+        @Setup(Level.Invocation)
+        public void createEmptyStore() throws Exception {
+            recovered = createStore();
+        }
+
+        @TearDown(Level.Invocation)
+        public void checkRecovered() throws IOException {
+            long recoveredActions = countActions(recovered);
+            recovered.close();
+            recovered = null;
+            if (recoveredActions != journaledActions) {
+                throw new IllegalStateException("Recovered " + recoveredActions + " of " + journaledActions + " actions");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            delete(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public Game save(Games state) {
+        Game game = play(state.store, state.playing, state.next);
+        state.next = (state.next + 1) % state.games;
+        return game;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public MemoryJournal recover(Journal state) throws Exception {
+        return createJournal(state.recovered, state.directory, state.segment, state.sync);
+    }
+
+    // Returns the game that was played, a new one takes its place once it ended
+    private static Game play(MemoryStore store, List<Game> playing, int index) {
+        Game game = playing.get(index);
+        int player = game.getActivePlayer();
+        if (!game.addAction(new Game.Action(player, Game.ActionType.PLAY_CARD, 0))) {
+            game.addAction(new Game.Action(player));
+        }
+
+        store.save(game);
+        if (game.getState() == Game.GameState.END) {
+            playing.set(index, store.save(createGame()));
+        }
+
+        return game;
+    }
+
+    private static MemoryStore createStore() throws Exception {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        MemoryStore store = new MemoryStore();
+        ApplicationEventPublisher publisher = event -> {
+        };
+        ReflectionTestUtils.setField(store, "mongoConverter", converter);
+        ReflectionTestUtils.setField(store, "eventPublisher", publisher);
+        ReflectionTestUtils.setField(store, "snapshotPath", "");
+        store.init();
+        return store;
+    }
+
+    private static MemoryJournal createJournal(MemoryStore store, Path directory, int segmentSize, long syncInterval) throws Exception {
+        MemoryJournal journal = new MemoryJournal();
+        ReflectionTestUtils.setField(journal, "store", store);
+        ReflectionTestUtils.setField(journal, "path", directory.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", segmentSize);
+        ReflectionTestUtils.setField(journal, "syncInterval", syncInterval);
+        journal.init();
+        return journal;
+    }
+
+    private static long countActions(MemoryStore store) {
+        long count = 0;
+        for (Document game : store.findStoredAfter(Game.class, null)) {
+            count += ((List<?>) game.get("actions")).size();
+        }
+
+        return count;
+    }
+
+    private static Game createGame() {
+        List<Card> deck = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            deck.add(new Card(1 + i % 5));
+        }
+
+        Game game = new Game(deck);
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) {
+            game.addPlayer(new Player("player" + i, deck, Collections.emptyList()));
+        }
+        game.start();
+        return game;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        for (File file : directory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+
+        Files.delete(directory);
+    }
+}
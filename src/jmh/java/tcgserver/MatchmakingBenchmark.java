@@ -0,0 +1,111 @@
+package tcgserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * The time from enqueueing until the started game is handed back: for one pair of users while others are matched
+ * concurrently, and for thousands of users queued in one burst. The game store is a mock, so the numbers are for
+ * pairing and game setup, without Mongo.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchmakingBenchmark {
+    @State(Scope.Benchmark)
+    public static class Queue {
+        Matchmaker matchmaker;
+        final AtomicInteger userCount = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            List<Card> cards = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                cards.add(new Card(i % 10));
+            }
+
+            CardCatalogs cardCatalogs = mock(CardCatalogs.class);
+            when(cardCatalogs.getCurrent()).thenReturn(CardCatalog.of(cards));
+            // Invocations are not recorded, they would grow with every game
+            GameStore gameStore = mock(GameStore.class, withSettings().stubOnly());
+            when(gameStore.insert(any())).thenAnswer(invocation -> invocation.getArgument(0));
+            matchmaker = new Matchmaker();
+            ReflectionTestUtils.setField(matchmaker, "gameStore", gameStore);
+            ReflectionTestUtils.setField(matchmaker, "cardCatalogs", cardCatalogs);
+            ReflectionTestUtils.setField(matchmaker, "workerCount", 2);
+            matchmaker.init();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            matchmaker.close();
+        }
+
+        User createUser() {
+            return User.ofToken("user" + userCount.getAndIncrement(), "", 0);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Burst {
+        @Param({"1000", "5000", "20000"})
+        int userCount;
+
+        User[] users;
+
+        @Setup(Level.Invocation)
+        public void setUp(Queue queue) {
+            users = new User[userCount];
+            for (int i = 0; i < userCount; i++) {
+                users[i] = queue.createUser();
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Game matchPair(Queue queue) throws Exception {
+        CompletableFuture<Game> first = queue.matchmaker.enqueue(queue.createUser()).getMatch();
+        CompletableFuture<Game> second = queue.matchmaker.enqueue(queue.createUser()).getMatch();
+        first.get(10, TimeUnit.SECONDS);
+        return second.get(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public void matchBurst(Queue queue, Burst burst) throws Exception {
+        CompletableFuture<?>[] matches = new CompletableFuture<?>[burst.users.length];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = queue.matchmaker.enqueue(burst.users[i]).getMatch();
+        }
+
+        CompletableFuture.allOf(matches).get(60, TimeUnit.SECONDS);
+    }
+}
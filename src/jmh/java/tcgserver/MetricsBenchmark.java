@@ -0,0 +1,113 @@
+package tcgserver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.repository.Repository;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics on the hot path, against the Prometheus registry: an engine action with and without its timer,
+ * a repository call with and without the timing proxy of {@link RepositoryMetrics}, and a request timer with and
+ * without the histogram and percentiles configured for {@code http.server.requests}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    public interface CardCountRepository extends Repository<Card, String> {
+        long countByMana(int mana);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Metrics {
+        PrometheusMeterRegistry registry;
+        GameMetrics gameMetrics;
+        CardCountRepository repository;
+        CardCountRepository timedRepository;
+        Timer timer;
+        Timer histogramTimer;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+            gameMetrics = new GameMetrics();
+            ReflectionTestUtils.setField(gameMetrics, "meterRegistry", registry);
+            gameMetrics.init();
+
+            DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+            beanFactory.registerSingleton("meterRegistry", registry);
+            RepositoryMetrics repositoryMetrics = new RepositoryMetrics();
+            ReflectionTestUtils.setField(repositoryMetrics, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+            repository = mana -> mana;
+            timedRepository = (CardCountRepository) repositoryMetrics.postProcessAfterInitialization(repository, "cardCountRepository");
+
+            timer = registry.timer("benchmark.requests");
+            histogramTimer = Timer.builder("benchmark.requests.histogram")
+                    .publishPercentileHistogram()
+                    .publishPercentiles(0.5, 0.99, 0.999)
+                    .register(registry);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class StartedGame {
+        Game game;
+        int player;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            game = BenchmarkGames.create(30, false);
+            game.start();
+            player = game.getActivePlayer();
+        }
+    }
+
+    @Benchmark
+    public boolean addActionSkip(StartedGame state) {
+        return state.game.addAction(new Game.Action(state.player));
+    }
+
+    @Benchmark
+    public boolean addActionSkipTimed(Metrics metrics, StartedGame state) {
+        return metrics.gameMetrics.addAction(state.game, new Game.Action(state.player));
+    }
+
+    @Benchmark
+    public long repositoryCall(Metrics metrics) {
+        return metrics.repository.countByMana(3);
+    }
+
+    @Benchmark
+    public long repositoryCallTimed(Metrics metrics) {
+        return metrics.timedRepository.countByMana(3);
+    }
+
+    @Benchmark
+    public void requestTimer(Metrics metrics) {
+        metrics.timer.record(Duration.ofNanos(250_000));
+    }
+
+    @Benchmark
+    public void requestTimerWithHistogram(Metrics metrics) {
+        metrics.histogramTimer.record(Duration.ofNanos(250_000));
+    }
+}
@@ -0,0 +1,72 @@
+package tcgserver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Player operations on a freshly dealt player per invocation. As in {@link GameBenchmark}, subtract the B/op of
+ * {@link #baseline()} to get the allocation of the operation itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlayerBenchmark {
+    @Param({"30", "10000"})
+    private int deckSize;
+
+    private int[] deck;
+    private Player player;
+
+    @Setup(Level.Trial)
+    public void setUpDeck() {
+        deck = new int[deckSize];
+        for (int i = 0; i < deckSize; i++) {
+            deck[i] = i % BenchmarkGames.CATALOG.size();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpPlayer() {
+        player = new Player("player", BenchmarkGames.CATALOG, deck);
+        player.shuffleDeck(new SplittableRandom(1));
+        player.drawRandomCard();
+        player.addManaSlot();
+        player.fillMana();
+    }
+
+    @Benchmark
+    public Player baseline() {
+        return player;
+    }
+
+    @Benchmark
+    public boolean drawRandomCard() {
+        return player.drawRandomCard();
+    }
+
+    @Benchmark
+    public Card playCardAt() {
+        return player.playCardAt(0);
+    }
+
+    @Benchmark
+    public Player.PlayerSimple getSimple() {
+        return player.getSimple();
+    }
+}
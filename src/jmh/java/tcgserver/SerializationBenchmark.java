@@ -0,0 +1,59 @@
+package tcgserver;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The path of GET /api/games/{id}: building the {@link Game.GameSimple} view and writing it with an object mapper
+ * configured like Spring MVC's.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int actionCount;
+
+    private Game game;
+    private Game.GameSimple simple;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        game = BenchmarkGames.createStarted(actionCount);
+        simple = game.getSimple();
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Benchmark
+    public Game.GameSimple getSimple() {
+        return game.getSimple();
+    }
+
+    @Benchmark
+    public byte[] writeGameSimple() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(simple);
+    }
+
+    @Benchmark
+    public byte[] getSimpleAndWrite() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(game.getSimple());
+    }
+}
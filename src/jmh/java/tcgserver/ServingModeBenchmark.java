@@ -0,0 +1,125 @@
+package tcgserver;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requests per second of the servlet mode and of the {@code reactive} profile under many concurrent clients. Each
+ * request is one of a user read, a game read and an authorized player read, and a non-blocking client keeps a fixed
+ * number of them in flight. Failed requests are counted in {@code errors}. Client and server share the machine, so on
+ * few cores the numbers include the client's own work. Needs a running Mongo and uses a {@code tcg-benchmark} database
+ * that is dropped afterwards. The reactive mode needs the WebFlux server, so run it with {@code mvn -Pjmh,reactive}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServingModeBenchmark {
+    private static final int BATCH_REQUESTS = 8192;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"servlet", "reactive"})
+        String mode;
+
+        @Param({"64", "512", "2048"})
+        int concurrency;
+
+        ConfigurableApplicationContext context;
+        ConnectionProvider connectionProvider;
+        WebClient client;
+        String[] paths;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            if (mode.equals("reactive") && !ClassUtils.isPresent("tcgserver.ReactiveAPIController", null)) {
+                throw new IllegalStateException("The reactive mode needs the WebFlux server, run with mvn -Pjmh,reactive");
+            }
+
+            context = SpringApplication.run(Main.class, "--server.port=0", "--spring.data.mongodb.database=tcg-benchmark",
+                    "--spring.profiles.active=" + (mode.equals("reactive") ? "reactive" : "default"));
+            UserRepository userRepository = context.getBean(UserRepository.class);
+            User user = new User("benchmark", User.passwordToHash("benchmark"));
+            user.refreshAuthToken();
+            userRepository.save(user);
+            Game game = new Game(null, false);
+            game.addPlayer(user);
+            context.getBean(GameStore.class).insert(game);
+            String header = "Bearer " + new String(Base64.encodeBase64((user.getId() + ":" + user.getAuthToken()).getBytes()));
+            paths = new String[] {"/api/users/" + user.getId(), "/api/games/" + game.getId(), "/api/games/" + game.getId() + "/players/0"};
+
+            int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+            connectionProvider = ConnectionProvider.elastic("benchmark");
+            client = WebClient.builder()
+                    .baseUrl("http://localhost:" + port)
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                    .defaultHeader("Authorization", header)
+                    .build();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            connectionProvider.dispose();
+            context.getBeanProvider(MongoTemplate.class).ifAvailable(mongoTemplate -> mongoTemplate.getDb().drop());
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Errors {
+        public long errors;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            errors = 0;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_REQUESTS)
+    public void requests(Server server, Errors errors) {
+        AtomicInteger failed = new AtomicInteger();
+        Flux.range(0, BATCH_REQUESTS).flatMap(i -> server.client.get().uri(server.paths[i % server.paths.length]).exchange()
+                .flatMap(response -> {
+                    if (response.statusCode().isError()) {
+                        failed.incrementAndGet();
+                    }
+
+                    return response.bodyToMono(String.class);
+                })
+                .onErrorResume(e -> {
+                    failed.incrementAndGet();
+                    return Mono.empty();
+                }), server.concurrency).blockLast();
+        errors.errors += failed.get();
+    }
+}
@@ -0,0 +1,245 @@
+package tcgserver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full turn, from sending the action until the client has seen the new game state, for the REST API (POST the
+ * action, then GET the game as the polling client did) and for the game socket (send the action, then wait for both
+ * the result and the update). Both players skip until bleed out damage ends the game, and the next turns are played in
+ * a new game set up outside the measurement. Needs a running Mongo and uses a {@code tcg-benchmark} database that is
+ * dropped afterwards.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TurnLatencyBenchmark {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        ConfigurableApplicationContext context;
+        int port;
+        String baseUrl;
+        String[] tokens;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            context = SpringApplication.run(Main.class, "--server.port=0",
+                    "--spring.data.mongodb.database=tcg-benchmark", "--tcg.games.flush-delay=1000");
+            CardRepository cardRepository = context.getBean(CardRepository.class);
+            for (int i = 0; i < 30; i++) {
+                cardRepository.save(new Card(i % 10));
+            }
+
+            port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+            baseUrl = "http://localhost:" + port;
+            tokens = new String[] {createUser(), createUser()};
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.getBean(GameStore.class).flushAll();
+            context.getBeanProvider(MongoTemplate.class).ifAvailable(mongoTemplate -> mongoTemplate.getDb().drop());
+            context.close();
+        }
+
+        private String createUser() throws IOException {
+            JsonNode user = objectMapper.readTree(request("POST", "/api/users", null, "name=" + UUID.randomUUID() + "&password=benchmark"));
+            return new String(Base64.encodeBase64((user.get("id").asText() + ":" + user.get("authToken").asText()).getBytes()));
+        }
+
+        String createGame() throws IOException {
+            HttpURLConnection connection = open("POST", "/api/games", tokens[0]);
+            connection.getOutputStream().close();
+            String location = connection.getHeaderField("Location");
+            String gameId = location.substring(location.lastIndexOf('/') + 1);
+            read(connection);
+            for (int i = 1; i < tokens.length; i++) {
+                request("POST", "/api/games/" + gameId + "/players", tokens[i], "");
+            }
+
+            request("POST", "/api/games/" + gameId, tokens[0], "state=ACTIVE");
+            return gameId;
+        }
+
+        String request(String method, String path, String token, String form) throws IOException {
+            HttpURLConnection connection = open(method, path, token);
+            if (form != null) {
+                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(form.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            if (connection.getResponseCode() >= 400) {
+                throw new IllegalStateException(method + " " + path + " failed with " + connection.getResponseCode());
+            }
+
+            return read(connection);
+        }
+
+        private HttpURLConnection open(String method, String path, String token) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setRequestMethod(method);
+            connection.setInstanceFollowRedirects(false);
+            connection.setDoOutput(method.equals("POST"));
+            if (token != null) {
+                connection.setRequestProperty("Authorization", "Bearer " + token);
+            }
+
+            return connection;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RestGame {
+        String gameId;
+        JsonNode game;
+
+        @Setup(Level.Invocation)
+        public void setUp(Server server) throws IOException {
+            if (game == null || !game.get("state").asText().equals("ACTIVE")) {
+                gameId = server.createGame();
+                game = objectMapper.readTree(server.request("GET", "/api/games/" + gameId, null, null));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SocketGame {
+        WebSocketSession[] sessions;
+        // Only the first player's session is read, it gets the updates for both players' turns
+        final BlockingQueue<JsonNode> messages = new LinkedBlockingQueue<>();
+        JsonNode game;
+
+        @Setup(Level.Invocation)
+        public void setUp(Server server) throws Exception {
+            if (game == null || !game.get("state").asText().equals("ACTIVE")) {
+                close();
+                connect(server, server.createGame());
+                game = take(messages).get("data");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            if (sessions != null) {
+                for (WebSocketSession session : sessions) {
+                    session.close();
+                }
+            }
+
+            messages.clear();
+        }
+
+        private void connect(Server server, String gameId) throws Exception {
+            StandardWebSocketClient client = new StandardWebSocketClient();
+            sessions = new WebSocketSession[server.tokens.length];
+            for (int i = 0; i < sessions.length; i++) {
+                BlockingQueue<JsonNode> queue = i == 0 ? messages : new LinkedBlockingQueue<>();
+                WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+                headers.add(HttpHeaders.AUTHORIZATION, "Bearer " + server.tokens[i]);
+                sessions[i] = client.doHandshake(new TextWebSocketHandler() {
+                    @Override
+                    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+                        queue.add(objectMapper.readTree(message.getPayload()));
+                    }
+                }, headers, URI.create("ws://localhost:" + server.port + "/ws/games/" + gameId)).get(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Benchmark
+    public JsonNode restTurn(Server server, RestGame state) throws IOException {
+        int turn = state.game.get("turn").asInt();
+        int player = turn % server.tokens.length;
+        server.request("POST", "/api/games/" + state.gameId + "/actions", server.tokens[player], "type=SKIP&index=0&player=" + player);
+        state.game = objectMapper.readTree(server.request("GET", "/api/games/" + state.gameId, null, null));
+        if (state.game.get("turn").asInt() != turn + 1) {
+            throw new IllegalStateException("Turn was not played");
+        }
+
+        return state.game;
+    }
+
+    @Benchmark
+    public JsonNode socketTurn(SocketGame state) throws Exception {
+        int turn = state.game.get("turn").asInt();
+        WebSocketSession session = state.sessions[turn % state.sessions.length];
+        session.sendMessage(new TextMessage("{\"type\": \"SKIP\", \"index\": 0}"));
+        boolean isUpdated = false;
+        boolean hasResult = session != state.sessions[0];
+        while (!isUpdated || !hasResult) {
+            JsonNode message = take(state.messages);
+            if (message.get("event").asText().equals("update")) {
+                state.game = message.get("data");
+                isUpdated = state.game.get("turn").asInt() == turn + 1;
+            }
+            else if (message.get("event").asText().equals("result")) {
+                hasResult = true;
+            }
+        }
+
+        return state.game;
+    }
+
+    private static JsonNode take(BlockingQueue<JsonNode> messages) throws InterruptedException {
+        JsonNode message = messages.poll(5, TimeUnit.SECONDS);
+        if (message == null) {
+            throw new IllegalStateException("No message received");
+        }
+
+        return message;
+    }
+
+    // The body is always read to the end, so the connection is kept alive for the next request
+    private static String read(HttpURLConnection connection) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                body.write(buffer, 0, n);
+            }
+        }
+
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
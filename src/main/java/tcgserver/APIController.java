@@ -1,24 +1,37 @@
 package tcgserver;
 
-import org.apache.commons.codec.binary.Base64;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.test.annotation.Commit;
-import org.springframework.test.context.ActiveProfiles;
+import org.springframework.context.annotation.Profile;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
+@Profile("!reactive")
 public class APIController {
-    public class APIException extends Exception {
+    public static class APIException extends Exception {
         private HttpStatus status;
         public APIException(HttpStatus status, String message) {
             super(message);
@@ -33,12 +46,47 @@ public class APIController {
     @Autowired
     private GameRepository gameRepository;
 
+    @Autowired
+    private GameStore gameStore;
+
+    @Autowired
+    private GameEvents gameEvents;
+
     @Autowired
     private CardRepository cardRepository;
 
+    @Autowired
+    private CardCatalogs cardCatalogs;
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserAuthenticator userAuthenticator;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private Matchmaker matchmaker;
+
+    // Runs the repository work that follows hashing, which would otherwise take the hasher's threads
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor applicationTaskExecutor;
+
+    @Autowired
+    private GameMetrics gameMetrics;
+
+    @Value("${tcg.games.actions.max-batch:100}")
+    private int maxActionBatch;
+
+    @Value("${tcg.games.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${tcg.matchmaking.timeout:30000}")
+    private long matchmakingTimeout;
+
     @RequestMapping(value = "/api", produces = MediaType.APPLICATION_JSON_VALUE)
     public String index() {
         return "{\"version\":\"0.1\"}";
@@ -46,15 +94,18 @@ public class APIController {
 
     @ExceptionHandler(APIException.class)
     public ResponseEntity handleException(APIException e) {
-        JSONObject obj = new JSONObject();
-        try {
-            obj.put("status", e.getStatus().value());
-            obj.put("message", e.getMessage());
-        } catch (JSONException je) {
-            // TODO: Handle in a better way
-        }
+        gameMetrics.recordRejection(e.getStatus(), e.getMessage());
+        return toErrorResponse(e);
+    }
 
-        return ResponseEntity.status(e.getStatus()).contentType(MediaType.APPLICATION_JSON).body(obj.toString());
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity handleRejectedExecution(RejectedExecutionException e) {
+        return handleException(new APIException(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, please retry"));
+    }
+
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    public ResponseEntity handleConcurrencyFailure(ConcurrencyFailureException e) {
+        return handleException(new APIException(HttpStatus.CONFLICT, "Game was modified concurrently, please retry"));
     }
 
     @RequestMapping(value = "/api/cards", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -79,23 +130,44 @@ public class APIController {
     }
 
     @RequestMapping(value = "/api/games", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<Game.GameSimple> games() {
-        ArrayList<Game.GameSimple> simples = new ArrayList<>();
-        List<Game> games = gameRepository.findAll();
-        for (Game g : games) {
-            simples.add(g.getSimple());
+    public ResponseEntity<List<Game.GameSummary>> games(Game.GameState state, String after, Integer limit) throws APIException {
+        if (limit != null && limit <= 0) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Invalid page size");
         }
 
-        return simples;
+        int pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+        List<Game.GameSummary> stored = gameRepository.findSummaries(state, after, pageSize);
+        List<Game.GameSummary> summaries = new ArrayList<>();
+        for (Game.GameSummary s : stored) {
+            // Cached games may not have been flushed yet
+            Game.GameSummary summary = gameStore.readIfCached(s.id, Game::getSummary).orElse(s);
+            if (state == null || summary.state == state) {
+                summaries.add(summary);
+            }
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (stored.size() == pageSize) {
+            UriComponentsBuilder next = UriComponentsBuilder.fromPath("/api/games")
+                    .queryParam("after", stored.get(stored.size() - 1).id)
+                    .queryParam("limit", pageSize);
+            if (state != null) {
+                next.queryParam("state", state);
+            }
+
+            response.header(HttpHeaders.LINK, "<" + next.toUriString() + ">; rel=\"next\"");
+        }
+
+        return response.body(summaries);
     }
 
     @RequestMapping(value = "/api/games", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<String> createGame(@RequestHeader(defaultValue = "") String Authorization) throws APIException {
         User user = getAuthorizedUser(Authorization);
         if (user != null) {
-            Game game = new Game(cardRepository.findAll());
+            Game game = new Game(cardCatalogs.getCurrent());
             game.addPlayer(user);
-            gameRepository.save(game);
+            gameStore.insert(game);
             return ResponseEntity.status(HttpStatus.FOUND)
                     .location(URI.create("/api/games/" + game.getId()))
                     .build();
@@ -105,10 +177,15 @@ public class APIController {
     }
 
     @RequestMapping(value = "/api/games/{id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public Game.GameSimple game(@PathVariable("id") String id) throws APIException {
-        Optional<Game> game = gameRepository.findById(id);
-        if (game.isPresent()) {
-            return game.get().getSimple();
+    public ResponseEntity<Game.GameSimple> game(@PathVariable("id") String id, WebRequest request) throws APIException {
+        return readGame(id, request, Game::getSimple);
+    }
+
+    @RequestMapping(value = "/api/games/{id}/events", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@PathVariable("id") String id) throws APIException {
+        Optional<SseEmitter> emitter = gameStore.read(id, gameEvents::subscribe);
+        if (emitter.isPresent()) {
+            return emitter.get();
         }
 
         throw new APIException(HttpStatus.NOT_FOUND, "Game not found");
@@ -116,69 +193,26 @@ public class APIController {
     
     @RequestMapping(value = "/api/games/{id}", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
     public Game.GameSimple updateGame(@PathVariable("id") String id, Game.GameState state, @RequestHeader(defaultValue = "") String Authorization) throws APIException {
-        Optional<Game> gameObject = gameRepository.findById(id);
-        if (gameObject.isPresent()) {
-            Game game = gameObject.get();
-            User user = getAuthorizedUser(Authorization);
-            if (user != null) {
-                if (game.getPlayerIndex(user.getId()) >= 0) {
-                    if (state == Game.GameState.ACTIVE && game.getState() == Game.GameState.INITIAL) {
-                        if(!game.start()) {
-                            throw new APIException(HttpStatus.BAD_REQUEST, "Could not start game");
-                        }
-                    }
-
-                    gameRepository.save(game);
-                    return game.getSimple();
-                }
-                else {
-                    throw new APIException(HttpStatus.FORBIDDEN, "Not authorized");
-                }
-            }
-            else {
-                throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
-            }
+        User user = getAuthorizedUser(Authorization);
+        Optional<Game.GameSimple> gameSimple = gameStore.update(id, startGame(user, state, gameMetrics));
+        if (gameSimple.isPresent()) {
+            return gameSimple.get();
         }
 
         throw new APIException(HttpStatus.NOT_FOUND, "Game not found");
     }
 
     @RequestMapping(value = "/api/games/{id}/players", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<Player.PlayerSimple> players(@PathVariable("id") String id) throws APIException {
-        Optional<Game> game = gameRepository.findById(id);
-        if (game.isPresent()) {
-            ArrayList<Player.PlayerSimple> simples = new ArrayList<>();
-            for (Player p : game.get().getPlayers()) {
-                simples.add(p.getSimple());
-            }
-
-            return simples;
-        }
-
-        throw new APIException(HttpStatus.NOT_FOUND, "Game not found");
+    public ResponseEntity<List<Player.PlayerSimple>> players(@PathVariable("id") String id, WebRequest request) throws APIException {
+        return readGame(id, request, APIController::playersOf);
     }
 
     @RequestMapping(value = "/api/games/{id}/players", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<String> addPlayer(@PathVariable("id") String id, @RequestHeader(defaultValue = "") String Authorization) throws APIException {
         User user = getAuthorizedUser(Authorization);
-        Optional<Game> gameObject = gameRepository.findById(id);
-        if (gameObject.isPresent()) {
-            Game game = gameObject.get();
-            if (user != null) {
-                int index = game.addPlayer(user);
-                if (index >= 0) {
-                    gameRepository.save(game);
-                    return ResponseEntity.status(HttpStatus.FOUND)
-                            .location(URI.create("/api/games/" + game.getId() + "/players/" + index))
-                            .build();
-                }
-                else {
-                    throw new APIException(HttpStatus.BAD_REQUEST, "Could not add user to the game");
-                }
-            }
-            else {
-                throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
-            }
+        Optional<ResponseEntity<String>> response = gameStore.update(id, addPlayer(user));
+        if (response.isPresent()) {
+            return response.get();
         }
 
         throw new APIException(HttpStatus.NOT_FOUND, "Game not found");
@@ -186,59 +220,49 @@ public class APIController {
 
     @RequestMapping(value = "/api/games/{id}/players/{index}", produces = MediaType.APPLICATION_JSON_VALUE)
     public Player player(@PathVariable("id") String id, @PathVariable("index") int index, @RequestHeader(defaultValue = "") String Authorization) throws APIException {
-        Optional<Game> gameObject = gameRepository.findById(id);
-        if (gameObject.isPresent()) {
-            List<Player> players = gameObject.get().getPlayers();
-            if (index >= 0 && index < players.size()) {
-                User user = getAuthorizedUser(Authorization);
-                if (user != null && user.getId().equals(players.get(index).getUserId())) {
-                    return players.get(index);
-                }
-                else {
-                    throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
-                }
-            }
+        User user = getAuthorizedUser(Authorization);
+        Optional<Player> player = gameStore.read(id, readPlayer(user, index));
+        if (player.isPresent()) {
+            return player.get();
         }
 
         throw new APIException(HttpStatus.NOT_FOUND, "User not found");
     }
 
     @RequestMapping(value = "/api/games/{id}/actions", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<Game.Action> actions(@PathVariable("id") String id) throws APIException {
-        Optional<Game> game = gameRepository.findById(id);
-        if (game.isPresent()) {
-            return game.get().getActions();
+    public ResponseEntity<List<Game.Action>> actions(@PathVariable("id") String id, Integer since, Integer limit, WebRequest request) throws APIException {
+        if (since == null) {
+            return readGame(id, request, game -> new ArrayList<>(game.getActions()));
+        }
+
+        if (since < 0 || (limit != null && limit <= 0)) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Invalid action range");
+        }
+
+        Optional<List<Game.Action>> actions = gameStore.readActions(id, since, limit == null ? maxActionBatch : Math.min(limit, maxActionBatch));
+        if (actions.isPresent()) {
+            return ResponseEntity.ok(actions.get());
         }
 
         throw new APIException(HttpStatus.NOT_FOUND, "Game not found");
     }
 
+    @RequestMapping(value = "/api/games/{id}/states/{actionCount}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Game.GameSimple gameAt(@PathVariable("id") String id, @PathVariable("actionCount") int actionCount) throws APIException {
+        Optional<Game> game = gameRepository.findByIdAt(id, actionCount);
+        if (game.isPresent()) {
+            return game.get().getSimple();
+        }
+
+        throw new APIException(HttpStatus.NOT_FOUND, "Game state not found");
+    }
+
     @RequestMapping(value = "/api/games/{id}/actions", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<String> addAction(@PathVariable("id") String id, Game.ActionType type, int player, int index, @RequestHeader(defaultValue = "") String Authorization) throws APIException {
-        Optional<Game> gameObject = gameRepository.findById(id);
-        if (gameObject.isPresent()) {
-            Game game = gameObject.get();
-            User user = getAuthorizedUser(Authorization);
-            if (user != null) {
-                if (player >= 0 && player < game.getPlayers().size() && user.getId().equals(game.getPlayers().get(player).getUserId())) {
-                    Game.Action action = new Game.Action(player, type, index);
-                    if (game.addAction(action)) {
-                        gameRepository.save(game);
-                        return ResponseEntity.status(HttpStatus.FOUND)
-                                .location(URI.create("/api/games/" + game.getId() + "/actions/" + (game.getActions().size() - 1)))
-                                .build();
-                    }
-                    else {
-                        throw new APIException(HttpStatus.BAD_REQUEST, "Could not add action");
-                    }
-                }
-                else {
-                    throw new APIException(HttpStatus.BAD_REQUEST, "Invalid player index");
-                }
-            }
-            else {
-                throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
-            }
+        User user = getAuthorizedUser(Authorization);
+        Optional<ResponseEntity<String>> response = gameStore.update(id, addAction(user, type, player, index, gameMetrics));
+        if (response.isPresent()) {
+            return response.get();
         }
 
         throw new APIException(HttpStatus.NOT_FOUND, "Game not found");
@@ -246,31 +270,83 @@ public class APIController {
 
     @RequestMapping(value = "/api/games/{id}/actions/{index}", produces = MediaType.APPLICATION_JSON_VALUE)
     public Game.Action action(@PathVariable("id") String id, @PathVariable("index") int index) throws APIException {
-        Optional<Game> gameObject = gameRepository.findById(id);
-        if (gameObject.isPresent()) {
-            List<Game.Action> actions = gameObject.get().getActions();
-            if (index >= 0 && index < actions.size()) {
-                return actions.get(index);
-            }
-            else {
-                throw new APIException(HttpStatus.NOT_FOUND, "Action not found");
+        if (index < 0) {
+            throw new APIException(HttpStatus.NOT_FOUND, "Action not found");
+        }
+
+        Optional<List<Game.Action>> actions = gameStore.readActions(id, index, 1);
+        if (actions.isPresent()) {
+            if (actions.get().size() > 0) {
+                return actions.get().get(0);
             }
+
+            throw new APIException(HttpStatus.NOT_FOUND, "Action not found");
         }
 
         throw new APIException(HttpStatus.NOT_FOUND, "Game not found");
     }
 
+    @RequestMapping(value = "/api/matchmaking", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<String>> enqueue(@RequestHeader(defaultValue = "") String Authorization) throws APIException {
+        User user = getAuthorizedUser(Authorization);
+        if (user == null) {
+            throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
+        }
+
+        Matchmaker.Ticket ticket = matchmaker.enqueue(user);
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>(matchmakingTimeout);
+        result.onTimeout(() -> {
+            matchmaker.cancel(ticket);
+            completeMatch(ticket, result);
+        });
+        ticket.getMatch().whenComplete((game, e) -> completeMatch(ticket, result));
+        return result;
+    }
+
+    @RequestMapping(value = "/api/matchmaking", method = RequestMethod.DELETE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> dequeue(@RequestHeader(defaultValue = "") String Authorization) throws APIException {
+        User user = getAuthorizedUser(Authorization);
+        if (user == null) {
+            throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
+        }
+
+        if (matchmaker.cancel(user.getId())) {
+            return ResponseEntity.noContent().build();
+        }
+
+        throw new APIException(HttpStatus.NOT_FOUND, "User is not waiting for a game");
+    }
+
+    // Waits only when the ticket was matched right as the request timed out
+    private void completeMatch(Matchmaker.Ticket ticket, DeferredResult<ResponseEntity<String>> result) {
+        try {
+            result.setResult(toMatchResponse(ticket));
+        }
+        catch (APIException e) {
+            result.setErrorResult(e);
+        }
+    }
+
+    // Hashing runs on the password hasher's pool, so the request thread is released while it waits
     @RequestMapping(value = "/api/users", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
-    public User.UserAuthorized createUser(String name, String password) throws APIException {
-        if (userRepository.findByName(name).size() <= 0) {
-            User user = new User(name, User.passwordToHash(password));
-            userRepository.save(user);
-            user.refreshAuthToken();
-            userRepository.save(user);
-            return user.getAuthorized();
+    public CompletableFuture<User.UserAuthorized> createUser(String name, String password) throws APIException {
+        if (password == null) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Password is required");
         }
 
-        throw new APIException(HttpStatus.BAD_REQUEST, "User with name already exist");
+        return passwordHasher.hash(password).thenApplyAsync(hash -> {
+            // The unique index on the name decides, so two registrations with the same name cannot both succeed
+            User user = new User(name, hash);
+            try {
+                userRepository.insert(user);
+            }
+            catch (DuplicateKeyException e) {
+                throw new CompletionException(new APIException(HttpStatus.BAD_REQUEST, "User with name already exist"));
+            }
+
+            userAuthenticator.issueToken(user);
+            return user.getAuthorized();
+        }, applicationTaskExecutor);
     }
 
     @RequestMapping(value = "/api/users/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -284,42 +360,203 @@ public class APIController {
     }
 
     @RequestMapping(value = "/api/users/auth", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
-    public User.UserAuthorized auth(String name, String password) throws APIException {
+    public CompletableFuture<User.UserAuthorized> auth(String name, String password) throws APIException {
         List<User> users = userRepository.findByName(name);
-        if (users.size() > 0) {
-            User user = users.get(0);
-            if (user.getPassword().equals(User.passwordToHash(password))) {
-                user.refreshAuthToken();
-                userRepository.save(user);
-                return user.getAuthorized();
+        if (users.size() <= 0) {
+            throw new APIException(HttpStatus.NOT_FOUND, "User not found");
+        }
+
+        if (password == null) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Invalid password");
+        }
+
+        User user = users.get(0);
+        return passwordHasher.verify(password, user.getPassword()).thenCompose(isValid -> {
+            if (!isValid) {
+                throw new CompletionException(new APIException(HttpStatus.BAD_REQUEST, "Invalid password"));
             }
-            else {
-                throw new APIException(HttpStatus.BAD_REQUEST, "Invalid password");
+
+            if (!passwordHasher.needsRehash(user.getPassword())) {
+                return CompletableFuture.completedFuture(user);
             }
+
+            // Upgrading an old hash is best effort, the login does not fail if the hasher is busy
+            return passwordHasher.hash(password).handleAsync((hash, e) -> {
+                if (hash != null) {
+                    user.setPassword(hash);
+                    userRepository.save(user);
+                }
+
+                return user;
+            }, applicationTaskExecutor);
+        }).thenApplyAsync(u -> {
+            userAuthenticator.issueToken(u);
+            return u.getAuthorized();
+        }, applicationTaskExecutor);
+    }
+
+    @RequestMapping(value = "/api/users/auth", method = RequestMethod.DELETE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> revokeAuth(@RequestHeader(defaultValue = "") String Authorization, Boolean all) throws APIException {
+        User user = getAuthorizedUser(Authorization);
+        if (user == null) {
+            throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
         }
 
-        throw new APIException(HttpStatus.NOT_FOUND, "User not found");
+        if (!userAuthenticator.revoke(user, all != null && all)) {
+            throw new APIException(HttpStatus.SERVICE_UNAVAILABLE, "Could not revoke token");
+        }
+
+        return ResponseEntity.noContent().build();
     }
 
-    private User getAuthorizedUser(String authHeader) {
-        if (authHeader.equals("")) {
+    // The revision is checked first, so a client that is up to date gets its 304 without the game being loaded or
+    // serialized. The response carries the ETag of the revision it was built from.
+    private <T> ResponseEntity<T> readGame(String id, WebRequest request, GameStore.GameOperation<T, APIException> operation) throws APIException {
+        Optional<Long> revision = gameStore.readRevision(id);
+        if (!revision.isPresent()) {
+            throw new APIException(HttpStatus.NOT_FOUND, "Game not found");
+        }
+
+        if (request.checkNotModified(toETag(revision.get()))) {
             return null;
         }
 
-        String[] headerSplit = authHeader.split("\\s+");
-        if (headerSplit.length > 1) {
-            String[] credentials = new String(Base64.decodeBase64(headerSplit[1])).split(":");
-            if (credentials.length == 2) {
-                Optional<User> userObject = userRepository.findById(credentials[0]);
-                if (userObject.isPresent()) {
-                    User user = userObject.get();
-                    if (user.getAuthToken().equals(credentials[1]) && user.getExpiresIn() > System.currentTimeMillis()) {
-                        return user;
+        Optional<ResponseEntity<T>> response = gameStore.read(id, game -> ResponseEntity.ok()
+                .eTag(toETag(game.getRevision()))
+                .body(operation.apply(game)));
+        if (response.isPresent()) {
+            return response.get();
+        }
+
+        throw new APIException(HttpStatus.NOT_FOUND, "Game not found");
+    }
+
+    private User getAuthorizedUser(String authHeader) {
+        return userAuthenticator.getAuthorizedUser(authHeader);
+    }
+
+    // The parts below are shared with ReactiveAPIController, so both modes answer the same way
+
+    static ResponseEntity<String> toErrorResponse(APIException e) {
+        JSONObject obj = new JSONObject();
+        try {
+            obj.put("status", e.getStatus().value());
+            obj.put("message", e.getMessage());
+        } catch (JSONException je) {
+            // TODO: Handle in a better way
+        }
+
+        return ResponseEntity.status(e.getStatus()).contentType(MediaType.APPLICATION_JSON).body(obj.toString());
+    }
+
+    static GameStore.GameOperation<Game.GameSimple, APIException> startGame(User user, Game.GameState state, GameMetrics gameMetrics) {
+        return game -> {
+            if (user != null) {
+                if (game.getPlayerIndex(user.getId()) >= 0) {
+                    if (state == Game.GameState.ACTIVE && game.getState() == Game.GameState.INITIAL) {
+                        if(!gameMetrics.start(game)) {
+                            throw new APIException(HttpStatus.BAD_REQUEST, "Could not start game");
+                        }
+                    }
+
+                    return game.getSimple();
+                }
+                else {
+                    throw new APIException(HttpStatus.FORBIDDEN, "Not authorized");
+                }
+            }
+            else {
+                throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
+            }
+        };
+    }
+
+    static List<Player.PlayerSimple> playersOf(Game game) {
+        List<Player.PlayerSimple> simples = new ArrayList<>();
+        for (Player p : game.getPlayers()) {
+            simples.add(p.getSimple());
+        }
+
+        return simples;
+    }
+
+    static GameStore.GameOperation<ResponseEntity<String>, APIException> addPlayer(User user) {
+        return game -> {
+            if (user != null) {
+                int index = game.addPlayer(user);
+                if (index >= 0) {
+                    return ResponseEntity.status(HttpStatus.FOUND)
+                            .location(URI.create("/api/games/" + game.getId() + "/players/" + index))
+                            .<String>build();
+                }
+                else {
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Could not add user to the game");
+                }
+            }
+            else {
+                throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
+            }
+        };
+    }
+
+    static GameStore.GameOperation<Player, APIException> readPlayer(User user, int index) {
+        return game -> {
+            List<Player> players = game.getPlayers();
+            if (index >= 0 && index < players.size()) {
+                Player p = players.get(index);
+                if (user != null && user.getId().equals(p.getUserId())) {
+                    return p.copy();
+                }
+                else {
+                    throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
+                }
+            }
+
+            return null;
+        };
+    }
+
+    static GameStore.GameOperation<ResponseEntity<String>, APIException> addAction(User user, Game.ActionType type, int player, int index, GameMetrics gameMetrics) {
+        return game -> {
+            if (user != null) {
+                if (player >= 0 && player < game.getPlayers().size() && user.getId().equals(game.getPlayers().get(player).getUserId())) {
+                    Game.Action action = new Game.Action(player, type, index);
+                    if (gameMetrics.addAction(game, action)) {
+                        return ResponseEntity.status(HttpStatus.FOUND)
+                                .location(URI.create("/api/games/" + game.getId() + "/actions/" + (game.getActions().size() - 1)))
+                                .<String>build();
                     }
+                    else {
+                        throw new APIException(HttpStatus.BAD_REQUEST, "Could not add action");
+                    }
+                }
+                else {
+                    throw new APIException(HttpStatus.BAD_REQUEST, "Invalid player index");
                 }
             }
+            else {
+                throw new APIException(HttpStatus.UNAUTHORIZED, "User login is required");
+            }
+        };
+    }
+
+    // The match is complete or has just been cancelled, unless it was being started
+    static ResponseEntity<String> toMatchResponse(Matchmaker.Ticket ticket) throws APIException {
+        try {
+            Game game = ticket.getMatch().join();
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create("/api/games/" + game.getId() + "/players/" + game.getPlayerIndex(ticket.getUser().getId())))
+                    .build();
         }
+        catch (CancellationException e) {
+            return ResponseEntity.noContent().build();
+        }
+        catch (CompletionException e) {
+            throw new APIException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not create game");
+        }
+    }
 
-        return null;
+    static String toETag(long revision) {
+        return "\"" + revision + "\"";
     }
 }
@@ -0,0 +1,66 @@
+package tcgserver;
+
+import org.apache.commons.codec.binary.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Signs auth tokens as {@code expiresIn.signature}, where the signature is an HMAC-SHA256 of the user id and the
+ * expiry, so a token is verified without being stored anywhere. Every server that must accept the tokens needs the same
+ * secret.
+ */
+public class AuthTokenSigner {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final ThreadLocal<Mac> macs;
+
+    public AuthTokenSigner(byte[] secret) {
+        SecretKeySpec key = new SecretKeySpec(secret, ALGORITHM);
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            }
+            catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        macs.get();
+    }
+
+    public static boolean isSigned(String authToken) {
+        return authToken.indexOf('.') > 0;
+    }
+
+    public String sign(String userId, long expiresIn) {
+        return expiresIn + "." + Base64.encodeBase64URLSafeString(signature(userId, expiresIn));
+    }
+
+    // Returns the expiry of the token, or -1 if it was not signed for this user with this secret
+    public long verify(String userId, String authToken) {
+        int separator = authToken.indexOf('.');
+        if (separator <= 0) {
+            return -1;
+        }
+
+        long expiresIn;
+        try {
+            expiresIn = Long.parseLong(authToken.substring(0, separator));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+
+        byte[] signature = Base64.decodeBase64(authToken.substring(separator + 1));
+        return MessageDigest.isEqual(signature, signature(userId, expiresIn)) ? expiresIn : -1;
+    }
+
+    private byte[] signature(String userId, long expiresIn) {
+        return macs.get().doFinal((userId + ":" + expiresIn).getBytes(StandardCharsets.UTF_8));
+    }
+}
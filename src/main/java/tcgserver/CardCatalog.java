@@ -0,0 +1,107 @@
+package tcgserver;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Document("cardCatalogs")
+public class CardCatalog {
+    public static final CardCatalog EMPTY = new CardCatalog(hash(Collections.emptyList()), Collections.emptyList());
+
+    @Id
+    private final String version;
+    private final List<Card> cards;
+    @Transient
+    private final Map<Card, Integer> indices;
+
+    private CardCatalog(String version, List<Card> cards) {
+        this.version = version;
+        this.cards = Collections.unmodifiableList(new ArrayList<>(cards));
+        this.indices = new IdentityHashMap<>();
+        for (int i = 0; i < this.cards.size(); i++) {
+            indices.putIfAbsent(this.cards.get(i), i);
+        }
+    }
+
+    public static CardCatalog of(Collection<Card> cards) {
+        if (cards.isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<Card, Boolean> distinct = new IdentityHashMap<>();
+        List<Card> ordered = new ArrayList<>();
+        for (Card card : cards) {
+            if (distinct.put(card, Boolean.TRUE) == null) {
+                ordered.add(card);
+            }
+        }
+
+        return new CardCatalog(hash(ordered), ordered);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public List<Card> getCards() {
+        return cards;
+    }
+
+    public int size() {
+        return cards.size();
+    }
+
+    public Card get(int index) {
+        return cards.get(index);
+    }
+
+    public int indexOf(Card card) {
+        return indices.getOrDefault(card, -1);
+    }
+
+    public int[] indicesOf(List<Card> cards) {
+        int[] result = new int[cards.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = indexOf(cards.get(i));
+            assert result[i] >= 0;
+        }
+
+        return result;
+    }
+
+    public List<Card> cardsAt(int[] indices) {
+        Card[] result = new Card[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            result[i] = cards.get(indices[i]);
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(result));
+    }
+
+    // Catalogs with the same cards in the same order share a version, so games can be stored with the version only
+    private static String hash(List<Card> cards) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Card card : cards) {
+                digest.update((card.getId() + ":" + card.getMana() + ";").getBytes(StandardCharsets.UTF_8));
+            }
+
+            return String.format("%032x", new BigInteger(1, digest.digest()).shiftRight(128));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
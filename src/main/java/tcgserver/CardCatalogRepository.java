@@ -0,0 +1,4 @@
+package tcgserver;
+
+public interface CardCatalogRepository extends StorageRepository<CardCatalog> {
+}
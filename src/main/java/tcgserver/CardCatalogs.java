@@ -0,0 +1,180 @@
+package tcgserver;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.MongoMappingEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one shared instance per card catalog version. Games and players store only the catalog version and card
+ * indices; the catalogs themselves are written once to the {@code cardCatalogs} collection and attached again when
+ * games are read.
+ */
+@Component
+public class CardCatalogs implements ApplicationListener<MongoMappingEvent<?>> {
+    private static final String CARDS_COLLECTION = "cards";
+    private static final String GAMES_COLLECTION = "games";
+    private static final String SNAPSHOTS_COLLECTION = "gameSnapshots";
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private CardCatalogRepository cardCatalogRepository;
+
+    @Autowired
+    private MongoConverter mongoConverter;
+
+    private final ConcurrentHashMap<String, CardCatalog> catalogs = new ConcurrentHashMap<>();
+    private final Set<String> persistedVersions = ConcurrentHashMap.newKeySet();
+    private volatile CardCatalog current;
+
+    public CardCatalog getCurrent() {
+        CardCatalog catalog = current;
+        if (catalog == null) {
+            synchronized (this) {
+                catalog = current;
+                if (catalog == null) {
+                    catalog = register(CardCatalog.of(cardRepository.findAll()));
+                    current = catalog;
+                }
+            }
+        }
+
+        return catalog;
+    }
+
+    public CardCatalog get(String version) {
+        CardCatalog catalog = catalogs.get(version);
+        if (catalog != null) {
+            return catalog;
+        }
+
+        if (CardCatalog.EMPTY.getVersion().equals(version)) {
+            return register(CardCatalog.EMPTY);
+        }
+
+        catalog = cardCatalogRepository.findById(version)
+                .orElseThrow(() -> new IllegalStateException("Card catalog " + version + " not found"));
+        persistedVersions.add(version);
+        return register(catalog);
+    }
+
+    public void persist(Game game) {
+        persist(game.getCatalog());
+        for (Player p : game.getPlayers()) {
+            persist(p.getCatalog());
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(MongoMappingEvent<?> event) {
+        String collection = event.getCollectionName();
+        if (event instanceof AfterSaveEvent || event instanceof AfterDeleteEvent) {
+            if (CARDS_COLLECTION.equals(collection)) {
+                current = null;
+            }
+        }
+        else if (event instanceof AfterLoadEvent) {
+            if (GAMES_COLLECTION.equals(collection)) {
+                upgrade(((AfterLoadEvent<?>) event).getDocument());
+            }
+            else if (SNAPSHOTS_COLLECTION.equals(collection)) {
+                upgrade(((AfterLoadEvent<?>) event).getDocument().get("game", Document.class));
+            }
+        }
+        else if (event instanceof AfterConvertEvent) {
+            Object source = event.getSource();
+            if (source instanceof Game) {
+                ((Game) source).setCatalogs(this::get);
+            }
+            else if (source instanceof GameSnapshot) {
+                ((GameSnapshot) source).getGame().setCatalogs(this::get);
+            }
+        }
+        else if (event instanceof BeforeConvertEvent) {
+            Object source = event.getSource();
+            if (source instanceof Game) {
+                persist((Game) source);
+            }
+            else if (source instanceof GameSnapshot) {
+                persist(((GameSnapshot) source).getGame());
+            }
+        }
+    }
+
+    private CardCatalog register(CardCatalog catalog) {
+        CardCatalog existing = catalogs.putIfAbsent(catalog.getVersion(), catalog);
+        return existing != null ? existing : catalog;
+    }
+
+    private void persist(CardCatalog catalog) {
+        if (persistedVersions.contains(catalog.getVersion())) {
+            return;
+        }
+
+        if (catalog != CardCatalog.EMPTY) {
+            cardCatalogRepository.save(catalog);
+        }
+
+        register(catalog);
+        persistedVersions.add(catalog.getVersion());
+    }
+
+    // Games stored before catalogs existed embed full card documents in the initial deck and in every player's deck
+    // and hand. They are rewritten in place into indices of a catalog built from those cards.
+    private void upgrade(Document game) {
+        if (game == null || game.containsKey("catalogVersion")) {
+            return;
+        }
+
+        Map<Document, Integer> indices = new LinkedHashMap<>();
+        List<Document> players = documents(game, "players");
+        game.put("initialDeck", toIndices(game, "initialDeck", indices));
+        for (Document player : players) {
+            player.put("deck", toIndices(player, "deck", indices));
+            player.put("hand", toIndices(player, "hand", indices));
+        }
+
+        List<Card> cards = new ArrayList<>();
+        for (Document card : indices.keySet()) {
+            cards.add(mongoConverter.read(Card.class, card));
+        }
+
+        CardCatalog catalog = CardCatalog.of(cards);
+        persist(catalog);
+        game.put("catalogVersion", catalog.getVersion());
+        for (Document player : players) {
+            player.put("catalogVersion", catalog.getVersion());
+        }
+    }
+
+    private static List<Integer> toIndices(Document document, String key, Map<Document, Integer> indices) {
+        List<Integer> result = new ArrayList<>();
+        for (Document card : documents(document, key)) {
+            result.add(indices.computeIfAbsent(card, c -> indices.size()));
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Document> documents(Document document, String key) {
+        Object value = document.get(key);
+        return value instanceof List ? (List<Document>) value : new ArrayList<>();
+    }
+}
@@ -1,6 +1,4 @@
 package tcgserver;
 
-import org.springframework.data.mongodb.repository.MongoRepository;
-
-public interface CardRepository extends MongoRepository<Card, String> {
+public interface CardRepository extends StorageRepository<Card> {
 }
@@ -0,0 +1,110 @@
+package tcgserver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder events of the engine and of the persistence hot paths. They are disabled unless a recording enables
+ * them, as {@code src/main/resources/jfr/tcg.jfc} does, and a disabled event is neither timed nor written, so the
+ * callers only check {@code shouldCommit()} before filling in the fields.
+ */
+final class FlightEvents {
+    private FlightEvents() {
+    }
+
+    @Name("tcgserver.GameAction")
+    @Label("Game Action")
+    @Category({"TCG", "Engine"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class GameAction extends Event {
+        @Label("Game Id")
+        String gameId;
+
+        @Label("Action Type")
+        String actionType;
+
+        @Label("Player")
+        int player;
+
+        @Label("Accepted")
+        boolean isAccepted;
+
+        @Label("Payload Size")
+        @Description("Actions in the game log, which is saved with the game")
+        int payloadSize;
+    }
+
+    @Name("tcgserver.GameStart")
+    @Label("Game Start")
+    @Category({"TCG", "Engine"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class GameStart extends Event {
+        @Label("Game Id")
+        String gameId;
+
+        @Label("Started")
+        boolean isStarted;
+
+        @Label("Payload Size")
+        @Description("Actions in the game log, which is saved with the game")
+        int payloadSize;
+    }
+
+    @Name("tcgserver.GameSerialization")
+    @Label("Game Serialization")
+    @Category({"TCG", "Engine"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class GameSerialization extends Event {
+        @Label("Game Id")
+        String gameId;
+
+        @Label("Payload Size")
+        @Description("Actions and initial deck cards copied into the response")
+        int payloadSize;
+    }
+
+    @Name("tcgserver.Authorization")
+    @Label("Authorization")
+    @Category({"TCG", "API"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Authorization extends Event {
+        @Label("User Id")
+        String userId;
+
+        @Label("Source")
+        @Description("Where the user was resolved from: signature, cache or database")
+        String source;
+
+        @Label("Authorized")
+        boolean isAuthorized;
+    }
+
+    @Name("tcgserver.MongoCall")
+    @Label("Mongo Call")
+    @Category({"TCG", "Persistence"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class MongoCall extends Event {
+        @Label("Repository")
+        String repository;
+
+        @Label("Method")
+        String method;
+
+        @Label("Payload Size")
+        @Description("Entities returned or saved, a count being one")
+        int payloadSize;
+
+        @Label("Exception")
+        String exception;
+    }
+}
@@ -1,14 +1,21 @@
 package tcgserver;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 @Document("games")
+@CompoundIndex(def = "{'state': 1, '_id': 1}")
 public class Game {
     public enum GameState {
         INITIAL,
@@ -66,16 +73,27 @@ public class Game {
 
     @Id
     private String id;
+    @Version
+    private Long version;
+    private long revision;
     private boolean isDrawCardAtTurnStart;
+    private long seed;
     private GameState state;
     private int turn;
     private int cardDrawnThisTurn;
     private ArrayList<Player> players;
-    private ArrayList<Card> initialDeck;
+    private String catalogVersion;
+    private int[] initialDeck;
     private ArrayList<Action> actions;
+    @Transient
+    private CardCatalog catalog;
 
     public Game() {
-        this(null);
+        this((List<Card>) null);
+    }
+
+    public Game(CardCatalog catalog) {
+        this(catalog, catalog.indicesOf(catalog.getCards()), true, ThreadLocalRandom.current().nextLong());
     }
 
     public Game(List<Card> initialDeck) {
@@ -83,34 +101,70 @@ public class Game {
     }
 
     public Game(List<Card> initialDeck, boolean isDrawCardAtTurnStart) {
-        if (initialDeck == null) {
-            ArrayList<Card> cards = new ArrayList<>();
-            for (int i = 0; i < START_CARD_COUNT; i++) {
-                cards.add(new Card(i));
-            }
-            initialDeck = cards;
-        }
+        this(initialDeck, isDrawCardAtTurnStart, ThreadLocalRandom.current().nextLong());
+    }
 
-        assert initialDeck.size() >= START_CARD_COUNT;
+    public Game(List<Card> initialDeck, boolean isDrawCardAtTurnStart, long seed) {
+        this(catalogOf(initialDeck), initialDeck, isDrawCardAtTurnStart, seed);
+    }
+
+    public Game(CardCatalog catalog, int[] initialDeck, boolean isDrawCardAtTurnStart, long seed) {
+        assert initialDeck.length >= START_CARD_COUNT;
 
+        this.catalog = catalog;
+        this.catalogVersion = catalog.getVersion();
+        this.initialDeck = initialDeck.clone();
         this.isDrawCardAtTurnStart = isDrawCardAtTurnStart;
+        this.seed = seed;
         state = GameState.INITIAL;
         turn = 0;
         cardDrawnThisTurn = 0;
         players = new ArrayList<>();
-        this.initialDeck = new ArrayList<>();
-        this.initialDeck.addAll(initialDeck);
         actions = new ArrayList<>();
     }
 
+    private Game(CardCatalog catalog, List<Card> initialDeck, boolean isDrawCardAtTurnStart, long seed) {
+        this(catalog, catalog.indicesOf(initialDeck == null ? catalog.getCards() : initialDeck), isDrawCardAtTurnStart, seed);
+    }
+
+    private static CardCatalog catalogOf(List<Card> initialDeck) {
+        if (initialDeck != null) {
+            return CardCatalog.of(initialDeck);
+        }
+
+        ArrayList<Card> cards = new ArrayList<>();
+        for (int i = 0; i < START_CARD_COUNT; i++) {
+            cards.add(new Card(i));
+        }
+
+        return CardCatalog.of(cards);
+    }
+
     public String getId() {
         return id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    void setVersion(Long version) {
+        this.version = version;
+    }
+
+    // Counts the changes to the game, unlike the version, which counts the writes
+    public long getRevision() {
+        return revision;
+    }
+
     public boolean isDrawCardAtTurnStart() {
         return isDrawCardAtTurnStart;
     }
 
+    public long getSeed() {
+        return seed;
+    }
+
     public GameState getState() {
         return state;
     }
@@ -128,7 +182,22 @@ public class Game {
     }
 
     public List<Card> getInitialDeck() {
-        return Collections.unmodifiableList(initialDeck);
+        return catalog.cardsAt(initialDeck);
+    }
+
+    public CardCatalog getCatalog() {
+        return catalog;
+    }
+
+    String getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    void setCatalogs(Function<String, CardCatalog> catalogs) {
+        catalog = catalogs.apply(catalogVersion);
+        for (Player p : players) {
+            p.setCatalog(catalogs.apply(p.getCatalogVersion()));
+        }
     }
 
     public List<Action> getActions() {
@@ -150,7 +219,7 @@ public class Game {
     }
 
     public int addPlayer(User user) {
-        return addPlayer(new Player(user.getId(), initialDeck, Collections.emptyList()));
+        return addPlayer(new Player(user.getId(), catalog, initialDeck));
     }
 
     public int addPlayer(Player player) {
@@ -161,6 +230,7 @@ public class Game {
 
         if (players.size() < MAX_PLAYERS) {
             players.add(player);
+            revision++;
             return players.size() - 1;
         }
 
@@ -168,8 +238,25 @@ public class Game {
     }
 
     public boolean start() {
+        FlightEvents.GameStart event = new FlightEvents.GameStart();
+        event.begin();
+        boolean isStarted = startGame();
+        if (event.shouldCommit()) {
+            event.gameId = id;
+            event.isStarted = isStarted;
+            event.payloadSize = actions.size();
+            event.commit();
+        }
+
+        return isStarted;
+    }
+
+    private boolean startGame() {
         if (players.size() >= MIN_PLAYERS && state == GameState.INITIAL) {
+            revision++;
+            SplittableRandom random = new SplittableRandom(seed);
             for (Player p : players) {
+                p.shuffleDeck(random.split());
                 for (int i = 0; i < START_CARD_COUNT; i++) {
                     if(!p.drawRandomCard()) {
                         return false;
@@ -186,6 +273,22 @@ public class Game {
     }
 
     public boolean addAction(Action action) {
+        FlightEvents.GameAction event = new FlightEvents.GameAction();
+        event.begin();
+        boolean isAdded = applyAction(action);
+        if (event.shouldCommit()) {
+            event.gameId = id;
+            event.actionType = String.valueOf(action.getType());
+            event.player = action.getPlayer();
+            event.isAccepted = isAdded;
+            event.payloadSize = actions.size();
+            event.commit();
+        }
+
+        return isAdded;
+    }
+
+    private boolean applyAction(Action action) {
         assert state == GameState.ACTIVE;
 
         if (action.getPlayer() != (turn % players.size())) {
@@ -199,7 +302,7 @@ public class Game {
                 }
 
                 cardDrawnThisTurn++;
-                actions.add(action);
+                addToLog(action);
             }
             else {
                 return false;
@@ -214,14 +317,14 @@ public class Game {
                     }
                 }
 
-                actions.add(action);
+                addToLog(action);
             }
             else {
                 return false;
             }
         }
         else if (action.getType() == ActionType.SKIP) {
-            actions.add(action);
+            addToLog(action);
             turn++;
             return startTurn();
         }
@@ -233,6 +336,38 @@ public class Game {
         return true;
     }
 
+    // The game as it was started, for replaying a log without a snapshot. Players join with the initial deck, as they
+    // do in addPlayer(User).
+    Game toStart() {
+        Game start = new Game(catalog, initialDeck, isDrawCardAtTurnStart, seed);
+        start.id = id;
+        for (Player p : players) {
+            start.addPlayer(new Player(p.getUserId(), catalog, initialDeck));
+        }
+
+        if (state != GameState.INITIAL && !start.start()) {
+            return null;
+        }
+
+        return start;
+    }
+
+    // Actions added automatically (turn start draws) are already in the log, so the log is indexed by actions.size()
+    public boolean replay(List<Action> log, int actionCount) {
+        while (actions.size() < actionCount && state == GameState.ACTIVE) {
+            if (!addAction(log.get(actions.size()))) {
+                return false;
+            }
+        }
+
+        return actions.size() >= actionCount;
+    }
+
+    private void addToLog(Action action) {
+        actions.add(action);
+        revision++;
+    }
+
     private boolean startTurn() {
         cardDrawnThisTurn = 0;
         if (players.size() < 1) {
@@ -271,14 +406,16 @@ public class Game {
     }
 
     public GameSimple getSimple() {
+        FlightEvents.GameSerialization event = new FlightEvents.GameSerialization();
+        event.begin();
         GameSimple gameSimple = new GameSimple();
         gameSimple.id = id;
         gameSimple.isDrawCardAtTurnStart = isDrawCardAtTurnStart;
         gameSimple.state = state;
         gameSimple.turn = turn;
         gameSimple.cardDrawnThisTurn = cardDrawnThisTurn;
-        gameSimple.initialDeck = initialDeck;
-        gameSimple.actions = actions;
+        gameSimple.initialDeck = getInitialDeck();
+        gameSimple.actions = new ArrayList<>(actions);
 
         ArrayList<Player.PlayerSimple> playerSimples = new ArrayList<>();
         for (Player p : players) {
@@ -286,6 +423,34 @@ public class Game {
         }
         gameSimple.players = playerSimples;
 
+        if (event.shouldCommit()) {
+            event.gameId = id;
+            event.payloadSize = gameSimple.actions.size() + gameSimple.initialDeck.size();
+            event.commit();
+        }
+
         return gameSimple;
     }
+
+    public static class GameSummary {
+        public String id;
+        public boolean isDrawCardAtTurnStart;
+        public GameState state;
+        public int turn;
+        public List<String> playerIds;
+    }
+
+    public GameSummary getSummary() {
+        GameSummary summary = new GameSummary();
+        summary.id = id;
+        summary.isDrawCardAtTurnStart = isDrawCardAtTurnStart;
+        summary.state = state;
+        summary.turn = turn;
+        summary.playerIds = new ArrayList<>();
+        for (Player p : players) {
+            summary.playerIds.add(p.getUserId());
+        }
+
+        return summary;
+    }
 }
@@ -0,0 +1,130 @@
+package tcgserver;
+
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class GameChanges {
+    private static class PlayerState {
+        private final int health;
+        private final int manaSlot;
+        private final int mana;
+        private final int[] deck;
+        private final int deckPosition;
+        private final int[] hand;
+
+        private PlayerState(Player player) {
+            health = player.getHealth();
+            manaSlot = player.getManaSlot();
+            mana = player.getMana();
+            deck = player.getDeckIndices();
+            deckPosition = player.getDeckPosition();
+            hand = player.getHandIndices().clone();
+        }
+
+        private boolean isHandChanged(Player player) {
+            return !Arrays.equals(hand, player.getHandIndices());
+        }
+    }
+
+    private final long revision;
+    private final Game.GameState state;
+    private final int turn;
+    private final int cardDrawnThisTurn;
+    private final int actionCount;
+    private final List<PlayerState> players;
+
+    private GameChanges(Game game) {
+        revision = game.getRevision();
+        state = game.getState();
+        turn = game.getTurn();
+        cardDrawnThisTurn = game.getCardDrawnThisTurn();
+        actionCount = game.getActions().size();
+        players = new ArrayList<>();
+        for (Player p : game.getPlayers()) {
+            players.add(new PlayerState(p));
+        }
+    }
+
+    public static GameChanges since(Game game) {
+        return new GameChanges(game);
+    }
+
+    public Game.GameState getState() {
+        return state;
+    }
+
+    public int getActionCount() {
+        return actionCount;
+    }
+
+    public Update toAppendUpdate(Game game) {
+        Update update = new Update();
+        List<Game.Action> actions = game.getActions();
+        if (actions.size() > actionCount) {
+            update.push("actions").each(actions.subList(actionCount, actions.size()).toArray());
+        }
+
+        if (game.getState() != state) {
+            update.set("state", game.getState());
+        }
+
+        if (game.getRevision() != revision) {
+            update.set("revision", game.getRevision());
+        }
+
+        // Game listings read the turn without rebuilding the game
+        if (game.getTurn() != turn) {
+            update.set("turn", game.getTurn());
+        }
+
+        return update;
+    }
+
+    public Update toUpdate(Game game) {
+        Update update = toAppendUpdate(game);
+
+        if (game.getCardDrawnThisTurn() != cardDrawnThisTurn) {
+            update.set("cardDrawnThisTurn", game.getCardDrawnThisTurn());
+        }
+
+        List<Player> current = game.getPlayers();
+        if (current.size() != players.size()) {
+            update.set("players", current);
+        }
+        else {
+            for (int i = 0; i < current.size(); i++) {
+                Player player = current.get(i);
+                PlayerState previous = players.get(i);
+                String prefix = "players." + i + ".";
+                if (player.getHealth() != previous.health) {
+                    update.set(prefix + "health", player.getHealth());
+                }
+
+                if (player.getManaSlot() != previous.manaSlot) {
+                    update.set(prefix + "manaSlot", player.getManaSlot());
+                }
+
+                if (player.getMana() != previous.mana) {
+                    update.set(prefix + "mana", player.getMana());
+                }
+
+                if (player.getDeckIndices() != previous.deck) {
+                    update.set(prefix + "deck", player.getDeckIndices());
+                }
+
+                if (player.getDeckPosition() != previous.deckPosition) {
+                    update.set(prefix + "deckPosition", player.getDeckPosition());
+                }
+
+                if (previous.isHandChanged(player)) {
+                    update.set(prefix + "hand", player.getHandIndices());
+                }
+            }
+        }
+
+        return update;
+    }
+}
@@ -0,0 +1,386 @@
+package tcgserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.UnicastProcessor;
+import reactor.util.concurrent.Queues;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes game changes to server-sent event and game socket subscribers. Updates are built on the game's executor, so
+ * they are consistent with the game, and written to the connections on a separate pool so slow clients never hold up a
+ * game.
+ */
+@Component
+public class GameEvents {
+    private static final int STREAM_BUFFER_SIZE = 256;
+
+    public static class GameUpdate {
+        public String id;
+        public Game.GameState state;
+        public int turn;
+        public int cardDrawnThisTurn;
+        public int actionCount;
+        public List<Game.Action> actions;
+        public List<Player.PlayerSimple> players;
+    }
+
+    public static class SocketMessage {
+        public String event;
+        public Object data;
+
+        public SocketMessage(String event, Object data) {
+            this.event = event;
+            this.data = data;
+        }
+    }
+
+    private abstract static class Subscription {
+        private boolean isReady;
+
+        abstract void send(String event, Object data) throws IOException;
+
+        abstract void sendHeartbeat() throws IOException;
+
+        abstract void complete();
+
+        // Ends the subscription after a failed send
+        abstract void completeWithError(Throwable e);
+    }
+
+    private static class EmitterSubscription extends Subscription {
+        private final SseEmitter emitter;
+
+        private EmitterSubscription(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        void send(String event, Object data) throws IOException {
+            emitter.send(SseEmitter.event().name(event).data(data));
+        }
+
+        @Override
+        void sendHeartbeat() throws IOException {
+            emitter.send(SseEmitter.event().comment(""));
+        }
+
+        @Override
+        void complete() {
+            emitter.complete();
+        }
+
+        // The container already dispatches the error of a failed write, completing the emitter as well would dispatch
+        // the request a second time
+        @Override
+        void completeWithError(Throwable e) {
+        }
+    }
+
+    // Backs a server-sent event stream of the reactive API. A client that falls a whole buffer behind is disconnected.
+    private static class FluxSubscription extends Subscription {
+        private final FluxSink<ServerSentEvent<Object>> sink;
+
+        private FluxSubscription(FluxSink<ServerSentEvent<Object>> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        void send(String event, Object data) throws IOException {
+            next(ServerSentEvent.builder(data).event(event).build());
+        }
+
+        @Override
+        void sendHeartbeat() throws IOException {
+            next(ServerSentEvent.builder().comment("").build());
+        }
+
+        @Override
+        void complete() {
+            sink.complete();
+        }
+
+        @Override
+        void completeWithError(Throwable e) {
+            sink.error(e);
+        }
+
+        private void next(ServerSentEvent<Object> event) throws IOException {
+            if (sink.isCancelled()) {
+                throw new IOException("Event stream was cancelled");
+            }
+
+            sink.next(event);
+        }
+    }
+
+    private class SocketSubscription extends Subscription {
+        private final WebSocketSession session;
+
+        private SocketSubscription(WebSocketSession session) {
+            this.session = session;
+        }
+
+        @Override
+        void send(String event, Object data) throws IOException {
+            try {
+                session.sendMessage(toSocketMessage(event, data));
+            }
+            catch (SessionLimitExceededException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        void sendHeartbeat() throws IOException {
+            try {
+                session.sendMessage(new PingMessage());
+            }
+            catch (SessionLimitExceededException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        void complete() {
+            try {
+                session.close(CloseStatus.NORMAL);
+            }
+            catch (IOException e) {
+                // Already closed
+            }
+        }
+
+        @Override
+        void completeWithError(Throwable e) {
+            try {
+                session.close(CloseStatus.SERVER_ERROR);
+            }
+            catch (IOException ce) {
+                // Already closed
+            }
+        }
+    }
+
+    private class Subscribers {
+        private final SerialExecutor executor = new SerialExecutor(senders);
+        private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    }
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${tcg.games.events.timeout:1800000}")
+    private long timeout;
+
+    @Value("${tcg.games.events.heartbeat:15000}")
+    private long heartbeat;
+
+    @Value("${tcg.games.events.workers:2}")
+    private int workerCount;
+
+    private ExecutorService senders;
+    private ScheduledExecutorService heartbeats;
+    private final ConcurrentHashMap<String, Subscribers> subscribers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "game-events-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "game-events-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeat > 0) {
+            heartbeats.scheduleWithFixedDelay(this::sendHeartbeats, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Subscribers s : subscribers.values()) {
+            s.subscriptions.forEach(Subscription::complete);
+        }
+
+        heartbeats.shutdown();
+        senders.shutdown();
+    }
+
+    // Must run on the game's executor, so no change happens between the initial state and the subscription. Updates
+    // queued before the subscription describe older states and are skipped until the initial state has been sent.
+    public SseEmitter subscribe(Game game) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        EmitterSubscription subscription = new EmitterSubscription(emitter);
+        String gameId = game.getId();
+        emitter.onCompletion(() -> remove(gameId, subscription));
+        emitter.onTimeout(() -> remove(gameId, subscription));
+        emitter.onError(e -> remove(gameId, subscription));
+        subscribe(game, subscription);
+        return emitter;
+    }
+
+    // Same as above, for the reactive API
+    public Flux<ServerSentEvent<Object>> subscribeEvents(Game game) {
+        UnicastProcessor<ServerSentEvent<Object>> processor = UnicastProcessor.create(Queues.<ServerSentEvent<Object>>get(STREAM_BUFFER_SIZE).get());
+        FluxSubscription subscription = new FluxSubscription(processor.sink());
+        String gameId = game.getId();
+        subscribe(game, subscription);
+        return processor.take(Duration.ofMillis(timeout)).doFinally(signal -> remove(gameId, subscription));
+    }
+
+    // Same as for server-sent events. The session must be safe to send to from several threads.
+    public void subscribe(Game game, WebSocketSession session) {
+        subscribe(game, new SocketSubscription(session));
+    }
+
+    public void unsubscribe(String gameId, WebSocketSession session) {
+        Subscribers s = subscribers.get(gameId);
+        if (s != null) {
+            for (Subscription subscription : s.subscriptions) {
+                if (subscription instanceof SocketSubscription && ((SocketSubscription) subscription).session == session) {
+                    remove(gameId, subscription);
+                }
+            }
+        }
+    }
+
+    public TextMessage toSocketMessage(String event, Object data) throws IOException {
+        return new TextMessage(objectMapper.writeValueAsString(new SocketMessage(event, data)));
+    }
+
+    private void subscribe(Game game, Subscription subscription) {
+        Subscribers s = subscribers.compute(game.getId(), (id, existing) -> {
+            Subscribers result = existing != null ? existing : new Subscribers();
+            result.subscriptions.add(subscription);
+            return result;
+        });
+        Game.GameSimple initial = game.getSimple();
+        s.executor.execute(() -> {
+            if (send(s, subscription, "game", initial)) {
+                subscription.isReady = true;
+                if (initial.state == Game.GameState.END) {
+                    subscription.complete();
+                }
+            }
+        });
+    }
+
+    // Must run on the game's executor, right after the change
+    public void publish(Game game, int previousActionCount) {
+        Subscribers s = subscribers.get(game.getId());
+        if (s == null) {
+            return;
+        }
+
+        GameUpdate update = new GameUpdate();
+        update.id = game.getId();
+        update.state = game.getState();
+        update.turn = game.getTurn();
+        update.cardDrawnThisTurn = game.getCardDrawnThisTurn();
+        List<Game.Action> actions = game.getActions();
+        update.actionCount = actions.size();
+        update.actions = new ArrayList<>(actions.subList(Math.min(previousActionCount, actions.size()), actions.size()));
+        update.players = new ArrayList<>();
+        for (Player p : game.getPlayers()) {
+            update.players.add(p.getSimple());
+        }
+
+        s.executor.execute(() -> {
+            for (Subscription subscription : s.subscriptions) {
+                if (subscription.isReady && send(s, subscription, "update", update)
+                        && update.state == Game.GameState.END) {
+                    subscription.complete();
+                }
+            }
+        });
+    }
+
+    // Must run on the game's executor. Sends the whole game again after changes that were sent could not be saved.
+    public void reset(Game game) {
+        Subscribers s = subscribers.get(game.getId());
+        if (s == null) {
+            return;
+        }
+
+        Game.GameSimple simple = game.getSimple();
+        s.executor.execute(() -> {
+            for (Subscription subscription : s.subscriptions) {
+                if (subscription.isReady && send(s, subscription, "game", simple)
+                        && simple.state == Game.GameState.END) {
+                    subscription.complete();
+                }
+            }
+        });
+    }
+
+    public int getSubscriberCount(String gameId) {
+        Subscribers s = subscribers.get(gameId);
+        return s == null ? 0 : s.subscriptions.size();
+    }
+
+    private void sendHeartbeats() {
+        for (Subscribers s : subscribers.values()) {
+            s.executor.execute(() -> {
+                for (Subscription subscription : s.subscriptions) {
+                    if (subscription.isReady) {
+                        try {
+                            subscription.sendHeartbeat();
+                        }
+                        catch (IOException | IllegalStateException e) {
+                            s.subscriptions.remove(subscription);
+                            subscription.completeWithError(e);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean send(Subscribers s, Subscription subscription, String event, Object data) {
+        try {
+            subscription.send(event, data);
+            return true;
+        }
+        catch (IOException | IllegalStateException e) {
+            s.subscriptions.remove(subscription);
+            subscription.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void remove(String gameId, Subscription subscription) {
+        subscribers.computeIfPresent(gameId, (id, s) -> {
+            s.subscriptions.remove(subscription);
+            return s.subscriptions.isEmpty() ? null : s;
+        });
+    }
+}
@@ -0,0 +1,98 @@
+package tcgserver;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Event sourcing of games for both storage backends. With {@code tcg.games.event-sourced} a game is rebuilt from its
+ * latest snapshot and the actions logged since, and a snapshot is saved every {@code tcg.games.snapshot-interval}
+ * actions. Games are also rebuilt at an earlier action count from the snapshot before it, or from the start when there
+ * is none.
+ */
+@Component
+public class GameHistory {
+    @Autowired
+    private GameSnapshotRepository gameSnapshotRepository;
+
+    @Value("${tcg.games.event-sourced:false}")
+    private boolean isEventSourced;
+
+    @Value("${tcg.games.snapshot-interval:100}")
+    private int snapshotInterval;
+
+    public Optional<Game> toCurrent(Game stored) {
+        if (stored == null || !isEventSourced) {
+            return Optional.ofNullable(stored);
+        }
+
+        Optional<Game> rebuilt = rebuild(stored, stored.getActions().size());
+        if (rebuilt.isPresent()) {
+            return rebuilt;
+        }
+
+        // Games stored before event sourcing was enabled are complete documents, so they become the first snapshot
+        if (stored.getState() == Game.GameState.ACTIVE) {
+            gameSnapshotRepository.save(new GameSnapshot(stored));
+        }
+
+        return Optional.of(stored);
+    }
+
+    public Optional<Game> toActionCount(Game stored, int actionCount) {
+        if (stored == null || actionCount < 0 || actionCount > stored.getActions().size()) {
+            return Optional.empty();
+        }
+
+        Optional<Game> rebuilt = rebuild(stored, actionCount);
+        if (rebuilt.isPresent()) {
+            return rebuilt;
+        }
+
+        // Without a snapshot, as for games that were not event-sourced, the whole log is replayed from the start
+        Game start = stored.toStart();
+        if (start == null || !start.replay(stored.getActions(), actionCount)) {
+            return Optional.empty();
+        }
+
+        start.setVersion(stored.getVersion());
+        return Optional.of(start);
+    }
+
+    public boolean isEventSourced() {
+        return isEventSourced;
+    }
+
+    // Only the action log, the state and the turn need to be written, the rest is rebuilt when the game is read
+    public boolean isAppendOnly(Game game, GameChanges changes) {
+        return isEventSourced && changes.getState() == Game.GameState.ACTIVE && game.getState() == Game.GameState.ACTIVE;
+    }
+
+    public void updated(Game game, GameChanges changes) {
+        if (isEventSourced && game.getState() != Game.GameState.INITIAL && isSnapshotDue(changes, game)) {
+            gameSnapshotRepository.save(new GameSnapshot(game));
+        }
+    }
+
+    private boolean isSnapshotDue(GameChanges changes, Game game) {
+        return changes.getState() == Game.GameState.INITIAL
+                || game.getActions().size() / snapshotInterval > changes.getActionCount() / snapshotInterval;
+    }
+
+    private Optional<Game> rebuild(Game game, int actionCount) {
+        Optional<GameSnapshot> snapshot = gameSnapshotRepository.findFirstByGameIdAndActionCountLessThanEqualOrderByActionCountDesc(game.getId(), actionCount);
+        if (!snapshot.isPresent()) {
+            return Optional.empty();
+        }
+
+        Game rebuilt = snapshot.get().getGame();
+        if (!rebuilt.replay(game.getActions(), actionCount)) {
+            return Optional.empty();
+        }
+
+        rebuilt.setVersion(game.getVersion());
+        return Optional.of(rebuilt);
+    }
+}
@@ -0,0 +1,96 @@
+package tcgserver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the game engine and of the requests it turns down. Engine operations are timed per action type and
+ * result, so the timer counts are also the number of actions of each type. The timers are created up front, so the hot
+ * path only reads an array. Stored games are counted per state when the gauges are read, at most once per refresh
+ * interval.
+ */
+@Component
+public class GameMetrics {
+    private static final int REJECTED = 0;
+    private static final int ACCEPTED = 1;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Value("${tcg.metrics.game-states-refresh:10000}")
+    private long gameStatesRefresh;
+
+    private Timer[][] actions;
+    private Timer[] starts;
+    private volatile long[] gameStateCounts = new long[Game.GameState.values().length];
+    private volatile long gameStatesCountedAt = Long.MIN_VALUE;
+
+    @PostConstruct
+    public void init() {
+        Game.ActionType[] types = Game.ActionType.values();
+        actions = new Timer[types.length][];
+        for (Game.ActionType type : types) {
+            actions[type.ordinal()] = new Timer[] {
+                    meterRegistry.timer("tcg.games.actions", "type", type.name(), "result", "rejected"),
+                    meterRegistry.timer("tcg.games.actions", "type", type.name(), "result", "accepted")
+            };
+        }
+
+        starts = new Timer[] {
+                meterRegistry.timer("tcg.games.starts", "result", "rejected"),
+                meterRegistry.timer("tcg.games.starts", "result", "accepted")
+        };
+        for (Game.GameState state : Game.GameState.values()) {
+            meterRegistry.gauge("tcg.games", Tags.of("state", state.name()), this, m -> m.countGames(state));
+        }
+    }
+
+    public boolean addAction(Game game, Game.Action action) {
+        if (action.getType() == null) {
+            return game.addAction(action);
+        }
+
+        long start = System.nanoTime();
+        boolean isAdded = game.addAction(action);
+        actions[action.getType().ordinal()][isAdded ? ACCEPTED : REJECTED].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return isAdded;
+    }
+
+    public boolean start(Game game) {
+        long start = System.nanoTime();
+        boolean isStarted = game.start();
+        starts[isStarted ? ACCEPTED : REJECTED].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return isStarted;
+    }
+
+    // The reasons are the fixed messages of the API, so they do not grow the number of meters
+    public void recordRejection(HttpStatus status, String reason) {
+        meterRegistry.counter("tcg.api.rejections", "status", String.valueOf(status.value()), "reason", String.valueOf(reason)).increment();
+    }
+
+    private double countGames(Game.GameState state) {
+        long now = System.currentTimeMillis();
+        if (now - gameStatesCountedAt >= gameStatesRefresh) {
+            long[] counts = new long[gameStateCounts.length];
+            for (Game.GameState s : Game.GameState.values()) {
+                counts[s.ordinal()] = gameRepository.countByState(s);
+            }
+
+            gameStateCounts = counts;
+            gameStatesCountedAt = now;
+        }
+
+        return gameStateCounts[state.ordinal()];
+    }
+}
@@ -1,6 +1,5 @@
 package tcgserver;
 
-import org.springframework.data.mongodb.repository.MongoRepository;
-
-public interface GameRepository extends MongoRepository<Game, String> {
+public interface GameRepository extends StorageRepository<Game>, GameRepositoryCustom {
+    long countByState(Game.GameState state);
 }
@@ -0,0 +1,18 @@
+package tcgserver;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface GameRepositoryCustom {
+    Optional<Game> findCurrentById(String id);
+
+    Optional<Game> findByIdAt(String id, int actionCount);
+
+    Optional<Long> findRevisionById(String id);
+
+    Optional<List<Game.Action>> findActionsById(String id, int since, int limit);
+
+    List<Game.GameSummary> findSummaries(Game.GameState state, String after, int limit);
+
+    void update(Game game, GameChanges changes);
+}
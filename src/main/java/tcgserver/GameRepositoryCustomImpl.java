@@ -0,0 +1,161 @@
+package tcgserver;
+
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class GameRepositoryCustomImpl implements GameRepositoryCustom {
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GameHistory gameHistory;
+
+    @Autowired
+    private CardCatalogs cardCatalogs;
+
+    @Override
+    public Optional<Game> findCurrentById(String id) {
+        return gameHistory.toCurrent(mongoTemplate.findById(id, Game.class));
+    }
+
+    @Override
+    public Optional<Game> findByIdAt(String id, int actionCount) {
+        return gameHistory.toActionCount(mongoTemplate.findById(id, Game.class), actionCount);
+    }
+
+    @Override
+    public Optional<Long> findRevisionById(String id) {
+        Document document = mongoTemplate.findOne(revisionQuery(id), Document.class, mongoTemplate.getCollectionName(Game.class));
+        return document == null ? Optional.empty() : Optional.of(toRevision(document));
+    }
+
+    @Override
+    public Optional<List<Game.Action>> findActionsById(String id, int since, int limit) {
+        Document document = mongoTemplate.findOne(actionsQuery(id, since, limit), Document.class, mongoTemplate.getCollectionName(Game.class));
+        return document == null ? Optional.empty() : Optional.of(toActions(document, mongoTemplate.getConverter()));
+    }
+
+    // Pages through the games in id order, reading only the fields of the summary, so neither the action logs nor the
+    // decks are transferred. With a state the page is read from the state index.
+    @Override
+    public List<Game.GameSummary> findSummaries(Game.GameState state, String after, int limit) {
+        List<Game.GameSummary> summaries = new ArrayList<>();
+        for (Document document : mongoTemplate.find(summariesQuery(state, after, limit), Document.class, mongoTemplate.getCollectionName(Game.class))) {
+            summaries.add(toSummary(document));
+        }
+
+        return summaries;
+    }
+
+    // The projection queries are shared with ReactiveGameQueries
+
+    static Query revisionQuery(String id) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        query.fields().include("revision");
+        return query;
+    }
+
+    static long toRevision(Document document) {
+        Number revision = (Number) document.get("revision");
+        return revision == null ? 0 : revision.longValue();
+    }
+
+    static Query actionsQuery(String id, int since, int limit) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        query.fields().include("_id").slice("actions", since, limit);
+        return query;
+    }
+
+    static List<Game.Action> toActions(Document document, MongoConverter converter) {
+        List<Game.Action> actions = new ArrayList<>();
+        @SuppressWarnings("unchecked")
+        List<Document> stored = (List<Document>) document.get("actions");
+        if (stored != null) {
+            for (Document action : stored) {
+                actions.add(converter.read(Game.Action.class, action));
+            }
+        }
+
+        return actions;
+    }
+
+    static Query summariesQuery(Game.GameState state, String after, int limit) {
+        Criteria criteria = new Criteria();
+        if (state != null) {
+            criteria.and("state").is(state);
+        }
+
+        if (after != null) {
+            criteria.and("_id").gt(ObjectId.isValid(after) ? new ObjectId(after) : after);
+        }
+
+        Query query = new Query(criteria).with(Sort.by("_id")).limit(limit);
+        query.fields().include("isDrawCardAtTurnStart").include("state").include("turn").include("players._id");
+        return query;
+    }
+
+    static Game.GameSummary toSummary(Document document) {
+        Game.GameSummary summary = new Game.GameSummary();
+        Object id = document.get("_id");
+        summary.id = id instanceof ObjectId ? ((ObjectId) id).toHexString() : String.valueOf(id);
+        summary.isDrawCardAtTurnStart = Boolean.TRUE.equals(document.get("isDrawCardAtTurnStart"));
+        summary.state = document.get("state") == null ? null : Game.GameState.valueOf(document.getString("state"));
+        summary.turn = document.get("turn") == null ? 0 : ((Number) document.get("turn")).intValue();
+        summary.playerIds = new ArrayList<>();
+        @SuppressWarnings("unchecked")
+        List<Document> players = (List<Document>) document.get("players");
+        if (players != null) {
+            for (Document player : players) {
+                summary.playerIds.add(String.valueOf(player.get("_id")));
+            }
+        }
+
+        return summary;
+    }
+
+    @Override
+    public void update(Game game, GameChanges changes) {
+        if (game.getVersion() == null || changes == null) {
+            mongoTemplate.save(game);
+            return;
+        }
+
+        boolean isAppendOnly = gameHistory.isAppendOnly(game, changes);
+        Update update = isAppendOnly ? changes.toAppendUpdate(game) : changes.toUpdate(game);
+        if (update.getUpdateObject().isEmpty()) {
+            return;
+        }
+
+        // The append-only writes left the players behind, so games that start or end are saved in full, under the
+        // version check of the save. Listings then read the document without replaying it.
+        if (!isAppendOnly && gameHistory.isEventSourced()) {
+            mongoTemplate.save(game);
+            gameHistory.updated(game, changes);
+            return;
+        }
+
+        cardCatalogs.persist(game);
+        update.inc("version", 1);
+        Query query = new Query(Criteria.where("_id").is(game.getId()).and("version").is(game.getVersion()));
+        UpdateResult result = mongoTemplate.updateFirst(query, update, Game.class);
+        if (result.getMatchedCount() < 1) {
+            throw new OptimisticLockingFailureException("Game " + game.getId() + " was modified since version " + game.getVersion());
+        }
+
+        game.setVersion(game.getVersion() + 1);
+        gameHistory.updated(game, changes);
+    }
+}
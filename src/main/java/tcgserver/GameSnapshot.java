@@ -0,0 +1,43 @@
+package tcgserver;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document("gameSnapshots")
+@CompoundIndex(def = "{'gameId': 1, 'actionCount': -1}")
+public class GameSnapshot {
+    @Id
+    private String id;
+    private String gameId;
+    private int actionCount;
+    private Game game;
+
+    public GameSnapshot() {
+        this(null);
+    }
+
+    public GameSnapshot(Game game) {
+        this.game = game;
+        if (game != null) {
+            this.gameId = game.getId();
+            this.actionCount = game.getActions().size();
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    public int getActionCount() {
+        return actionCount;
+    }
+
+    public Game getGame() {
+        return game;
+    }
+}
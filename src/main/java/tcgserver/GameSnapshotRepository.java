@@ -0,0 +1,7 @@
+package tcgserver;
+
+import java.util.Optional;
+
+public interface GameSnapshotRepository extends StorageRepository<GameSnapshot> {
+    Optional<GameSnapshot> findFirstByGameIdAndActionCountLessThanEqualOrderByActionCountDesc(String gameId, int actionCount);
+}
@@ -0,0 +1,184 @@
+package tcgserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Game socket at {@code /ws/games/{id}}. The user is authenticated once, at the handshake, with the same credentials as
+ * the REST API, either in the {@code Authorization} header or, for browsers, as a subprotocol: the client offers
+ * {@code tcg} and {@code tcg.token.<credentials>}, the credentials in URL-safe Base64, and the server selects
+ * {@code tcg}. Credentials are not taken from the URL, which access logs record. After that the client sends actions
+ * as {@code {"id": 1, "type": "PLAY_CARD", "index": 0}} and gets a {@code "result"} message for each of them, along
+ * with the {@code "game"} and {@code "update"} events that {@link GameEvents} sends to server-sent event subscribers.
+ */
+@Component
+@Profile("!reactive")
+public class GameSocketHandler extends TextWebSocketHandler implements HandshakeInterceptor, SubProtocolCapable {
+    private static final String GAME_ID = "gameId";
+    private static final String USER_ID = "userId";
+    private static final String SUBPROTOCOL = "tcg";
+    private static final String TOKEN_SUBPROTOCOL_PREFIX = "tcg.token.";
+
+    public static class ActionRequest {
+        public Integer id;
+        public Game.ActionType type;
+        public int index;
+    }
+
+    public static class ActionResult {
+        public Integer id;
+        public int status;
+        public String message;
+        public int actionCount;
+
+        private ActionResult(Integer id, HttpStatus status, String message, int actionCount) {
+            this.id = id;
+            this.status = status.value();
+            this.message = message;
+            this.actionCount = actionCount;
+        }
+    }
+
+    @Autowired
+    private GameStore gameStore;
+
+    @Autowired
+    private GameEvents gameEvents;
+
+    @Autowired
+    private UserAuthenticator userAuthenticator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private GameMetrics gameMetrics;
+
+    @Value("${tcg.games.sockets.send-time-limit:10000}")
+    private int sendTimeLimit;
+
+    @Value("${tcg.games.sockets.buffer-size-limit:524288}")
+    private int bufferSizeLimit;
+
+    private final ConcurrentHashMap<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String path = request.getURI().getPath();
+        String gameId = path.substring(path.lastIndexOf('/') + 1);
+        String token = null;
+        for (String protocol : new WebSocketHttpHeaders(request.getHeaders()).getSecWebSocketProtocol()) {
+            if (protocol.startsWith(TOKEN_SUBPROTOCOL_PREFIX)) {
+                token = protocol.substring(TOKEN_SUBPROTOCOL_PREFIX.length());
+            }
+        }
+
+        User user = token != null
+                ? userAuthenticator.getAuthorizedUserForToken(token)
+                : userAuthenticator.getAuthorizedUser(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+        if (user == null) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        if (!gameStore.read(gameId, Game::getId).isPresent()) {
+            response.setStatusCode(HttpStatus.NOT_FOUND);
+            return false;
+        }
+
+        attributes.put(GAME_ID, gameId);
+        attributes.put(USER_ID, user.getId());
+        return true;
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return Collections.singletonList(SUBPROTOCOL);
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        WebSocketSession concurrentSession = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, bufferSizeLimit);
+        sessions.put(session.getId(), concurrentSession);
+        String gameId = getGameId(session);
+        if (!gameStore.read(gameId, game -> {
+            gameEvents.subscribe(game, concurrentSession);
+            return true;
+        }).isPresent()) {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Game not found"));
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        WebSocketSession concurrentSession = sessions.get(session.getId());
+        ActionRequest request;
+        try {
+            request = objectMapper.readValue(message.getPayload(), ActionRequest.class);
+        }
+        catch (IOException e) {
+            gameMetrics.recordRejection(HttpStatus.BAD_REQUEST, "Invalid action");
+            concurrentSession.sendMessage(gameEvents.toSocketMessage("result", new ActionResult(null, HttpStatus.BAD_REQUEST, "Invalid action", 0)));
+            return;
+        }
+
+        String userId = (String) session.getAttributes().get(USER_ID);
+        Optional<ActionResult> result = gameStore.update(getGameId(session), game -> {
+            int player = game.getPlayerIndex(userId);
+            if (player < 0) {
+                return new ActionResult(request.id, HttpStatus.FORBIDDEN, "Not authorized", game.getActions().size());
+            }
+
+            if (request.type == null || !gameMetrics.addAction(game, new Game.Action(player, request.type, request.index))) {
+                return new ActionResult(request.id, HttpStatus.BAD_REQUEST, "Could not add action", game.getActions().size());
+            }
+
+            return new ActionResult(request.id, HttpStatus.OK, null, game.getActions().size());
+        });
+        ActionResult actionResult = result.orElseGet(() -> new ActionResult(request.id, HttpStatus.NOT_FOUND, "Game not found", 0));
+        if (actionResult.status != HttpStatus.OK.value()) {
+            gameMetrics.recordRejection(HttpStatus.valueOf(actionResult.status), actionResult.message);
+        }
+
+        concurrentSession.sendMessage(gameEvents.toSocketMessage("result", actionResult));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        WebSocketSession concurrentSession = sessions.remove(session.getId());
+        if (concurrentSession != null) {
+            gameEvents.unsubscribe(getGameId(session), concurrentSession);
+        }
+    }
+
+    private static String getGameId(WebSocketSession session) {
+        return (String) session.getAttributes().get(GAME_ID);
+    }
+}
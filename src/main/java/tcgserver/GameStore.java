@@ -0,0 +1,450 @@
+package tcgserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+public class GameStore {
+    private static final Logger logger = LoggerFactory.getLogger(GameStore.class);
+
+    public interface GameOperation<T, E extends Exception> {
+        T apply(Game game) throws E;
+    }
+
+    private interface Task<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private static class AppliedOperation {
+        private final GameOperation<?, ?> operation;
+        private Object result;
+        private Throwable failure;
+
+        private AppliedOperation(GameOperation<?, ?> operation, Object result) {
+            this.operation = operation;
+            this.result = result;
+        }
+    }
+
+    private class Entry {
+        private final String id;
+        private final SerialExecutor executor;
+        private final List<AppliedOperation> pending;
+        private Game game;
+        private GameChanges persisted;
+        private volatile long lastAccess;
+        private boolean isDirty;
+        private ScheduledFuture<?> flush;
+
+        private Entry(String id, Game game) {
+            this.id = id;
+            this.game = game;
+            this.persisted = GameChanges.since(game);
+            this.executor = new SerialExecutor(workers);
+            this.pending = new ArrayList<>();
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private GameEvents gameEvents;
+
+    @Value("${tcg.games.cache-size:10000}")
+    private int cacheSize;
+
+    @Value("${tcg.games.flush-delay:1000}")
+    private long flushDelay;
+
+    @Value("${tcg.games.workers:0}")
+    private int workerCount;
+
+    @Value("${tcg.games.max-retries:3}")
+    private int maxRetries;
+
+    private ExecutorService workers;
+    private Counter conflicts;
+    private Counter retries;
+    private Counter failures;
+    private Counter droppedOperations;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "game-store-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean isEvicting = new AtomicBoolean(false);
+    // The entry whose task the current worker thread is running
+    private final ThreadLocal<Entry> runningEntry = new ThreadLocal<>();
+
+    @PostConstruct
+    public void init() {
+        int threads = workerCount > 0 ? workerCount : 2 * Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "game-worker-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        conflicts = meterRegistry.counter("tcg.games.save.conflicts");
+        retries = meterRegistry.counter("tcg.games.save.retries");
+        failures = meterRegistry.counter("tcg.games.save.failures");
+        droppedOperations = meterRegistry.counter("tcg.games.save.dropped.operations");
+    }
+
+    @PreDestroy
+    public void close() {
+        flushAll();
+        flusher.shutdown();
+        workers.shutdown();
+    }
+
+    public Game insert(Game game) {
+        gameRepository.save(game);
+        if (isLive(game)) {
+            entries.put(game.getId(), new Entry(game.getId(), game));
+            evictIfFull();
+        }
+
+        return game;
+    }
+
+    public <T, E extends Exception> Optional<T> read(String id, GameOperation<T, E> operation) throws E {
+        Entry entry = getEntry(id);
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(submit(entry, () -> operation.apply(entry.game)));
+    }
+
+    public <T, E extends Exception> Optional<T> readIfCached(String id, GameOperation<T, E> operation) throws E {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(submit(entry, () -> operation.apply(entry.game)));
+    }
+
+    // The asynchronous versions never block the caller: a game that is not cached is loaded on the workers, and the
+    // futures complete on the game's executor, failing with whatever the operation throws
+
+    public <T, E extends Exception> CompletableFuture<Optional<T>> readAsync(String id, GameOperation<T, E> operation) {
+        return getEntryAsync(id).thenCompose(entry -> entry == null
+                ? CompletableFuture.completedFuture(Optional.<T>empty())
+                : submitAsync(entry, () -> operation.apply(entry.game)).thenApply(Optional::ofNullable));
+    }
+
+    public <T, E extends Exception> CompletableFuture<Optional<T>> readIfCachedAsync(String id, GameOperation<T, E> operation) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        return submitAsync(entry, () -> operation.apply(entry.game)).thenApply(Optional::ofNullable);
+    }
+
+    public <T, E extends Exception> CompletableFuture<Optional<T>> updateAsync(String id, GameOperation<T, E> operation) {
+        return getEntryAsync(id).thenCompose(entry -> entry == null
+                ? CompletableFuture.completedFuture(Optional.<T>empty())
+                : submitAsync(entry, () -> applyUpdate(entry, operation)).thenApply(Optional::ofNullable));
+    }
+
+    // Answers from the cached game, or from the stored revision without loading the game
+    public Optional<Long> readRevision(String id) {
+        Optional<Long> revision = readIfCached(id, Game::getRevision);
+        return revision.isPresent() ? revision : gameRepository.findRevisionById(id);
+    }
+
+    // Copies only the requested actions, from the cached game or from a slice of the stored action log
+    public Optional<List<Game.Action>> readActions(String id, int since, int limit) {
+        Optional<List<Game.Action>> actions = readIfCached(id, game -> {
+            List<Game.Action> all = game.getActions();
+            return new ArrayList<>(all.subList(Math.min(since, all.size()), (int) Math.min((long) since + limit, all.size())));
+        });
+        return actions.isPresent() ? actions : gameRepository.findActionsById(id, since, limit);
+    }
+
+    public <T, E extends Exception> Optional<T> update(String id, GameOperation<T, E> operation) throws E {
+        Entry entry = getEntry(id);
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(submit(entry, () -> applyUpdate(entry, operation)));
+    }
+
+    public void flushAll() {
+        List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            flushes.add(CompletableFuture.runAsync(() -> flushInBackground(entry), entry.executor));
+        }
+
+        CompletableFuture.allOf(flushes.toArray(new CompletableFuture[0])).join();
+    }
+
+    // Waiting on a game's executor from a task of its own would never return, so such a task runs inline. Waiting on
+    // another game could take every worker.
+    private <T, E extends Exception> T submit(Entry entry, Task<T, E> task) throws E {
+        Entry running = runningEntry.get();
+        if (running == entry) {
+            entry.lastAccess = System.nanoTime();
+            return task.run();
+        }
+        else if (running != null) {
+            throw new IllegalStateException("Game " + running.id + " cannot wait for game " + entry.id + ", use the asynchronous methods");
+        }
+
+        try {
+            return submitAsync(entry, task).join();
+        }
+        catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw sneakyThrow(cause);
+        }
+    }
+
+    // Must run on the entry's executor
+    private <T, E extends Exception> T applyUpdate(Entry entry, GameOperation<T, E> operation) throws E {
+        Game.GameState state = entry.game.getState();
+        int playerCount = entry.game.getPlayers().size();
+        int actionCount = entry.game.getActions().size();
+        AppliedOperation applied = new AppliedOperation(operation, operation.apply(entry.game));
+        entry.pending.add(applied);
+        entry.isDirty = true;
+        if (!isLive(entry.game)) {
+            entries.remove(entry.id, entry);
+            flush(entry);
+        }
+        else if (flushDelay > 0) {
+            scheduleFlush(entry);
+        }
+        else {
+            flush(entry);
+        }
+
+        Game game = entry.game;
+        if (game.getState() != state || game.getPlayers().size() != playerCount || game.getActions().size() != actionCount) {
+            gameEvents.publish(game, actionCount);
+        }
+
+        if (applied.failure != null) {
+            throw GameStore.<E>sneakyThrow(applied.failure);
+        }
+
+        @SuppressWarnings("unchecked")
+        T result = (T) applied.result;
+        return result;
+    }
+
+    private <T, E extends Exception> CompletableFuture<T> submitAsync(Entry entry, Task<T, E> task) {
+        entry.lastAccess = System.nanoTime();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        entry.executor.execute(() -> {
+            runningEntry.set(entry);
+            try {
+                future.complete(task.run());
+            }
+            catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+            finally {
+                runningEntry.remove();
+            }
+        });
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Exception> E sneakyThrow(Throwable t) throws E {
+        throw (E) t;
+    }
+
+    private Entry getEntry(String id) {
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            return entry;
+        }
+
+        Optional<Game> game = gameRepository.findCurrentById(id);
+        if (!game.isPresent()) {
+            return null;
+        }
+
+        Entry loaded = new Entry(id, game.get());
+        if (!isLive(loaded.game)) {
+            return loaded;
+        }
+
+        Entry existing = entries.putIfAbsent(id, loaded);
+        if (existing != null) {
+            return existing;
+        }
+
+        evictIfFull();
+        return loaded;
+    }
+
+    private CompletableFuture<Entry> getEntryAsync(String id) {
+        Entry entry = entries.get(id);
+        return entry != null ? CompletableFuture.completedFuture(entry) : CompletableFuture.supplyAsync(() -> getEntry(id), workers);
+    }
+
+    private void evictIfFull() {
+        if (entries.size() <= cacheSize || !isEvicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            int evictCount = candidates.size() - cacheSize + cacheSize / 10;
+            for (int i = 0; i < evictCount && i < candidates.size(); i++) {
+                Map.Entry<String, Entry> candidate = candidates.get(i);
+                Entry entry = candidate.getValue();
+                if (entries.remove(candidate.getKey(), entry)) {
+                    entry.executor.execute(() -> flushInBackground(entry));
+                }
+            }
+        }
+        finally {
+            isEvicting.set(false);
+        }
+    }
+
+    private void scheduleFlush(Entry entry) {
+        if (entry.flush != null && !entry.flush.isDone()) {
+            return;
+        }
+
+        entry.flush = flusher.schedule(() -> entry.executor.execute(() -> flushInBackground(entry)), flushDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushInBackground(Entry entry) {
+        try {
+            flush(entry);
+        }
+        catch (OptimisticLockingFailureException e) {
+            // Logged as the operations were dropped
+        }
+        catch (RuntimeException e) {
+            logger.warn("Could not flush game {}", entry.id, e);
+        }
+    }
+
+    private void flush(Entry entry) {
+        if (!entry.isDirty) {
+            return;
+        }
+
+        boolean isReloaded = false;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                gameRepository.update(entry.game, entry.persisted);
+                break;
+            }
+            catch (OptimisticLockingFailureException e) {
+                conflicts.increment();
+                if (attempt >= maxRetries || !reload(entry)) {
+                    // With a flush delay the callers were already answered, so the subscribers are sent the stored game
+                    logger.error("Dropped {} operations of game {} after {} conflicting saves", entry.pending.size(), entry.id, attempt + 1, e);
+                    failures.increment();
+                    entries.remove(entry.id, entry);
+                    entry.pending.clear();
+                    entry.isDirty = false;
+                    resetSubscribers(entry.id);
+                    throw e;
+                }
+
+                retries.increment();
+                isReloaded = true;
+            }
+        }
+
+        entry.persisted = GameChanges.since(entry.game);
+        entry.pending.clear();
+        entry.isDirty = false;
+        if (isReloaded) {
+            // The subscribers were sent the changes made to the game before it was reloaded
+            gameEvents.reset(entry.game);
+        }
+    }
+
+    private void resetSubscribers(String id) {
+        if (gameEvents.getSubscriberCount(id) > 0) {
+            getEntryAsync(id).thenAccept(reloaded -> {
+                if (reloaded != null) {
+                    reloaded.executor.execute(() -> gameEvents.reset(reloaded.game));
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean reload(Entry entry) {
+        Optional<Game> game = gameRepository.findCurrentById(entry.id);
+        if (!game.isPresent()) {
+            return false;
+        }
+
+        entry.game = game.get();
+        entry.persisted = GameChanges.since(entry.game);
+        for (AppliedOperation applied : entry.pending) {
+            try {
+                applied.result = ((GameOperation<Object, ?>) applied.operation).apply(entry.game);
+                applied.failure = null;
+            }
+            catch (Exception | AssertionError e) {
+                logger.error("Dropped an operation of game {} that no longer applies to the stored game", entry.id, e);
+                applied.failure = e;
+                droppedOperations.increment();
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isLive(Game game) {
+        return game.getState() == Game.GameState.INITIAL || game.getState() == Game.GameState.ACTIVE;
+    }
+}
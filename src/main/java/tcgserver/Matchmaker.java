@@ -0,0 +1,230 @@
+package tcgserver;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pairs waiting users into new games. Users are added to a lock-free queue, and a serial pairing task drains it, so
+ * enqueueing never blocks and no two pairings can pick the same user. Games are created and started on a worker pool,
+ * outside of the pairing task.
+ */
+@Component
+public class Matchmaker {
+    public static class Ticket {
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int MATCHED = 2;
+
+        private final User user;
+        private final CompletableFuture<Game> match = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile boolean isCancelRequested;
+
+        private Ticket(User user) {
+            this.user = user;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        // Completed with the started game, or cancelled
+        public CompletableFuture<Game> getMatch() {
+            return match;
+        }
+
+        private boolean claim() {
+            return state.compareAndSet(WAITING, MATCHED);
+        }
+
+        // A cancel that came while the ticket was claimed is completed here
+        private boolean release() {
+            state.set(WAITING);
+            if (isCancelRequested && state.compareAndSet(WAITING, CANCELLED)) {
+                match.cancel(false);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    @Autowired
+    private GameStore gameStore;
+
+    @Autowired
+    private CardCatalogs cardCatalogs;
+
+    @Value("${tcg.matchmaking.workers:2}")
+    private int workerCount;
+
+    private ExecutorService workers;
+    private SerialExecutor pairing;
+    private final Queue<Ticket> queue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private final AtomicBoolean isPairingScheduled = new AtomicBoolean();
+    // Only touched by the pairing task
+    private final ArrayDeque<Ticket> waiting = new ArrayDeque<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "matchmaking-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pairing = new SerialExecutor(workers);
+    }
+
+    @PreDestroy
+    public void close() {
+        workers.shutdown();
+    }
+
+    // A user that is already waiting gives up the previous ticket. If that ticket is already being matched, it is
+    // returned instead, so the user is not matched into two games.
+    public Ticket enqueue(User user) {
+        Ticket ticket = new Ticket(user);
+        Ticket[] replaced = new Ticket[1];
+        Ticket current = tickets.compute(user.getId(), (userId, previous) -> {
+            if (previous != null && !previous.state.compareAndSet(Ticket.WAITING, Ticket.CANCELLED)
+                    && previous.state.get() == Ticket.MATCHED) {
+                return previous;
+            }
+
+            replaced[0] = previous;
+            return ticket;
+        });
+        if (current != ticket) {
+            return current;
+        }
+
+        if (replaced[0] != null) {
+            replaced[0].match.cancel(false);
+        }
+
+        queue.add(ticket);
+        // One pass picks up every ticket queued before it starts, so a burst of users schedules only a few passes
+        if (isPairingScheduled.compareAndSet(false, true)) {
+            pairing.execute(this::pair);
+        }
+
+        return ticket;
+    }
+
+    // Fails if the ticket has already been matched. The match then completes shortly, with the game, or is cancelled
+    // if the match fell through.
+    public boolean cancel(Ticket ticket) {
+        ticket.isCancelRequested = true;
+        tickets.remove(ticket.user.getId(), ticket);
+        if (!ticket.state.compareAndSet(Ticket.WAITING, Ticket.CANCELLED)) {
+            return false;
+        }
+
+        ticket.match.cancel(false);
+        return true;
+    }
+
+    public boolean cancel(String userId) {
+        Ticket ticket = tickets.get(userId);
+        return ticket != null && cancel(ticket);
+    }
+
+    public int getWaitingCount() {
+        return tickets.size();
+    }
+
+    private void pair() {
+        isPairingScheduled.set(false);
+        for (Ticket ticket = queue.poll(); ticket != null; ticket = queue.poll()) {
+            waiting.add(ticket);
+        }
+
+        List<Ticket> group = new ArrayList<>();
+        while (!waiting.isEmpty()) {
+            Ticket ticket = waiting.poll();
+            if (ticket.state.get() == Ticket.WAITING) {
+                group.add(ticket);
+            }
+
+            if (group.size() == Game.MAX_PLAYERS || (waiting.isEmpty() && group.size() >= Game.MIN_PLAYERS)) {
+                List<Ticket> claimed = new ArrayList<>();
+                for (Ticket member : group) {
+                    if (member.claim()) {
+                        claimed.add(member);
+                    }
+                }
+
+                if (claimed.size() >= Game.MIN_PLAYERS) {
+                    startGame(claimed);
+                }
+                else {
+                    // Someone cancelled in the meantime, the others go back to the front of the line
+                    for (int i = claimed.size() - 1; i >= 0; i--) {
+                        if (claimed.get(i).release()) {
+                            waiting.addFirst(claimed.get(i));
+                        }
+                    }
+                }
+
+                group = new ArrayList<>();
+            }
+        }
+
+        waiting.addAll(group);
+    }
+
+    private void startGame(List<Ticket> group) {
+        for (Ticket ticket : group) {
+            tickets.remove(ticket.user.getId(), ticket);
+        }
+
+        Runnable task = () -> {
+            try {
+                Game game = new Game(cardCatalogs.getCurrent());
+                for (Ticket ticket : group) {
+                    game.addPlayer(ticket.user);
+                }
+
+                if (!game.start()) {
+                    throw new IllegalStateException("The game could not be started with catalog " + game.getCatalogVersion());
+                }
+
+                gameStore.insert(game);
+                for (Ticket ticket : group) {
+                    ticket.match.complete(game);
+                }
+            }
+            catch (RuntimeException | AssertionError e) {
+                for (Ticket ticket : group) {
+                    ticket.match.completeExceptionally(e);
+                }
+            }
+        };
+        try {
+            workers.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            for (Ticket ticket : group) {
+                ticket.match.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package tcgserver;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+@Component
+@Profile("memory")
+public class MemoryCardCatalogRepository extends MemoryRepository<CardCatalog> implements CardCatalogRepository {
+    public MemoryCardCatalogRepository() {
+        super(CardCatalog.class);
+    }
+}
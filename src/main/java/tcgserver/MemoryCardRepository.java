@@ -0,0 +1,12 @@
+package tcgserver;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+@Component
+@Profile("memory")
+public class MemoryCardRepository extends MemoryRepository<Card> implements CardRepository {
+    public MemoryCardRepository() {
+        super(Card.class);
+    }
+}
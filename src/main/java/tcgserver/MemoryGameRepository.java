@@ -0,0 +1,101 @@
+package tcgserver;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Games of the memory profile. Updates replace the whole document, checking its version, and the projections read the
+ * stored document without converting the rest of it. The state index serves the listings and counts by state.
+ */
+@Component
+@Profile("memory")
+public class MemoryGameRepository extends MemoryRepository<Game> implements GameRepository {
+    @Autowired
+    private GameHistory gameHistory;
+
+    public MemoryGameRepository() {
+        super(Game.class);
+    }
+
+    @PostConstruct
+    public void init() {
+        store.createIndex(type, "state", false);
+    }
+
+    @Override
+    public long countByState(Game.GameState state) {
+        return store.countByIndex(type, "state", state.name());
+    }
+
+    @Override
+    public Optional<Game> findCurrentById(String id) {
+        return gameHistory.toCurrent(findById(id).orElse(null));
+    }
+
+    @Override
+    public Optional<Game> findByIdAt(String id, int actionCount) {
+        return gameHistory.toActionCount(findById(id).orElse(null), actionCount);
+    }
+
+    @Override
+    public Optional<Long> findRevisionById(String id) {
+        Document document = store.findStored(type, id);
+        return document == null ? Optional.empty() : Optional.of(GameRepositoryCustomImpl.toRevision(document));
+    }
+
+    @Override
+    public Optional<List<Game.Action>> findActionsById(String id, int since, int limit) {
+        Document document = store.findStored(type, id);
+        if (document == null) {
+            return Optional.empty();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Document> actions = (List<Document>) document.get("actions");
+        List<Document> slice = new ArrayList<>();
+        if (actions != null) {
+            slice.addAll(actions.subList(Math.min(since, actions.size()), (int) Math.min((long) since + limit, actions.size())));
+        }
+
+        return Optional.of(GameRepositoryCustomImpl.toActions(new Document("actions", slice), store.getConverter()));
+    }
+
+    @Override
+    public List<Game.GameSummary> findSummaries(Game.GameState state, String after, int limit) {
+        List<Game.GameSummary> summaries = new ArrayList<>();
+        Iterable<Document> documents = state == null
+                ? store.findStoredAfter(type, after)
+                : store.findStoredAfter(type, "state", state.name(), after, limit);
+        for (Document document : documents) {
+            if (summaries.size() >= limit) {
+                break;
+            }
+
+            summaries.add(GameRepositoryCustomImpl.toSummary(document));
+        }
+
+        return summaries;
+    }
+
+    @Override
+    public void update(Game game, GameChanges changes) {
+        if (game.getVersion() == null || changes == null) {
+            store.save(game);
+            return;
+        }
+
+        if (changes.toUpdate(game).getUpdateObject().isEmpty()) {
+            return;
+        }
+
+        store.save(game);
+        gameHistory.updated(game, changes);
+    }
+}
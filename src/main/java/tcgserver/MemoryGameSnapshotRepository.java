@@ -0,0 +1,37 @@
+package tcgserver;
+
+import org.bson.Document;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Optional;
+
+@Component
+@Profile("memory")
+public class MemoryGameSnapshotRepository extends MemoryRepository<GameSnapshot> implements GameSnapshotRepository {
+    public MemoryGameSnapshotRepository() {
+        super(GameSnapshot.class);
+    }
+
+    @PostConstruct
+    public void init() {
+        store.createIndex(type, "gameId", false);
+    }
+
+    // Only the snapshot found is converted
+    @Override
+    public Optional<GameSnapshot> findFirstByGameIdAndActionCountLessThanEqualOrderByActionCountDesc(String gameId, int actionCount) {
+        Document found = null;
+        int foundActionCount = -1;
+        for (Document document : store.findStored(type, "gameId", gameId)) {
+            Number count = (Number) document.get("actionCount");
+            if (count != null && count.intValue() <= actionCount && count.intValue() > foundActionCount) {
+                found = document;
+                foundActionCount = count.intValue();
+            }
+        }
+
+        return found == null ? Optional.empty() : Optional.of(store.read(type, found));
+    }
+}
@@ -0,0 +1,705 @@
+package tcgserver;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Makes the writes to the {@link MemoryStore} durable between its snapshots, for single node deployments that run
+ * without a database. With {@code tcg.journal.path} every write is appended as a record to memory mapped segment files
+ * in that directory: a new document in full, a changed one as the fields that changed, so an accepted action appends
+ * itself, the players and the counters of its game. Records are copied into the mapping by the writing thread and
+ * survive the process dying at once. They are forced to disk every {@code tcg.journal.sync-interval} milliseconds, or
+ * after each record when it is 0, which is what they need to survive the machine failing.
+ * <p>
+ * On startup the records written since the store's snapshot are replayed over it, and a corrupt record fails the
+ * startup unless it ends the last segment, where a crash can leave a record incomplete. A segment rolls once it holds
+ * {@code tcg.journal.segment-size} bytes and is deleted once a snapshot covers it. A game that ends is written in
+ * full, and rolled segments are rewritten without the records it replaces once those are half of the segment.
+ * <p>
+ * The store closes the journal after its last write.
+ */
+@Component
+@Profile("memory")
+public class MemoryJournal {
+    private static final Logger logger = LoggerFactory.getLogger(MemoryJournal.class);
+    // The record length, its CRC32 and its sequence number precede each record
+    private static final int HEADER_SIZE = 16;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final DocumentCodec CODEC = new DocumentCodec();
+
+    private static class Segment {
+        private final long firstSequence;
+        private final Path path;
+        // Only the active segment is mapped for writing
+        private MappedByteBuffer buffer;
+        private int records;
+        private int deadRecords;
+        private final Map<String, Integer> gameRecords = new HashMap<>();
+
+        private Segment(long firstSequence, Path path) {
+            this.firstSequence = firstSequence;
+            this.path = path;
+        }
+    }
+
+    private static class Frame {
+        private final long sequence;
+        private final int checksum;
+        private final byte[] record;
+
+        private Frame(long sequence, int checksum, byte[] record) {
+            this.sequence = sequence;
+            this.checksum = checksum;
+            this.record = record;
+        }
+    }
+
+    @Autowired
+    private MemoryStore store;
+
+    @Value("${tcg.journal.path:}")
+    private String path;
+
+    @Value("${tcg.journal.segment-size:67108864}")
+    private int segmentSize;
+
+    @Value("${tcg.journal.sync-interval:100}")
+    private long syncInterval;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "memory-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The sequence number of the full record of each ended game, the records of the game before it are dead
+    private final ConcurrentHashMap<String, Long> endedGames = new ConcurrentHashMap<>();
+    // The rolled segments, oldest first
+    private final List<Segment> segments = new ArrayList<>();
+    private Path directory;
+    private String gameCollection;
+    private Segment active;
+    private long nextSequence;
+    private boolean isDirty;
+    private boolean isCompactionScheduled;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (path.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        directory = Paths.get(path);
+        Files.createDirectories(directory);
+        gameCollection = store.getCollectionName(Game.class);
+        long position = store.getSnapshotPosition();
+        nextSequence = position;
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+
+        files.sort(null);
+        int end = scan(files);
+        int replayed = 0;
+        for (Path file : files) {
+            replayed += replay(file, position);
+        }
+
+        synchronized (this) {
+            active = files.isEmpty() ? openSegment(nextSequence, segmentSize) : reopen(segments.remove(segments.size() - 1), end);
+            scheduleCompactionIfDue();
+        }
+
+        store.setJournal(this);
+        if (syncInterval > 0) {
+            executor.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        }
+
+        logger.info("Replayed {} journal records from {} in {} ms", replayed, directory, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (active == null) {
+                return;
+            }
+
+            active.buffer.force();
+            active.buffer = null;
+            segments.add(active);
+            active = null;
+        }
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The sequence number of the next record, the snapshots of the store cover the records before it
+    synchronized long getPosition() {
+        return nextSequence;
+    }
+
+    void written(String collection, String id, Document previous, Document document) {
+        boolean isGame = collection.equals(gameCollection);
+        boolean isEnded = isGame && isEnded(document) && (previous == null || !isEnded(previous));
+        Document record = previous == null || isEnded
+                ? new Document("op", "put").append("c", collection).append("d", document)
+                : toUpdate(collection, id, previous, document);
+        if (record != null) {
+            append(encode(record), isGame ? id : null, isEnded);
+        }
+    }
+
+    void deleted(String collection, String id) {
+        Document record = new Document("op", "delete").append("c", collection);
+        if (id != null) {
+            record.append("id", id);
+        }
+
+        append(encode(record), null, false);
+    }
+
+    // Runs on the journal's thread, so it never deletes a segment that is being compacted
+    void snapshotWritten(long position) {
+        executor.execute(() -> {
+            List<Segment> covered = new ArrayList<>();
+            synchronized (this) {
+                while (!segments.isEmpty() && nextFirstSequence(0) <= position) {
+                    covered.add(segments.remove(0));
+                }
+
+                long oldest = segments.isEmpty() ? nextFirstSequence(-1) : segments.get(0).firstSequence;
+                endedGames.values().removeIf(sequence -> sequence < oldest);
+            }
+
+            for (Segment segment : covered) {
+                try {
+                    Files.deleteIfExists(segment.path);
+                }
+                catch (IOException e) {
+                    logger.error("Failed to delete the journal segment " + segment.path, e);
+                }
+            }
+        });
+    }
+
+    private void append(byte[] record, String gameId, boolean isEnded) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        int checksum = (int) crc.getValue();
+        synchronized (this) {
+            if (active == null) {
+                throw new IllegalStateException("The journal is closed");
+            }
+
+            if (active.buffer.remaining() < HEADER_SIZE + record.length) {
+                roll(HEADER_SIZE + record.length);
+            }
+
+            long sequence = nextSequence++;
+            active.buffer.putInt(record.length).putInt(checksum).putLong(sequence).put(record);
+            count(active, gameId, isEnded, sequence);
+            if (syncInterval == 0) {
+                active.buffer.force();
+            }
+            else {
+                isDirty = true;
+            }
+        }
+    }
+
+    // Must hold the lock
+    private void count(Segment segment, String gameId, boolean isEnded, long sequence) {
+        segment.records++;
+        if (gameId == null) {
+            return;
+        }
+
+        if (isEnded) {
+            endedGames.put(gameId, sequence);
+            for (Segment rolled : segments) {
+                markDead(rolled, gameId);
+            }
+
+            markDead(active, gameId);
+            scheduleCompactionIfDue();
+        }
+        else {
+            segment.gameRecords.merge(gameId, 1, Integer::sum);
+        }
+    }
+
+    private static void markDead(Segment segment, String gameId) {
+        Integer records = segment == null ? null : segment.gameRecords.remove(gameId);
+        if (records != null) {
+            segment.deadRecords += records;
+        }
+    }
+
+    // Must hold the lock
+    private void roll(int minSize) {
+        active.buffer.force();
+        active.buffer = null;
+        segments.add(active);
+        active = openSegment(nextSequence, Math.max(segmentSize, minSize));
+        scheduleCompactionIfDue();
+    }
+
+    // Must hold the lock
+    private long nextFirstSequence(int index) {
+        if (index + 1 < segments.size()) {
+            return segments.get(index + 1).firstSequence;
+        }
+
+        return active == null ? nextSequence : active.firstSequence;
+    }
+
+    private void sync() {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            if (!isDirty || active == null) {
+                return;
+            }
+
+            isDirty = false;
+            buffer = active.buffer;
+        }
+
+        buffer.force();
+    }
+
+    // Must hold the lock. Segments are not compacted before they are replayed.
+    private void scheduleCompactionIfDue() {
+        if (isCompactionScheduled || active == null) {
+            return;
+        }
+
+        for (Segment segment : segments) {
+            if (isCompactionDue(segment)) {
+                isCompactionScheduled = true;
+                executor.execute(this::compact);
+                return;
+            }
+        }
+    }
+
+    private static boolean isCompactionDue(Segment segment) {
+        return segment.deadRecords > 0 && segment.deadRecords * 2 >= segment.records;
+    }
+
+    private void compact() {
+        List<Segment> due = new ArrayList<>();
+        synchronized (this) {
+            isCompactionScheduled = false;
+            for (Segment segment : segments) {
+                if (isCompactionDue(segment)) {
+                    due.add(segment);
+                }
+            }
+        }
+
+        for (Segment segment : due) {
+            try {
+                compact(segment);
+            }
+            catch (IOException | RuntimeException e) {
+                logger.error("Failed to compact the journal segment " + segment.path, e);
+            }
+        }
+    }
+
+    // Rolled segments are only written here, so the records are read and rewritten without the lock
+    private void compact(Segment segment) throws IOException {
+        List<Frame> kept = new ArrayList<>();
+        List<String> keptGameIds = new ArrayList<>();
+        int total = 0;
+        for (Frame frame : readFrames(segment.path, null)) {
+            total++;
+            String gameId = getGameId(new RawBsonDocument(frame.record));
+            Long ended = gameId == null ? null : endedGames.get(gameId);
+            if (ended == null || ended <= frame.sequence) {
+                kept.add(frame);
+                keptGameIds.add(gameId);
+            }
+        }
+
+        if (kept.isEmpty()) {
+            synchronized (this) {
+                segments.remove(segment);
+            }
+
+            Files.deleteIfExists(segment.path);
+            logger.debug("Deleted the journal segment {} of {} dead records", segment.path, total);
+            return;
+        }
+
+        Path temporary = segment.path.resolveSibling(segment.path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Frame frame : kept) {
+                ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + frame.record.length);
+                buffer.putInt(frame.record.length).putInt(frame.checksum).putLong(frame.sequence).put(frame.record);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(temporary, segment.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            segment.records = kept.size();
+            segment.deadRecords = 0;
+            segment.gameRecords.clear();
+            for (int i = 0; i < kept.size(); i++) {
+                String gameId = keptGameIds.get(i);
+                Long ended = gameId == null ? null : endedGames.get(gameId);
+                if (ended != null && ended > kept.get(i).sequence) {
+                    segment.deadRecords++;
+                }
+                else if (gameId != null && ended == null) {
+                    segment.gameRecords.merge(gameId, 1, Integer::sum);
+                }
+            }
+        }
+
+        logger.debug("Compacted the journal segment {} from {} to {} records", segment.path, total, kept.size());
+    }
+
+    // Counts the records of the segments and finds the games that ended, returning the end of the last record of the
+    // last segment. Only the last segment can end in a record that was not completely written, the others were forced
+    // before the next one was created.
+    private int scan(List<Path> files) throws IOException {
+        int[] end = new int[1];
+        synchronized (this) {
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                String name = file.getFileName().toString();
+                Segment segment = new Segment(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+                segments.add(segment);
+                for (Frame frame : readFrames(file, end)) {
+                    RawBsonDocument record = new RawBsonDocument(frame.record);
+                    String gameId = getGameId(record);
+                    count(segment, gameId, gameId != null && isEndedGame(record), frame.sequence);
+                    nextSequence = Math.max(nextSequence, frame.sequence + 1);
+                }
+
+                if (i < files.size() - 1 && !isZero(file, end[0])) {
+                    throw new IllegalStateException("The journal segment " + file + " is corrupt after byte " + end[0]);
+                }
+            }
+        }
+
+        return end[0];
+    }
+
+    // Replays the records at or after the position, but not those of games that ended after them, which compacting
+    // may have left without the records before them
+    private int replay(Path file, long position) throws IOException {
+        int replayed = 0;
+        for (Frame frame : readFrames(file, null)) {
+            if (frame.sequence < position) {
+                continue;
+            }
+
+            String gameId = getGameId(new RawBsonDocument(frame.record));
+            Long ended = gameId == null ? null : endedGames.get(gameId);
+            if ((ended == null || ended <= frame.sequence) && apply(decode(frame.record))) {
+                replayed++;
+            }
+        }
+
+        return replayed;
+    }
+
+    // Maps the last segment for writing after its last record
+    private Segment reopen(Segment segment, int end) throws IOException {
+        segment.buffer = map(segment.path, Math.max(segmentSize, (int) Files.size(segment.path)));
+        // After a crash of the machine later records may have reached the disk without earlier ones
+        if (!isZero(segment.buffer, end)) {
+            segment.buffer.position(end);
+            byte[] zeros = new byte[65536];
+            while (segment.buffer.hasRemaining()) {
+                segment.buffer.put(zeros, 0, Math.min(zeros.length, segment.buffer.remaining()));
+            }
+
+            segment.buffer.force();
+        }
+
+        segment.buffer.position(end);
+        return segment;
+    }
+
+    // Stops at the first record that was not completely written, whose end is returned in end
+    private static List<Frame> readFrames(Path file, int[] end) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        long previous = -1;
+        int valid = 0;
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            long sequence = buffer.getLong();
+            if (length <= 0 || length > buffer.remaining() || sequence <= previous) {
+                break;
+            }
+
+            byte[] record = new byte[length];
+            buffer.get(record);
+            CRC32 crc = new CRC32();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            frames.add(new Frame(sequence, checksum, record));
+            previous = sequence;
+            valid = buffer.position();
+        }
+
+        if (end != null) {
+            end[0] = valid;
+        }
+
+        return frames;
+    }
+
+    private static boolean isZero(Path file, int from) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return isZero(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), from);
+        }
+    }
+
+    private static boolean isZero(ByteBuffer buffer, int from) {
+        for (int i = from; i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Returns whether the record applied to the store
+    private boolean apply(Document record) {
+        String collection = record.getString("c");
+        String id = record.getString("id");
+        switch (record.getString("op")) {
+            case "put":
+                store.replace(collection, (Document) record.get("d"));
+                break;
+            case "update":
+                // The snapshot misses the documents deleted while it was written, which may be updated before the
+                // records of their deletion
+                Document stored = store.findStored(collection, id);
+                if (stored == null) {
+                    return false;
+                }
+
+                store.replace(collection, applyUpdate(stored, record));
+                break;
+            case "delete":
+                if (id == null) {
+                    store.clear(collection);
+                }
+                else {
+                    store.remove(collection, id);
+                }
+
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record " + record.getString("op"));
+        }
+
+        return true;
+    }
+
+    // Appended items replace those at and after their position, so replaying an update twice changes nothing
+    @SuppressWarnings("unchecked")
+    private static Document applyUpdate(Document stored, Document record) {
+        Document updated = new Document(stored);
+        Document set = (Document) record.get("set");
+        if (set != null) {
+            updated.putAll(set);
+        }
+
+        List<String> unset = (List<String>) record.get("unset");
+        if (unset != null) {
+            for (String field : unset) {
+                updated.remove(field);
+            }
+        }
+
+        Document push = (Document) record.get("push");
+        if (push != null) {
+            for (Map.Entry<String, Object> entry : push.entrySet()) {
+                Document appended = (Document) entry.getValue();
+                List<Object> list = (List<Object>) updated.get(entry.getKey());
+                int from = appended.getInteger("from");
+                if (list == null || list.size() < from) {
+                    throw new IllegalStateException("The journal misses the items of " + entry.getKey() + " before " + from);
+                }
+
+                List<Object> items = new ArrayList<>(list.subList(0, from));
+                items.addAll((List<Object>) appended.get("items"));
+                updated.put(entry.getKey(), items);
+            }
+        }
+
+        return updated;
+    }
+
+    // The changed fields, with lists that only grew as the items appended to them
+    private static Document toUpdate(String collection, String id, Document previous, Document document) {
+        Document set = new Document();
+        Document push = new Document();
+        List<String> unset = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+            Object value = entry.getValue();
+            Object old = previous.get(entry.getKey());
+            if (value instanceof List && old instanceof List && isAppended((List<?>) old, (List<?>) value)) {
+                List<?> list = (List<?>) value;
+                int from = ((List<?>) old).size();
+                push.put(entry.getKey(), new Document("from", from).append("items", list.subList(from, list.size())));
+            }
+            else if (!previous.containsKey(entry.getKey()) || !Objects.equals(value, old)) {
+                set.put(entry.getKey(), value);
+            }
+        }
+
+        for (String field : previous.keySet()) {
+            if (!document.containsKey(field)) {
+                unset.add(field);
+            }
+        }
+
+        if (set.isEmpty() && push.isEmpty() && unset.isEmpty()) {
+            return null;
+        }
+
+        Document record = new Document("op", "update").append("c", collection).append("id", id);
+        if (!set.isEmpty()) {
+            record.append("set", set);
+        }
+
+        if (!push.isEmpty()) {
+            record.append("push", push);
+        }
+
+        if (!unset.isEmpty()) {
+            record.append("unset", unset);
+        }
+
+        return record;
+    }
+
+    private static boolean isAppended(List<?> previous, List<?> list) {
+        return list.size() > previous.size() && list.subList(0, previous.size()).equals(previous);
+    }
+
+    private static boolean isEnded(Document game) {
+        return Game.GameState.END.name().equals(game.get("state"));
+    }
+
+    // Whether the record is the full record of a game that ended
+    private static boolean isEndedGame(BsonDocument record) {
+        BsonDocument document = record.getDocument("d", null);
+        return document != null && "put".equals(record.getString("op").getValue())
+                && new BsonString(Game.GameState.END.name()).equals(document.get("state"));
+    }
+
+    // Read without decoding the whole record
+    private String getGameId(BsonDocument record) {
+        if (!gameCollection.equals(record.getString("c").getValue())) {
+            return null;
+        }
+
+        BsonDocument document = record.getDocument("d", null);
+        BsonValue id = document == null ? record.get("id") : document.get("_id");
+        if (id == null) {
+            return null;
+        }
+
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    private Segment openSegment(long firstSequence, int size) {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+        Segment segment = new Segment(firstSequence, file);
+        try {
+            segment.buffer = map(file, size);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return segment;
+    }
+
+    private static MappedByteBuffer map(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static byte[] encode(Document record) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        CODEC.encode(new BsonBinaryWriter(buffer), record, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    private static Document decode(byte[] record) {
+        return CODEC.decode(new BsonBinaryReader(ByteBuffer.wrap(record)), DecoderContext.builder().build());
+    }
+}
@@ -0,0 +1,12 @@
+package tcgserver;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+@Component
+@Profile("reactive & memory")
+public class MemoryReactiveCardRepository extends MemoryReactiveRepository<Card> implements ReactiveCardRepository {
+    public MemoryReactiveCardRepository() {
+        super(Card.class);
+    }
+}
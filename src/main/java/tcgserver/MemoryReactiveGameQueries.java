@@ -0,0 +1,32 @@
+package tcgserver;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// Reads of the memory store never block, so they run on the subscriber's thread
+@Component
+@Profile("reactive & memory")
+public class MemoryReactiveGameQueries implements ReactiveGameQueries {
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Override
+    public Mono<Long> findRevisionById(String id) {
+        return Mono.fromCallable(() -> gameRepository.findRevisionById(id)).flatMap(Mono::justOrEmpty);
+    }
+
+    @Override
+    public Mono<List<Game.Action>> findActionsById(String id, int since, int limit) {
+        return Mono.fromCallable(() -> gameRepository.findActionsById(id, since, limit)).flatMap(Mono::justOrEmpty);
+    }
+
+    @Override
+    public Flux<Game.GameSummary> findSummaries(Game.GameState state, String after, int limit) {
+        return Flux.defer(() -> Flux.fromIterable(gameRepository.findSummaries(state, after, limit)));
+    }
+}
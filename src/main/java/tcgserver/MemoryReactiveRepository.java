@@ -0,0 +1,46 @@
+package tcgserver;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// The ReactiveStorageRepository methods of the memory repositories, which run on the subscriber's thread since the
+// store never blocks
+abstract class MemoryReactiveRepository<T> implements ReactiveStorageRepository<T> {
+    @Autowired
+    protected MemoryStore store;
+
+    protected final Class<T> type;
+
+    protected MemoryReactiveRepository(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public <S extends T> Mono<S> save(S entity) {
+        return Mono.fromCallable(() -> store.save(entity));
+    }
+
+    @Override
+    public <S extends T> Mono<S> insert(S entity) {
+        return Mono.fromCallable(() -> store.insert(entity));
+    }
+
+    @Override
+    public Mono<T> findById(String id) {
+        return Mono.fromCallable(() -> store.findById(type, id)).flatMap(Mono::justOrEmpty);
+    }
+
+    // The store keeps the documents in id order and sorts by nothing else
+    @Override
+    public Flux<T> findAll(Sort sort) {
+        for (Sort.Order order : sort) {
+            if (!order.isAscending() || !(order.getProperty().equals("id") || order.getProperty().equals("_id"))) {
+                return Flux.error(new UnsupportedOperationException("Memory repositories only sort by ascending id"));
+            }
+        }
+
+        return Flux.defer(() -> Flux.fromIterable(store.findAll(type)));
+    }
+}
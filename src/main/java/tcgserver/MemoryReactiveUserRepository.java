@@ -0,0 +1,18 @@
+package tcgserver;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+@Component
+@Profile("reactive & memory")
+public class MemoryReactiveUserRepository extends MemoryReactiveRepository<User> implements ReactiveUserRepository {
+    public MemoryReactiveUserRepository() {
+        super(User.class);
+    }
+
+    @Override
+    public Flux<User> findByName(String name) {
+        return Flux.defer(() -> Flux.fromIterable(store.findByIndex(type, "name", name)));
+    }
+}
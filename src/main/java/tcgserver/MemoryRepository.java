@@ -0,0 +1,53 @@
+package tcgserver;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.Optional;
+
+// The StorageRepository methods of the memory repositories
+abstract class MemoryRepository<T> implements StorageRepository<T> {
+    @Autowired
+    protected MemoryStore store;
+
+    protected final Class<T> type;
+
+    protected MemoryRepository(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public <S extends T> S save(S entity) {
+        return store.save(entity);
+    }
+
+    @Override
+    public <S extends T> S insert(S entity) {
+        return store.insert(entity);
+    }
+
+    @Override
+    public Optional<T> findById(String id) {
+        return store.findById(type, id);
+    }
+
+    @Override
+    public List<T> findAll() {
+        return store.findAll(type);
+    }
+
+    @Override
+    public long count() {
+        return store.count(type);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        store.deleteById(type, id);
+    }
+
+    @Override
+    public void deleteAll() {
+        store.deleteAll(type);
+    }
+}
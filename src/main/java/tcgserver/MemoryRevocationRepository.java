@@ -0,0 +1,41 @@
+package tcgserver;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Revocations are few and short-lived, so they are scanned rather than indexed
+@Component
+@Profile("memory")
+public class MemoryRevocationRepository extends MemoryRepository<Revocation> implements RevocationRepository {
+    public MemoryRevocationRepository() {
+        super(Revocation.class);
+    }
+
+    @Override
+    public List<Revocation> findByRevokedAtGreaterThanEqual(long revokedAt) {
+        List<Revocation> found = new ArrayList<>();
+        for (Revocation revocation : store.findAll(type)) {
+            if (revocation.getRevokedAt() >= revokedAt) {
+                found.add(revocation);
+            }
+        }
+
+        return found;
+    }
+
+    @Override
+    public long deleteByUntilLessThanEqual(long until) {
+        long count = 0;
+        for (Revocation revocation : store.findAll(type)) {
+            if (revocation.getUntil() <= until) {
+                store.deleteById(type, revocation.getId());
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
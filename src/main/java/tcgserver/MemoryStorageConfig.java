@@ -0,0 +1,23 @@
+package tcgserver;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+// The memory profile converts entities as Mongo would without connecting to it, see MemoryStorageImportFilter
+@Configuration
+@Profile("memory")
+public class MemoryStorageConfig {
+    @Bean
+    public MongoMappingContext mongoMappingContext() {
+        return new MongoMappingContext();
+    }
+
+    @Bean
+    public MappingMongoConverter mappingMongoConverter(MongoMappingContext mongoMappingContext) {
+        return new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mongoMappingContext);
+    }
+}
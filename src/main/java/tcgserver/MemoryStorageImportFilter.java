@@ -0,0 +1,53 @@
+package tcgserver;
+
+import org.springframework.boot.autoconfigure.AutoConfigurationImportFilter;
+import org.springframework.boot.autoconfigure.AutoConfigurationMetadata;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+
+/**
+ * Leaves out the Mongo client, template, repositories and health check when the {@code memory} profile is active, so
+ * the server neither connects to Mongo nor creates repositories that would compete with the memory ones. Registered in
+ * {@code META-INF/spring.factories}, since {@code spring.autoconfigure.exclude} is replaced rather than merged by the
+ * profiles that set it.
+ */
+public class MemoryStorageImportFilter implements AutoConfigurationImportFilter, EnvironmentAware {
+    private static final String[] MONGO_PACKAGES = {
+            "org.springframework.boot.autoconfigure.mongo.",
+            "org.springframework.boot.autoconfigure.data.mongo.",
+            "org.springframework.boot.actuate.autoconfigure.mongo."
+    };
+
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public boolean[] match(String[] autoConfigurationClasses, AutoConfigurationMetadata autoConfigurationMetadata) {
+        boolean isMemory = environment.acceptsProfiles(Profiles.of("memory"));
+        boolean[] matches = new boolean[autoConfigurationClasses.length];
+        for (int i = 0; i < autoConfigurationClasses.length; i++) {
+            matches[i] = !isMemory || !isMongo(autoConfigurationClasses[i]);
+        }
+
+        return matches;
+    }
+
+    private static boolean isMongo(String autoConfigurationClass) {
+        if (autoConfigurationClass == null) {
+            return false;
+        }
+
+        for (String mongoPackage : MONGO_PACKAGES) {
+            if (autoConfigurationClass.startsWith(mongoPackage)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
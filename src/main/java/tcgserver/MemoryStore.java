@@ -0,0 +1,551 @@
+package tcgserver;
+
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mapping.model.ConvertingPropertyAccessor;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The storage of the memory profile. Entities are kept as the documents Mongo would store, converted by the same
+ * converter and published with the same mapping events, in one map per collection ordered by id. Writes to a
+ * collection are serialized, reads never lock and convert a copy of the stored document.
+ * <p>
+ * With {@code tcg.storage.snapshot-path} the collections are loaded from that file on startup and written to it every
+ * {@code tcg.storage.snapshot-interval} milliseconds and on shutdown, each document as it was at some point during the
+ * write. Writes made after the last snapshot are lost if the process dies, unless {@link MemoryJournal} records them.
+ */
+@Component
+@Profile("memory")
+public class MemoryStore {
+    private static final Logger logger = LoggerFactory.getLogger(MemoryStore.class);
+    private static final String ID = "_id";
+
+    // Unique indexes map each value to its id, the others to the ids in order
+    private static class Index {
+        private final String field;
+        private final boolean isUnique;
+        private final ConcurrentHashMap<Object, Object> ids = new ConcurrentHashMap<>();
+
+        private Index(String field, boolean isUnique) {
+            this.field = field;
+            this.isUnique = isUnique;
+        }
+
+        // Documents without the field are not indexed
+        @SuppressWarnings("unchecked")
+        private void add(String id, Document document) {
+            Object value = document == null ? null : document.get(field);
+            if (value == null) {
+                return;
+            }
+
+            if (isUnique) {
+                ids.put(value, id);
+            }
+            else {
+                ((NavigableSet<String>) ids.computeIfAbsent(value, v -> new ConcurrentSkipListSet<>())).add(id);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void remove(String id, Document document) {
+            Object value = document == null ? null : document.get(field);
+            if (value == null) {
+                return;
+            }
+
+            if (isUnique) {
+                ids.remove(value, id);
+                return;
+            }
+
+            NavigableSet<String> indexed = (NavigableSet<String>) ids.get(value);
+            if (indexed != null) {
+                indexed.remove(id);
+                if (indexed.isEmpty()) {
+                    ids.remove(value, indexed);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private NavigableSet<String> get(Object value) {
+            Object indexed = ids.get(value);
+            if (indexed == null) {
+                return Collections.emptyNavigableSet();
+            }
+
+            return isUnique ? new TreeSet<>(Collections.singleton((String) indexed)) : (NavigableSet<String>) indexed;
+        }
+    }
+
+    private class Collection {
+        private final String name;
+        private final ConcurrentSkipListMap<String, Document> documents = new ConcurrentSkipListMap<>();
+        private final List<Index> indexes = new CopyOnWriteArrayList<>();
+
+        private Collection(String name) {
+            this.name = name;
+        }
+
+        // An expected version replaces only that version of the document, like the versioned writes of Mongo
+        private synchronized void put(Document document, boolean isInsert, String versionField, Number expectedVersion) {
+            String id = key(document.get(ID));
+            Document existing = documents.get(id);
+            if (isInsert && existing != null) {
+                throw new DuplicateKeyException("Duplicate key " + id + " in collection " + name);
+            }
+
+            if (expectedVersion != null && (existing == null || !(existing.get(versionField) instanceof Number)
+                    || ((Number) existing.get(versionField)).longValue() != expectedVersion.longValue())) {
+                throw new OptimisticLockingFailureException("Document " + id + " in collection " + name + " was modified since version " + expectedVersion);
+            }
+
+            for (Index index : indexes) {
+                Object value = document.get(index.field);
+                Object indexed = index.isUnique && value != null ? index.ids.get(value) : null;
+                if (indexed != null && !indexed.equals(id)) {
+                    throw new DuplicateKeyException("Duplicate key " + value + " for " + index.field + " in collection " + name);
+                }
+            }
+
+            documents.put(id, document);
+            for (Index index : indexes) {
+                index.remove(id, existing);
+                index.add(id, document);
+            }
+
+            if (journal != null) {
+                journal.written(name, id, existing, document);
+            }
+        }
+
+        private synchronized Document remove(String id) {
+            Document removed = documents.remove(id);
+            for (Index index : indexes) {
+                index.remove(id, removed);
+            }
+
+            if (removed != null && journal != null) {
+                journal.deleted(name, id);
+            }
+
+            return removed;
+        }
+
+        private synchronized void clear() {
+            documents.clear();
+            for (Index index : indexes) {
+                index.ids.clear();
+            }
+
+            if (journal != null) {
+                journal.deleted(name, null);
+            }
+        }
+
+        private synchronized void createIndex(String field, boolean isUnique) {
+            for (Index index : indexes) {
+                if (index.field.equals(field)) {
+                    return;
+                }
+            }
+
+            Index index = new Index(field, isUnique);
+            for (Map.Entry<String, Document> entry : documents.entrySet()) {
+                index.add(entry.getKey(), entry.getValue());
+            }
+
+            indexes.add(index);
+        }
+
+        private Index getIndex(String field) {
+            for (Index index : indexes) {
+                if (index.field.equals(field)) {
+                    return index;
+                }
+            }
+
+            throw new IllegalArgumentException("No index on " + field + " in collection " + name);
+        }
+    }
+
+    @Autowired
+    private MongoConverter mongoConverter;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${tcg.storage.snapshot-path:}")
+    private String snapshotPath;
+
+    @Value("${tcg.storage.snapshot-interval:60000}")
+    private long snapshotInterval;
+
+    private final ConcurrentHashMap<String, Collection> collections = new ConcurrentHashMap<>();
+
+    // Set once the journal has replayed its records, so the replay is not journaled again
+    private volatile MemoryJournal journal;
+    private long snapshotPosition;
+
+    private final ScheduledExecutorService snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "memory-store-snapshotter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (snapshotPath.isEmpty()) {
+            return;
+        }
+
+        Path path = Paths.get(snapshotPath);
+        if (Files.exists(path)) {
+            loadSnapshot(path);
+        }
+
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                writeSnapshot(path);
+            }
+            catch (Exception e) {
+                logger.error("Failed to write the snapshot to " + path, e);
+            }
+        }, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        snapshotter.shutdown();
+        if (!snapshotPath.isEmpty()) {
+            writeSnapshot(Paths.get(snapshotPath));
+        }
+
+        // Closed last, since the store outlives the beans that write to it
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    public <T> T save(T entity) {
+        return write(entity, false);
+    }
+
+    public <T> T insert(T entity) {
+        return write(entity, true);
+    }
+
+    public <T> Optional<T> findById(Class<T> type, String id) {
+        Document document = getCollection(type).documents.get(id);
+        return document == null ? Optional.empty() : Optional.of(read(type, document));
+    }
+
+    public <T> List<T> findAll(Class<T> type) {
+        List<T> entities = new ArrayList<>();
+        for (Document document : getCollection(type).documents.values()) {
+            entities.add(read(type, document));
+        }
+
+        return entities;
+    }
+
+    public <T> List<T> findByIndex(Class<T> type, String field, Object value) {
+        List<T> entities = new ArrayList<>();
+        for (Document document : findStored(type, field, value)) {
+            entities.add(read(type, document));
+        }
+
+        return entities;
+    }
+
+    public long count(Class<?> type) {
+        return getCollection(type).documents.size();
+    }
+
+    public long countByIndex(Class<?> type, String field, Object value) {
+        return getCollection(type).getIndex(field).get(value).size();
+    }
+
+    public void deleteById(Class<?> type, String id) {
+        Collection collection = getCollection(type);
+        Document query = new Document(ID, id);
+        eventPublisher.publishEvent(new BeforeDeleteEvent<>(query, type, collection.name));
+        collection.remove(id);
+        eventPublisher.publishEvent(new AfterDeleteEvent<>(query, type, collection.name));
+    }
+
+    public void deleteAll(Class<?> type) {
+        Collection collection = getCollection(type);
+        Document query = new Document();
+        eventPublisher.publishEvent(new BeforeDeleteEvent<>(query, type, collection.name));
+        collection.clear();
+        eventPublisher.publishEvent(new AfterDeleteEvent<>(query, type, collection.name));
+    }
+
+    public void createIndex(Class<?> type, String field, boolean isUnique) {
+        getCollection(type).createIndex(field, isUnique);
+    }
+
+    // Stores the documents as they are, without converting them or publishing events, setting the ids they lack
+    public void insertDocuments(String collectionName, List<Document> documents) {
+        Collection collection = getCollection(collectionName);
+        for (Document document : documents) {
+            if (document.get(ID) == null) {
+                document.put(ID, new ObjectId());
+            }
+
+            collection.put(document, true, null, null);
+        }
+    }
+
+    public Optional<Document> findFirstDocument(String collectionName) {
+        Map.Entry<String, Document> first = getCollection(collectionName).documents.firstEntry();
+        return first == null ? Optional.empty() : Optional.of(copy(first.getValue()));
+    }
+
+    // The stored documents are shared with the store and must not be modified by the projections that read them
+
+    Document findStored(Class<?> type, String id) {
+        return getCollection(type).documents.get(id);
+    }
+
+    Iterable<Document> findStoredAfter(Class<?> type, String after) {
+        ConcurrentSkipListMap<String, Document> documents = getCollection(type).documents;
+        return after == null ? documents.values() : documents.tailMap(after, false).values();
+    }
+
+    List<Document> findStored(Class<?> type, String field, Object value) {
+        return findStored(type, getCollection(type).getIndex(field).get(value));
+    }
+
+    List<Document> findStoredAfter(Class<?> type, String field, Object value, String after, int limit) {
+        NavigableSet<String> ids = getCollection(type).getIndex(field).get(value);
+        List<Document> documents = findStored(type, after == null ? ids : ids.tailSet(after, false));
+        return documents.size() > limit ? documents.subList(0, limit) : documents;
+    }
+
+    <T> T read(Class<T> type, Document stored) {
+        String collectionName = getCollectionName(type);
+        Document document = copy(stored);
+        eventPublisher.publishEvent(new AfterLoadEvent<>(document, type, collectionName));
+        T entity = mongoConverter.read(type, document);
+        eventPublisher.publishEvent(new AfterConvertEvent<>(document, entity, collectionName));
+        return entity;
+    }
+
+    MongoConverter getConverter() {
+        return mongoConverter;
+    }
+
+    String getCollectionName(Class<?> type) {
+        return mongoConverter.getMappingContext().getRequiredPersistentEntity(type).getCollection();
+    }
+
+    // The journal position the loaded snapshot was written at, the records before it are part of the snapshot
+    long getSnapshotPosition() {
+        return snapshotPosition;
+    }
+
+    void setJournal(MemoryJournal journal) {
+        this.journal = journal;
+    }
+
+    // The writes of the journal replay, without versions, events or conversions
+
+    Document findStored(String collectionName, String id) {
+        return getCollection(collectionName).documents.get(id);
+    }
+
+    void replace(String collectionName, Document document) {
+        getCollection(collectionName).put(document, false, null, null);
+    }
+
+    void remove(String collectionName, String id) {
+        getCollection(collectionName).remove(id);
+    }
+
+    void clear(String collectionName) {
+        getCollection(collectionName).clear();
+    }
+
+    private List<Document> findStored(Class<?> type, Iterable<String> ids) {
+        ConcurrentSkipListMap<String, Document> documents = getCollection(type).documents;
+        List<Document> found = new ArrayList<>();
+        for (String id : ids) {
+            Document document = documents.get(id);
+            if (document != null) {
+                found.add(document);
+            }
+        }
+
+        return found;
+    }
+
+    private <T> T write(T entity, boolean isInsert) {
+        MongoPersistentEntity<?> persistentEntity = mongoConverter.getMappingContext().getRequiredPersistentEntity(entity.getClass());
+        ConvertingPropertyAccessor<T> accessor = new ConvertingPropertyAccessor<>(persistentEntity.getPropertyAccessor(entity), mongoConverter.getConversionService());
+        MongoPersistentProperty versionProperty = persistentEntity.getVersionProperty();
+        Number version = versionProperty == null ? null : accessor.getProperty(versionProperty, Number.class);
+        if (versionProperty != null && (version == null || !isInsert)) {
+            accessor.setProperty(versionProperty, version == null ? 0L : version.longValue() + 1);
+        }
+
+        String collectionName = persistentEntity.getCollection();
+        try {
+            eventPublisher.publishEvent(new BeforeConvertEvent<>(entity, collectionName));
+            Document document = new Document();
+            mongoConverter.write(entity, document);
+            eventPublisher.publishEvent(new BeforeSaveEvent<>(entity, document, collectionName));
+            Object id = document.get(ID);
+            if (id == null) {
+                id = new ObjectId();
+                document.put(ID, id);
+            }
+
+            getCollection(collectionName).put(document, isInsert || (versionProperty != null && version == null), versionProperty == null ? null : versionProperty.getFieldName(), isInsert ? null : version);
+            MongoPersistentProperty idProperty = persistentEntity.getIdProperty();
+            if (idProperty != null && accessor.getProperty(idProperty) == null) {
+                accessor.setProperty(idProperty, id);
+            }
+
+            eventPublisher.publishEvent(new AfterSaveEvent<>(entity, document, collectionName));
+            return entity;
+        }
+        catch (RuntimeException e) {
+            if (versionProperty != null) {
+                accessor.setProperty(versionProperty, version);
+            }
+
+            throw e;
+        }
+    }
+
+    private Collection getCollection(Class<?> type) {
+        return getCollection(getCollectionName(type));
+    }
+
+    private Collection getCollection(String name) {
+        return collections.computeIfAbsent(name, Collection::new);
+    }
+
+    // Written to a temporary file first, so a crash during the write leaves the previous snapshot in place. The journal
+    // position is taken first: the records before it were applied before the documents are read, the others are
+    // replayed over the snapshot.
+    private void writeSnapshot(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        JsonWriterSettings settings = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+        MemoryJournal currentJournal = journal;
+        long position = currentJournal == null ? 0 : currentJournal.getPosition();
+        int count = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(new Document("journal", position).toJson(settings));
+            writer.newLine();
+            for (Collection collection : collections.values()) {
+                for (Document document : collection.documents.values()) {
+                    writer.write(new Document("collection", collection.name).append("document", document).toJson(settings));
+                    writer.newLine();
+                    count++;
+                }
+            }
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Wrote {} documents to {}", count, path);
+        if (currentJournal != null) {
+            currentJournal.snapshotWritten(position);
+        }
+    }
+
+    private void loadSnapshot(Path path) throws IOException {
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    Document entry = Document.parse(line);
+                    if (entry.containsKey("journal")) {
+                        snapshotPosition = ((Number) entry.get("journal")).longValue();
+                    }
+                    else {
+                        getCollection(entry.getString("collection")).put((Document) entry.get("document"), false, null, null);
+                        count++;
+                    }
+                }
+            }
+        }
+
+        logger.info("Loaded {} documents from {}", count, path);
+    }
+
+    private static String key(Object id) {
+        return id instanceof ObjectId ? ((ObjectId) id).toHexString() : String.valueOf(id);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T value) {
+        if (value instanceof Document) {
+            Document copy = new Document();
+            for (Map.Entry<String, Object> entry : ((Document) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+
+            return (T) copy;
+        }
+        else if (value instanceof List) {
+            List<Object> copy = new ArrayList<>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                copy.add(copy(element));
+            }
+
+            return (T) copy;
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,26 @@
+package tcgserver;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+// User names are unique, as the index of the Mongo collection makes them
+@Component
+@Profile("memory")
+public class MemoryUserRepository extends MemoryRepository<User> implements UserRepository {
+    public MemoryUserRepository() {
+        super(User.class);
+    }
+
+    @PostConstruct
+    public void init() {
+        store.createIndex(type, "name", true);
+    }
+
+    @Override
+    public List<User> findByName(String name) {
+        return store.findByIndex(type, "name", name);
+    }
+}
@@ -0,0 +1,156 @@
+package tcgserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.codec.binary.Base64;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hashes and verifies passwords with PBKDF2 on its own bounded pool, so a burst of logins queues here instead of
+ * holding request threads, and is turned away once the queue is full. Hashes are stored as
+ * {@code pbkdf2$iterations$salt$hash}. Hashes from {@link User#passwordToHash(String)} are still verified, and are
+ * reported by {@link #needsRehash(String)} along with hashes made with fewer iterations than configured.
+ */
+@Component
+public class PasswordHasher {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2$";
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${tcg.users.hashing.iterations:100000}")
+    private int iterations;
+
+    @Value("${tcg.users.hashing.workers:2}")
+    private int workerCount;
+
+    @Value("${tcg.users.hashing.queue-size:200}")
+    private int queueSize;
+
+    private ThreadPoolExecutor workers;
+    private Timer hashing;
+    private Counter rejections;
+    private final SecureRandom random = new SecureRandom();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread thread = new Thread(r, "password-hashing-" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        hashing = meterRegistry.timer("tcg.users.password.hashing");
+        rejections = meterRegistry.counter("tcg.users.password.rejected");
+        meterRegistry.gauge("tcg.users.password.iterations", this, h -> h.iterations);
+        meterRegistry.gauge("tcg.users.password.queued", workers, w -> w.getQueue().size());
+    }
+
+    @PreDestroy
+    public void close() {
+        workers.shutdown();
+    }
+
+    // Fails with a RejectedExecutionException if too many passwords are waiting to be hashed
+    public CompletableFuture<String> hash(String password) {
+        return submit(() -> {
+            byte[] salt = new byte[SALT_LENGTH];
+            random.nextBytes(salt);
+            return PREFIX + iterations + "$" + Base64.encodeBase64String(salt) + "$"
+                    + Base64.encodeBase64String(pbkdf2(password, salt, iterations));
+        });
+    }
+
+    // Same as hash
+    public CompletableFuture<Boolean> verify(String password, String hash) {
+        return submit(() -> {
+            if (!hash.startsWith(PREFIX)) {
+                return MessageDigest.isEqual(User.passwordToHash(password).getBytes(StandardCharsets.UTF_8),
+                        hash.getBytes(StandardCharsets.UTF_8));
+            }
+
+            String[] parts = hash.split("\\$");
+            if (parts.length != 4) {
+                return false;
+            }
+
+            // A hash that cannot be parsed fails, and needsRehash reports it
+            int hashIterations = parseIterations(parts[1]);
+            byte[] salt = Base64.decodeBase64(parts[2]);
+            if (hashIterations <= 0 || salt.length == 0) {
+                return false;
+            }
+
+            byte[] expected = Base64.decodeBase64(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, hashIterations));
+        });
+    }
+
+    public boolean needsRehash(String hash) {
+        if (!hash.startsWith(PREFIX)) {
+            return true;
+        }
+
+        int end = hash.indexOf('$', PREFIX.length());
+        return end < 0 || parseIterations(hash.substring(PREFIX.length(), end)) < iterations;
+    }
+
+    // 0 if the iterations of a hash cannot be parsed
+    private static int parseIterations(String value) {
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> hashing.record(task), workers);
+        }
+        catch (RejectedExecutionException e) {
+            rejections.increment();
+            CompletableFuture<T> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_LENGTH * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        finally {
+            spec.clearPassword();
+        }
+    }
+}
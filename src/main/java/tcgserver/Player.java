@@ -1,11 +1,13 @@
 package tcgserver;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class Player {
     public final static int START_HEALTH = 30;
@@ -18,8 +20,12 @@ public class Player {
     private int health;
     private int manaSlot;
     private int mana;
-    private ArrayList<Card> deck;
-    private ArrayList<Card> hand;
+    private String catalogVersion;
+    private int[] deck;
+    private int deckPosition;
+    private int[] hand;
+    @Transient
+    private CardCatalog catalog;
 
     public Player() {
         this("", Collections.emptyList(), Collections.emptyList());
@@ -42,10 +48,33 @@ public class Player {
         this.health = health;
         this.manaSlot = manaSlot;
         this.mana = mana;
-        this.deck = new ArrayList<>();
-        this.deck.addAll(deck);
-        this.hand = new ArrayList<>();
-        this.hand.addAll(hand);
+        ArrayList<Card> cards = new ArrayList<>(deck);
+        cards.addAll(hand);
+        this.catalog = CardCatalog.of(cards);
+        this.catalogVersion = catalog.getVersion();
+        this.deck = catalog.indicesOf(deck);
+        this.hand = catalog.indicesOf(hand);
+    }
+
+    public Player(String userId, CardCatalog catalog, int[] deck) {
+        this.userId = userId;
+        this.health = START_HEALTH;
+        this.manaSlot = START_MANA_SLOT;
+        this.mana = START_MANA_SLOT;
+        this.catalog = catalog;
+        this.catalogVersion = catalog.getVersion();
+        this.deck = deck.clone();
+        this.hand = new int[0];
+    }
+
+    Player copy() {
+        Player copy = new Player(userId, catalog, deck);
+        copy.deckPosition = deckPosition;
+        copy.health = health;
+        copy.manaSlot = manaSlot;
+        copy.mana = mana;
+        copy.hand = hand.clone();
+        return copy;
     }
 
     public String getUserId() {
@@ -65,11 +94,36 @@ public class Player {
     }
 
     public List<Card> getDeck() {
-        return Collections.unmodifiableList(deck);
+        return catalog.cardsAt(Arrays.copyOfRange(deck, deckPosition, deck.length));
     }
 
     public List<Card> getHand() {
-        return Collections.unmodifiableList(hand);
+        return catalog.cardsAt(hand);
+    }
+
+    String getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    CardCatalog getCatalog() {
+        return catalog;
+    }
+
+    void setCatalog(CardCatalog catalog) {
+        assert catalog.getVersion().equals(catalogVersion);
+        this.catalog = catalog;
+    }
+
+    int[] getDeckIndices() {
+        return deck;
+    }
+
+    int getDeckPosition() {
+        return deckPosition;
+    }
+
+    int[] getHandIndices() {
+        return hand;
     }
 
     public boolean drawRandomCard() {
@@ -77,17 +131,14 @@ public class Player {
         assert deck != null;
         assert hand != null;
 
-        if (deck.size() < 1) {
+        if (deckPosition >= deck.length) {
             return false;
         }
 
-        Random random = new Random();
-        int randomCardIndex = random.nextInt(deck.size());
-        Card randomCard = deck.get(randomCardIndex);
-        deck.remove(randomCardIndex);
-
-        if (hand.size() < MAX_HAND_SIZE) {
-            hand.add(randomCard);
+        int randomCard = deck[deckPosition++];
+        if (hand.length < MAX_HAND_SIZE) {
+            hand = Arrays.copyOf(hand, hand.length + 1);
+            hand[hand.length - 1] = randomCard;
         }
 
         return true;
@@ -96,14 +147,15 @@ public class Player {
     public Card playCardAt(int index) {
         assert health > 0;
 
-        if (index < hand.size() && index >= 0) {
-            int manaCost = hand.get(index).getMana();
-            if (manaCost > mana) {
+        if (index < hand.length && index >= 0) {
+            Card card = catalog.get(hand[index]);
+            if (card.getMana() > mana) {
                 return null;
             }
 
-            mana -= manaCost;
-            return hand.remove(index);
+            mana -= card.getMana();
+            hand = removeAt(hand, index);
+            return card;
         }
 
         return null;
@@ -132,6 +184,27 @@ public class Player {
         mana = manaSlot;
     }
 
+    // The deck is shuffled once (Fisher-Yates) so every draw takes the next card
+    void shuffleDeck(SplittableRandom random) {
+        int[] shuffled = Arrays.copyOfRange(deck, deckPosition, deck.length);
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int card = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = card;
+        }
+
+        deck = shuffled;
+        deckPosition = 0;
+    }
+
+    private static int[] removeAt(int[] cards, int index) {
+        int[] result = new int[cards.length - 1];
+        System.arraycopy(cards, 0, result, 0, index);
+        System.arraycopy(cards, index + 1, result, index, result.length - index);
+        return result;
+    }
+
     public class PlayerSimple {
         public String userId;
         public int health;
@@ -147,8 +220,8 @@ public class Player {
         playerSimple.health = health;
         playerSimple.manaSlot = manaSlot;
         playerSimple.mana = mana;
-        playerSimple.deckSize = deck.size();
-        playerSimple.handSize = hand.size();
+        playerSimple.deckSize = deck.length - deckPosition;
+        playerSimple.handSize = hand.length;
 
         return playerSimple;
     }
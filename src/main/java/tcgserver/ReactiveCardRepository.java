@@ -0,0 +1,4 @@
+package tcgserver;
+
+public interface ReactiveCardRepository extends ReactiveStorageRepository<Card> {
+}
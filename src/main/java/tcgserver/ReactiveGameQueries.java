@@ -0,0 +1,18 @@
+package tcgserver;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * The projection reads of {@link GameRepositoryCustom} for the reactive profile. Like those, they see only what has
+ * been flushed, so callers check the {@link GameStore} first.
+ */
+public interface ReactiveGameQueries {
+    Mono<Long> findRevisionById(String id);
+
+    Mono<List<Game.Action>> findActionsById(String id, int since, int limit);
+
+    Flux<Game.GameSummary> findSummaries(Game.GameState state, String after, int limit);
+}
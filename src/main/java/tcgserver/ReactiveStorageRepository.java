@@ -0,0 +1,19 @@
+package tcgserver;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.data.repository.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// The reactive counterpart of StorageRepository
+@NoRepositoryBean
+public interface ReactiveStorageRepository<T> extends Repository<T, String> {
+    <S extends T> Mono<S> save(S entity);
+
+    <S extends T> Mono<S> insert(S entity);
+
+    Mono<T> findById(String id);
+
+    Flux<T> findAll(Sort sort);
+}
@@ -0,0 +1,7 @@
+package tcgserver;
+
+import reactor.core.publisher.Flux;
+
+public interface ReactiveUserRepository extends ReactiveStorageRepository<User> {
+    Flux<User> findByName(String name);
+}
@@ -0,0 +1,168 @@
+package tcgserver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every call of every repository as {@code tcg.repository.invocations}, tagged with the repository, the method
+ * and the exception it failed with, if any. Reactive repositories are timed from subscription until they complete.
+ * The timers of successful calls are looked up once per method. Each call is also a {@link FlightEvents.MongoCall}
+ * in Flight Recorder recordings that enable it.
+ */
+@Component
+public class RepositoryMetrics implements BeanPostProcessor {
+    private static final String NONE = "none";
+
+    // Resolved on the first call, the registry is not ready yet when the repositories are created
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    // Inherited methods such as findById are the same for every repository, so each one has its own timers
+    private class TimingInterceptor implements MethodInterceptor {
+        private final String repository;
+        private final ConcurrentHashMap<Method, Timer> timers = new ConcurrentHashMap<>();
+
+        private TimingInterceptor(String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = invocation.getMethod();
+            if (Mono.class.isAssignableFrom(method.getReturnType())) {
+                return Mono.defer(() -> {
+                    FlightEvents.MongoCall event = begin();
+                    long start = System.nanoTime();
+                    return RepositoryMetrics.<Mono<?>>proceed(invocation).doOnSuccessOrError((value, e) -> {
+                        record(method, e, start);
+                        commit(event, method, value == null ? 0 : 1, e);
+                    });
+                });
+            }
+            else if (Flux.class.isAssignableFrom(method.getReturnType())) {
+                return Flux.defer(() -> {
+                    FlightEvents.MongoCall event = begin();
+                    long start = System.nanoTime();
+                    return RepositoryMetrics.<Flux<?>>proceed(invocation).doOnNext(value -> event.payloadSize++)
+                            .doOnComplete(() -> {
+                                record(method, null, start);
+                                commit(event, method, event.payloadSize, null);
+                            })
+                            .doOnError(e -> {
+                                record(method, e, start);
+                                commit(event, method, event.payloadSize, e);
+                            });
+                });
+            }
+
+            FlightEvents.MongoCall event = begin();
+            long start = System.nanoTime();
+            try {
+                Object result = invocation.proceed();
+                record(method, null, start);
+                commit(event, method, sizeOf(result), null);
+                return result;
+            }
+            catch (Throwable e) {
+                record(method, e, start);
+                commit(event, method, 0, e);
+                throw e;
+            }
+        }
+
+        private void record(Method method, Throwable e, long start) {
+            Timer timer = e == null
+                    ? timers.computeIfAbsent(method, m -> getTimer(m, NONE))
+                    : getTimer(method, e.getClass().getSimpleName());
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        private void commit(FlightEvents.MongoCall event, Method method, int payloadSize, Throwable e) {
+            if (event.shouldCommit()) {
+                event.repository = repository;
+                event.method = method.getName();
+                event.payloadSize = payloadSize;
+                event.exception = e == null ? NONE : e.getClass().getSimpleName();
+                event.commit();
+            }
+        }
+
+        private Timer getTimer(Method method, String exception) {
+            return meterRegistry.getObject().timer("tcg.repository.invocations",
+                    "repository", repository, "method", method.getName(), "exception", exception);
+        }
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof Repository)) {
+            return bean;
+        }
+
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.addAdvice(new TimingInterceptor(getRepositoryName(bean)));
+        return factory.getProxy();
+    }
+
+    // The repository interface comes first on the proxies of Spring Data
+    private static String getRepositoryName(Object bean) {
+        for (Class<?> type : bean.getClass().getInterfaces()) {
+            if (Repository.class.isAssignableFrom(type)) {
+                return type.getSimpleName();
+            }
+        }
+
+        return bean.getClass().getSimpleName();
+    }
+
+    private static FlightEvents.MongoCall begin() {
+        FlightEvents.MongoCall event = new FlightEvents.MongoCall();
+        event.begin();
+        return event;
+    }
+
+    // Entities and counts are one result each
+    private static int sizeOf(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        else if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        else if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+
+        return 1;
+    }
+
+    // The reactive repositories only throw unchecked exceptions
+    @SuppressWarnings("unchecked")
+    private static <T> T proceed(MethodInvocation invocation) {
+        try {
+            return (T) invocation.proceed();
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package tcgserver;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// A RevocationList key saved for the other servers, see UserAuthenticator
+@Document("revocations")
+public class Revocation {
+    @Id
+    private String id;
+    private long until;
+    @Indexed
+    private long revokedAt;
+
+    public Revocation() {
+    }
+
+    public Revocation(String id, long until, long revokedAt) {
+        this.id = id;
+        this.until = until;
+        this.revokedAt = revokedAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getUntil() {
+        return until;
+    }
+
+    public long getRevokedAt() {
+        return revokedAt;
+    }
+}
@@ -0,0 +1,46 @@
+package tcgserver;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keys that are revoked until a given time, kept in memory only until then. The list is bounded: once it holds its
+ * maximum number of keys that have not expired yet, nothing more can be revoked.
+ */
+public class RevocationList {
+    private final int maxSize;
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+
+    public RevocationList(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public boolean revoke(String key, long until, long now) {
+        if (until <= now) {
+            return true;
+        }
+
+        if (revoked.size() >= maxSize && !revoked.containsKey(key)) {
+            purge(now);
+            if (revoked.size() >= maxSize) {
+                return false;
+            }
+        }
+
+        revoked.merge(key, until, Math::max);
+        return true;
+    }
+
+    // Returns 0 if the key is not revoked
+    public long getRevokedUntil(String key, long now) {
+        Long until = revoked.get(key);
+        return until != null && until > now ? until : 0;
+    }
+
+    public void purge(long now) {
+        revoked.values().removeIf(until -> until <= now);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+}
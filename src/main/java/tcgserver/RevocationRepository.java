@@ -0,0 +1,9 @@
+package tcgserver;
+
+import java.util.List;
+
+public interface RevocationRepository extends StorageRepository<Revocation> {
+    List<Revocation> findByRevokedAtGreaterThanEqual(long revokedAt);
+
+    long deleteByUntilLessThanEqual(long until);
+}
@@ -0,0 +1,29 @@
+package tcgserver;
+
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.data.repository.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The storage operations the server uses, implemented by Spring Data Mongo unless the {@code memory} profile replaces
+ * the repositories with their {@link MemoryStore} implementations. Keeping to these methods keeps both backends
+ * interchangeable.
+ */
+@NoRepositoryBean
+public interface StorageRepository<T> extends Repository<T, String> {
+    <S extends T> S save(S entity);
+
+    <S extends T> S insert(S entity);
+
+    Optional<T> findById(String id);
+
+    List<T> findAll();
+
+    long count();
+
+    void deleteById(String id);
+
+    void deleteAll();
+}
@@ -1,6 +1,7 @@
 package tcgserver;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.math.BigInteger;
@@ -9,10 +10,13 @@ import java.security.NoSuchAlgorithmException;
 
 @Document("users")
 public class User {
+    public static final long AUTH_TOKEN_LIFETIME = 3 * 60 * 60 * 1000;
+
     private static final String SALT = "salt";
 
     @Id
     private String id;
+    @Indexed(unique = true)
     private String name;
     private String password;
     private String authToken;
@@ -29,6 +33,14 @@ public class User {
         this.expiresIn = 0;
     }
 
+    // A user known only from a signed token, which is all the authenticated requests need
+    static User ofToken(String id, String authToken, long expiresIn) {
+        User user = new User();
+        user.id = id;
+        user.setAuthToken(authToken, expiresIn);
+        return user;
+    }
+
     public String getId() {
         return id;
     }
@@ -93,7 +105,16 @@ public class User {
         }
 
         authToken = token;
-        expiresIn = System.currentTimeMillis() + 3 * 60 * 60 * 1000;
+        expiresIn = System.currentTimeMillis() + AUTH_TOKEN_LIFETIME;
+    }
+
+    void setPassword(String password) {
+        this.password = password;
+    }
+
+    void setAuthToken(String authToken, long expiresIn) {
+        this.authToken = authToken;
+        this.expiresIn = expiresIn;
     }
 
     public static String passwordToHash(String password) {
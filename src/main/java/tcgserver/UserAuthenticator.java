@@ -0,0 +1,391 @@
+package tcgserver;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves the user for the credentials sent with a request, {@code Bearer base64(userId:authToken)}, both for the
+ * REST API and for game socket connections. Resolved users are cached for {@code tcg.users.auth-cache-ttl}, at most
+ * until their token expires, so an authenticated request does not read the user from Mongo. Whoever issues a new token
+ * must {@link #invalidate(String)} the user. Other servers do not see the invalidation, so a token replaced or revoked
+ * through another server is still accepted here until the cached user is read again.
+ * <p>
+ * With {@code tcg.users.signed-tokens}, new tokens are signed instead ({@link AuthTokenSigner}) and verified without
+ * any read, and tokens revoked before they expire are kept in a {@link RevocationList}. Revocations are also saved, and
+ * every {@code tcg.users.revocation-refresh} each server adds the ones made through the other servers to its list.
+ * Stored tokens that are still valid keep working.
+ */
+@Component
+public class UserAuthenticator {
+    private static final Logger logger = LoggerFactory.getLogger(UserAuthenticator.class);
+    private static final int GENERATED_SECRET_LENGTH = 32;
+    private static final String SOURCE_SIGNATURE = "signature";
+    private static final String SOURCE_CACHE = "cache";
+    private static final String SOURCE_DATABASE = "database";
+
+    private static class CachedUser {
+        private final User user;
+        private final long until;
+
+        private CachedUser(User user, long until) {
+            this.user = user;
+            this.until = until;
+        }
+    }
+
+    @Autowired
+    private UserRepository userRepository;
+
+    // Only in the reactive profile
+    @Autowired(required = false)
+    private ReactiveUserRepository reactiveUserRepository;
+
+    @Autowired
+    private RevocationRepository revocationRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${tcg.users.auth-cache-size:100000}")
+    private int cacheSize;
+
+    @Value("${tcg.users.auth-cache-ttl:5000}")
+    private long cacheTtl;
+
+    @Value("${tcg.users.signed-tokens:false}")
+    private boolean isSigningTokens;
+
+    // Base64, shared by every server that must accept the same tokens
+    @Value("${tcg.users.token-secret:}")
+    private String tokenSecret;
+
+    @Value("${tcg.users.revocation-list-size:100000}")
+    private int revocationListSize;
+
+    @Value("${tcg.users.revocation-refresh:5000}")
+    private long revocationRefresh;
+
+    private AuthTokenSigner signer;
+    private RevocationList revocations;
+    private ScheduledExecutorService revocationRefresher;
+    private long revokedSince;
+    private Counter hits;
+    private Counter misses;
+    private final ConcurrentHashMap<String, CachedUser> users = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        hits = meterRegistry.counter("tcg.users.auth.cache.hits");
+        misses = meterRegistry.counter("tcg.users.auth.cache.misses");
+        meterRegistry.gaugeMapSize("tcg.users.auth.cache.size", Tags.empty(), users);
+        revocations = new RevocationList(revocationListSize);
+        meterRegistry.gauge("tcg.users.auth.revoked.size", revocations, RevocationList::size);
+        if (isSigningTokens) {
+            byte[] secret = Base64.decodeBase64(tokenSecret);
+            if (secret.length == 0) {
+                logger.warn("No tcg.users.token-secret, tokens are only valid on this server until it restarts");
+                secret = new byte[GENERATED_SECRET_LENGTH];
+                new SecureRandom().nextBytes(secret);
+            }
+
+            signer = new AuthTokenSigner(secret);
+            refreshRevocations();
+            if (revocationRefresh > 0) {
+                revocationRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "revocation-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                revocationRefresher.scheduleWithFixedDelay(this::refreshRevocations, revocationRefresh, revocationRefresh, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (revocationRefresher != null) {
+            revocationRefresher.shutdown();
+        }
+    }
+
+    public User getAuthorizedUser(String authHeader) {
+        String token = toToken(authHeader);
+        return token == null ? null : getAuthorizedUserForToken(token);
+    }
+
+    // Same as getAuthorizedUser, but a user that is not cached is read with the reactive driver
+    public Mono<User> getAuthorizedUserReactive(String authHeader) {
+        String token = toToken(authHeader);
+        String[] credentials = token == null ? null : toCredentials(token);
+        if (credentials == null) {
+            return Mono.empty();
+        }
+
+        FlightEvents.Authorization event = new FlightEvents.Authorization();
+        event.begin();
+        String userId = credentials[0];
+        String authToken = credentials[1];
+        long now = System.currentTimeMillis();
+        if (isVerifiedBySignature(authToken)) {
+            return Mono.justOrEmpty(commit(event, userId, SOURCE_SIGNATURE, getSignedUser(userId, authToken, now)));
+        }
+
+        User user = getCachedUser(userId, authToken, now);
+        if (user != null) {
+            return Mono.just(commit(event, userId, SOURCE_CACHE, user));
+        }
+
+        long invalidationCount = invalidations.get();
+        return reactiveUserRepository.findById(userId)
+                .filter(u -> isCurrent(u, authToken, invalidationCount, now))
+                .doOnSuccess(u -> commit(event, userId, SOURCE_DATABASE, u));
+    }
+
+    public User getAuthorizedUserForToken(String token) {
+        String[] credentials = toCredentials(token);
+        if (credentials == null) {
+            return null;
+        }
+
+        FlightEvents.Authorization event = new FlightEvents.Authorization();
+        event.begin();
+        String userId = credentials[0];
+        String authToken = credentials[1];
+        long now = System.currentTimeMillis();
+        if (isVerifiedBySignature(authToken)) {
+            return commit(event, userId, SOURCE_SIGNATURE, getSignedUser(userId, authToken, now));
+        }
+
+        User user = getCachedUser(userId, authToken, now);
+        if (user != null) {
+            return commit(event, userId, SOURCE_CACHE, user);
+        }
+
+        long invalidationCount = invalidations.get();
+        Optional<User> userObject = userRepository.findById(userId);
+        return commit(event, userId, SOURCE_DATABASE,
+                userObject.isPresent() && isCurrent(userObject.get(), authToken, invalidationCount, now) ? userObject.get() : null);
+    }
+
+    // Stored tokens are saved with the user
+    public void issueToken(User user) {
+        if (signer != null) {
+            long expiresIn = System.currentTimeMillis() + User.AUTH_TOKEN_LIFETIME;
+            user.setAuthToken(signer.sign(user.getId(), expiresIn), expiresIn);
+            return;
+        }
+
+        user.refreshAuthToken();
+        userRepository.save(user);
+        invalidate(user.getId());
+    }
+
+    public Mono<User> issueTokenReactive(User user) {
+        if (signer != null) {
+            issueToken(user);
+            return Mono.just(user);
+        }
+
+        user.refreshAuthToken();
+        return reactiveUserRepository.save(user).doOnSuccess(u -> invalidate(u.getId()));
+    }
+
+    // Revokes the token the user was authorized with, or every token of the user. Fails if the revocation list is full.
+    public boolean revoke(User user, boolean isEveryToken) {
+        long now = System.currentTimeMillis();
+        if (AuthTokenSigner.isSigned(user.getAuthToken()) && !isEveryToken) {
+            return revokeSigned(user.getId() + ":" + user.getExpiresIn(), user.getExpiresIn(), now);
+        }
+
+        // Every signed token issued so far expires within a token lifetime
+        if (isEveryToken && signer != null && !revokeSigned(user.getId(), now + User.AUTH_TOKEN_LIFETIME, now)) {
+            return false;
+        }
+
+        Optional<User> stored = userRepository.findById(user.getId());
+        if (stored.isPresent() && !stored.get().getAuthToken().isEmpty()) {
+            stored.get().setAuthToken("", 0);
+            userRepository.save(stored.get());
+        }
+
+        invalidate(user.getId());
+        return true;
+    }
+
+    // Must be called after the new token has been saved
+    public void invalidate(String userId) {
+        invalidations.incrementAndGet();
+        users.remove(userId);
+    }
+
+    // The second whitespace separated part of the header, as "<scheme> <credentials>"
+    private static String toToken(String authHeader) {
+        if (authHeader == null) {
+            return null;
+        }
+
+        int length = authHeader.length();
+        int start = 0;
+        while (start < length && !Character.isWhitespace(authHeader.charAt(start))) {
+            start++;
+        }
+
+        while (start < length && Character.isWhitespace(authHeader.charAt(start))) {
+            start++;
+        }
+
+        int end = start;
+        while (end < length && !Character.isWhitespace(authHeader.charAt(end))) {
+            end++;
+        }
+
+        return start < end ? authHeader.substring(start, end) : null;
+    }
+
+    // The user id and the auth token of base64(userId:authToken)
+    private static String[] toCredentials(String token) {
+        byte[] credentials = Base64.decodeBase64(token);
+        int separator = -1;
+        for (int i = 0; i < credentials.length; i++) {
+            if (credentials[i] == ':') {
+                if (separator >= 0) {
+                    return null;
+                }
+
+                separator = i;
+            }
+        }
+
+        if (separator <= 0 || separator == credentials.length - 1) {
+            return null;
+        }
+
+        return new String[] {
+                new String(credentials, 0, separator, StandardCharsets.UTF_8),
+                new String(credentials, separator + 1, credentials.length - separator - 1, StandardCharsets.UTF_8)
+        };
+    }
+
+    private boolean isVerifiedBySignature(String authToken) {
+        return signer != null && AuthTokenSigner.isSigned(authToken);
+    }
+
+    private User getSignedUser(String userId, String authToken, long now) {
+        long expiresIn = signer.verify(userId, authToken);
+        if (expiresIn > now && !isRevoked(userId, expiresIn, now)) {
+            return User.ofToken(userId, authToken, expiresIn);
+        }
+
+        return null;
+    }
+
+    private User getCachedUser(String userId, String authToken, long now) {
+        CachedUser cached = users.get(userId);
+        if (cached != null && cached.user.getAuthToken().equals(authToken) && cached.until > now) {
+            hits.increment();
+            return cached.user;
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    // Caches the user that was read if the token is the one it holds
+    private boolean isCurrent(User user, String authToken, long invalidationCount, long now) {
+        if (user.getAuthToken().equals(authToken) && user.getExpiresIn() > now) {
+            cache(user, invalidationCount, now);
+            return true;
+        }
+
+        return false;
+    }
+
+    private static User commit(FlightEvents.Authorization event, String userId, String source, User user) {
+        if (event.shouldCommit()) {
+            event.userId = userId;
+            event.source = source;
+            event.isAuthorized = user != null;
+            event.commit();
+        }
+
+        return user;
+    }
+
+    private boolean revokeSigned(String key, long until, long now) {
+        if (!revocations.revoke(key, until, now)) {
+            return false;
+        }
+
+        revocationRepository.save(new Revocation(key, until, now));
+        return true;
+    }
+
+    // Adds the revocations saved since the previous refresh and deletes the expired ones. The clocks of the servers may
+    // differ a little, so the revocations saved during the previous interval are read again.
+    private void refreshRevocations() {
+        long now = System.currentTimeMillis();
+        try {
+            int droppedCount = 0;
+            for (Revocation revocation : revocationRepository.findByRevokedAtGreaterThanEqual(revokedSince)) {
+                if (!revocations.revoke(revocation.getId(), revocation.getUntil(), now)) {
+                    droppedCount++;
+                }
+            }
+
+            if (droppedCount > 0) {
+                logger.warn("The revocation list is full, {} revocations of other servers were not added", droppedCount);
+            }
+
+            revocationRepository.deleteByUntilLessThanEqual(now);
+            revocations.purge(now);
+            revokedSince = now - Math.max(revocationRefresh, 0);
+        }
+        catch (RuntimeException e) {
+            logger.warn("Could not refresh the revoked tokens", e);
+        }
+    }
+
+    private boolean isRevoked(String userId, long expiresIn, long now) {
+        return revocations.getRevokedUntil(userId + ":" + expiresIn, now) > 0
+                || revocations.getRevokedUntil(userId, now) >= expiresIn;
+    }
+
+    // A user read before an invalidation may hold the previous token, so it is only kept if no invalidation happened
+    // since it was read, checked again after the put in case one happens in between
+    private void cache(User user, long invalidationCount, long now) {
+        if (users.size() >= cacheSize) {
+            users.values().removeIf(c -> c.until <= now);
+            if (users.size() >= cacheSize) {
+                users.clear();
+            }
+        }
+
+        if (invalidations.get() == invalidationCount) {
+            CachedUser cached = new CachedUser(user, Math.min(user.getExpiresIn(), now + cacheTtl));
+            users.put(user.getId(), cached);
+            if (invalidations.get() != invalidationCount) {
+                users.remove(user.getId(), cached);
+            }
+        }
+    }
+}
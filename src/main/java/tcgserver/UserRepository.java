@@ -1,9 +1,7 @@
 package tcgserver;
 
-import org.springframework.data.mongodb.repository.MongoRepository;
-
 import java.util.List;
 
-public interface UserRepository extends MongoRepository<User, String> {
+public interface UserRepository extends StorageRepository<User> {
     List<User> findByName(String name);
 }
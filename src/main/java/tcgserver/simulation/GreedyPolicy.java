@@ -0,0 +1,32 @@
+package tcgserver.simulation;
+
+import tcgserver.Card;
+import tcgserver.Game;
+import tcgserver.Player;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Plays the most expensive affordable card, or skips when no card can be played.
+ */
+public class GreedyPolicy implements Policy {
+    @Override
+    public Game.Action nextAction(Game game, int player, SplittableRandom random) {
+        Player p = game.getPlayers().get(player);
+        List<Card> hand = p.getHand();
+        int best = -1;
+        for (int i = 0; i < hand.size(); i++) {
+            int mana = hand.get(i).getMana();
+            if (mana <= p.getMana() && (best < 0 || mana > hand.get(best).getMana())) {
+                best = i;
+            }
+        }
+
+        if (best < 0) {
+            return new Game.Action(player);
+        }
+
+        return new Game.Action(player, Game.ActionType.PLAY_CARD, best);
+    }
+}
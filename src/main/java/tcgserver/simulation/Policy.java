@@ -0,0 +1,13 @@
+package tcgserver.simulation;
+
+import tcgserver.Game;
+
+import java.util.SplittableRandom;
+
+/**
+ * Chooses the next action of the active player. Policies are shared by all simulation threads, so they must not keep
+ * mutable state; any randomness comes from the per-game generator.
+ */
+public interface Policy {
+    Game.Action nextAction(Game game, int player, SplittableRandom random);
+}
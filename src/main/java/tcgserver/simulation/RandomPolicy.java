@@ -0,0 +1,38 @@
+package tcgserver.simulation;
+
+import tcgserver.Card;
+import tcgserver.Game;
+import tcgserver.Player;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Plays a random affordable card, or skips when no card can be played.
+ */
+public class RandomPolicy implements Policy {
+    @Override
+    public Game.Action nextAction(Game game, int player, SplittableRandom random) {
+        Player p = game.getPlayers().get(player);
+        List<Card> hand = p.getHand();
+        int affordable = 0;
+        for (Card card : hand) {
+            if (card.getMana() <= p.getMana()) {
+                affordable++;
+            }
+        }
+
+        if (affordable == 0) {
+            return new Game.Action(player);
+        }
+
+        int choice = random.nextInt(affordable);
+        for (int i = 0; i < hand.size(); i++) {
+            if (hand.get(i).getMana() <= p.getMana() && choice-- == 0) {
+                return new Game.Action(player, Game.ActionType.PLAY_CARD, i);
+            }
+        }
+
+        return new Game.Action(player);
+    }
+}
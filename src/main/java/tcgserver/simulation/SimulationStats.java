@@ -0,0 +1,127 @@
+package tcgserver.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Aggregate results of a batch of simulated games. Each simulation task fills its own instance, and the results are
+ * combined with {@link #merge(SimulationStats)}, so no instance is ever shared between threads while it is written.
+ */
+public class SimulationStats {
+    private final long[] wins;
+    private final long[] turns;
+    private final long[] cardPlays;
+    private long games;
+    private long unfinished;
+
+    public SimulationStats(int seats, int cards, int maxTurns) {
+        wins = new long[seats];
+        turns = new long[maxTurns + 1];
+        cardPlays = new long[cards];
+    }
+
+    void recordGame(int winner, int turnCount) {
+        games++;
+        if (winner >= 0) {
+            wins[winner]++;
+        }
+        else {
+            unfinished++;
+        }
+
+        turns[Math.min(turnCount, turns.length - 1)]++;
+    }
+
+    void recordCardPlay(int card) {
+        cardPlays[card]++;
+    }
+
+    SimulationStats merge(SimulationStats other) {
+        games += other.games;
+        unfinished += other.unfinished;
+        for (int i = 0; i < wins.length; i++) {
+            wins[i] += other.wins[i];
+        }
+
+        for (int i = 0; i < turns.length; i++) {
+            turns[i] += other.turns[i];
+        }
+
+        for (int i = 0; i < cardPlays.length; i++) {
+            cardPlays[i] += other.cardPlays[i];
+        }
+
+        return this;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getUnfinished() {
+        return unfinished;
+    }
+
+    public long getWins(int seat) {
+        return wins[seat];
+    }
+
+    public double getWinRate(int seat) {
+        return games == 0 ? 0 : (double) wins[seat] / games;
+    }
+
+    public long getCardPlays(int card) {
+        return cardPlays[card];
+    }
+
+    public long getTotalCardPlays() {
+        return Arrays.stream(cardPlays).sum();
+    }
+
+    public double getMeanTurns() {
+        long total = 0;
+        for (int i = 0; i < turns.length; i++) {
+            total += i * turns[i];
+        }
+
+        return games == 0 ? 0 : (double) total / games;
+    }
+
+    public int getTurnsPercentile(double percentile) {
+        long rank = (long) Math.ceil(percentile * games);
+        long seen = 0;
+        for (int i = 0; i < turns.length; i++) {
+            seen += turns[i];
+            if (seen >= rank && seen > 0) {
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    public int getMaxTurns() {
+        for (int i = turns.length - 1; i >= 0; i--) {
+            if (turns[i] > 0) {
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SimulationStats)) {
+            return false;
+        }
+
+        SimulationStats other = (SimulationStats) o;
+        return games == other.games && unfinished == other.unfinished && Arrays.equals(wins, other.wins)
+                && Arrays.equals(turns, other.turns) && Arrays.equals(cardPlays, other.cardPlays);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(wins) + Arrays.hashCode(cardPlays);
+    }
+}
@@ -0,0 +1,241 @@
+package tcgserver.simulation;
+
+import tcgserver.Card;
+import tcgserver.CardCatalog;
+import tcgserver.Game;
+import tcgserver.Player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays complete games between policies without Spring or Mongo, splitting the games over a fork-join pool. Game
+ * {@code i} always uses the same generator derived from the base seed, so results do not depend on the parallelism.
+ * Run with {@code mvn compile exec:java -Dstart-class=tcgserver.simulation.Simulator -Dexec.args="--games 1000000"}.
+ */
+public class Simulator {
+    private static final int GAMES_PER_TASK = 256;
+    private static final int[] DEFAULT_MANA = {0, 0, 1, 1, 2, 2, 2, 3, 3, 3, 4, 4, 4, 5, 5, 6, 6, 7, 8, 9};
+
+    private final CardCatalog catalog;
+    private final int[] deck;
+    private final List<Policy> policies;
+    private final int maxTurns;
+    private final long seed;
+    private final String[] seatIds;
+
+    public Simulator(CardCatalog catalog, int[] deck, List<Policy> policies, int maxTurns, long seed) {
+        assert policies.size() == Game.MAX_PLAYERS;
+
+        this.catalog = catalog;
+        this.deck = deck.clone();
+        this.policies = new ArrayList<>(policies);
+        this.maxTurns = maxTurns;
+        this.seed = seed;
+        seatIds = new String[policies.size()];
+        for (int i = 0; i < seatIds.length; i++) {
+            seatIds[i] = "seat" + i;
+        }
+    }
+
+    public SimulationStats run(long games, ForkJoinPool pool) {
+        return pool.invoke(new SimulationTask(0, games));
+    }
+
+    private class SimulationTask extends RecursiveTask<SimulationStats> {
+        private final long from;
+        private final long to;
+
+        private SimulationTask(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SimulationStats compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                SimulationStats stats = new SimulationStats(policies.size(), catalog.size(), maxTurns);
+                for (long i = from; i < to; i++) {
+                    play(new SplittableRandom(mix(seed + i)), stats);
+                }
+
+                return stats;
+            }
+
+            long middle = (from + to) >>> 1;
+            SimulationTask left = new SimulationTask(from, middle);
+            left.fork();
+            SimulationStats right = new SimulationTask(middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    private void play(SplittableRandom random, SimulationStats stats) {
+        Game game = new Game(catalog, deck, true, random.nextLong());
+        for (String seatId : seatIds) {
+            game.addPlayer(new Player(seatId, catalog, deck));
+        }
+
+        if (!game.start()) {
+            stats.recordGame(-1, 0);
+            return;
+        }
+
+        while (game.getState() == Game.GameState.ACTIVE && game.getTurn() < maxTurns) {
+            int player = game.getActivePlayer();
+            Game.Action action = policies.get(player).nextAction(game, player, random);
+            Card card = null;
+            if (action.getType() == Game.ActionType.PLAY_CARD) {
+                card = game.getPlayers().get(player).getHand().get(action.getIndex());
+            }
+
+            if (game.addAction(action)) {
+                if (card != null) {
+                    stats.recordCardPlay(catalog.indexOf(card));
+                }
+            }
+            else if (!game.addAction(new Game.Action(player))) {
+                break;
+            }
+        }
+
+        stats.recordGame(winner(game), game.getTurn());
+    }
+
+    private static int winner(Game game) {
+        if (game.getState() != Game.GameState.END) {
+            return -1;
+        }
+
+        List<Player> players = game.getPlayers();
+        for (int i = 0; i < players.size(); i++) {
+            if (players.get(i).getHealth() > 0) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    // SplitMix64 finalizer, so consecutive game indices get unrelated generators
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static void main(String[] args) {
+        long games = 100_000;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        int maxTurns = 1000;
+        int[] mana = DEFAULT_MANA;
+        List<Policy> policies = Arrays.asList(new GreedyPolicy(), new GreedyPolicy());
+        boolean isScaling = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games":
+                    games = Long.parseLong(args[++i]);
+                    break;
+                case "--parallelism":
+                    parallelism = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--max-turns":
+                    maxTurns = Integer.parseInt(args[++i]);
+                    break;
+                case "--mana":
+                    mana = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--policies":
+                    policies = new ArrayList<>();
+                    for (String name : args[++i].split(",")) {
+                        policies.add(policy(name));
+                    }
+                    break;
+                case "--scaling":
+                    isScaling = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<Card> cards = new ArrayList<>();
+        for (int m : mana) {
+            cards.add(new Card(m));
+        }
+
+        CardCatalog catalog = CardCatalog.of(cards);
+        Simulator simulator = new Simulator(catalog, catalog.indicesOf(cards), policies, maxTurns, seed);
+        System.out.printf("START_HEALTH=%d MAX_HAND_SIZE=%d BLEED_OUT_DAMAGE=%d deck=%s%n",
+                Player.START_HEALTH, Player.MAX_HAND_SIZE, Game.BLEED_OUT_DAMAGE, Arrays.toString(mana));
+
+        // A short run first, so the reported throughput is not dominated by JIT compilation
+        simulator.run(Math.min(games, 20_000), ForkJoinPool.commonPool());
+        if (isScaling) {
+            double single = 0;
+            for (int threads = 1; threads <= parallelism; threads *= 2) {
+                double rate = measure(simulator, games, threads, false);
+                single = threads == 1 ? rate : single;
+                System.out.printf("%3d threads: %,12.0f games/s  %5.2fx%n", threads, rate, rate / single);
+            }
+        }
+        else {
+            measure(simulator, games, parallelism, true);
+        }
+    }
+
+    private static double measure(Simulator simulator, long games, int parallelism, boolean isReported) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long start = System.nanoTime();
+            SimulationStats stats = simulator.run(games, pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double rate = games / seconds;
+            if (isReported) {
+                report(stats, simulator.catalog, seconds, rate, parallelism);
+            }
+
+            return rate;
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void report(SimulationStats stats, CardCatalog catalog, double seconds, double rate, int parallelism) {
+        System.out.printf("%,d games in %.2f s (%,.0f games/s on %d threads)%n", stats.getGames(), seconds, rate, parallelism);
+        for (int seat = 0; seat < Game.MAX_PLAYERS; seat++) {
+            System.out.printf("seat %d win rate: %.2f%%%n", seat, 100 * stats.getWinRate(seat));
+        }
+
+        System.out.printf("unfinished: %.2f%%%n", 100.0 * stats.getUnfinished() / stats.getGames());
+        System.out.printf("turns: mean %.1f, p10 %d, p50 %d, p90 %d, p99 %d, max %d%n", stats.getMeanTurns(),
+                stats.getTurnsPercentile(0.1), stats.getTurnsPercentile(0.5), stats.getTurnsPercentile(0.9),
+                stats.getTurnsPercentile(0.99), stats.getMaxTurns());
+        long plays = stats.getTotalCardPlays();
+        System.out.println("card  mana  plays/game  share");
+        for (int i = 0; i < catalog.size(); i++) {
+            System.out.printf("%4d  %4d  %10.3f  %5.2f%%%n", i, catalog.get(i).getMana(),
+                    (double) stats.getCardPlays(i) / stats.getGames(), plays == 0 ? 0 : 100.0 * stats.getCardPlays(i) / plays);
+        }
+    }
+
+    private static Policy policy(String name) {
+        switch (name) {
+            case "greedy":
+                return new GreedyPolicy();
+            case "random":
+                return new RandomPolicy();
+            default:
+                throw new IllegalArgumentException("Unknown policy " + name);
+        }
+    }
+}
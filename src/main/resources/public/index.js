@@ -251,6 +251,7 @@ function determinePage() {
     }
 
     $('.log-button').removeClass("disabled");
+    watchGameEvents();
 }
 
 function showAlert(id, msg) {
@@ -337,34 +338,80 @@ function updateTexts() {
 }
 
 function updateGameInfo(id, isDeterminePage) {
-    var previousTurn = cookie.game ? cookie.game.turn : -1;
-    var previousState = cookie.game ? cookie.game.state : "";
     $.get( "/api/games/" + id, {})
         .done(function( data ) {
-            //console.log(data);
-            cookie.game = data;
-            document.cookie = JSON.stringify(cookie);
+            applyGameInfo(data, isDeterminePage);
+        })
+        .fail(function( data ) {
+            console.log(data.responseJSON.message)
+        });
+}
 
-            if (data.state === "INITIAL") {
-                $('#start-game-button').show();
-            }
-            else {
-                $('#start-game-button').hide();
-            }
+function applyGameInfo(data, isDeterminePage) {
+    var previousTurn = cookie.game ? cookie.game.turn : -1;
+    var previousState = cookie.game ? cookie.game.state : "";
+    //console.log(data);
+    cookie.game = data;
+    document.cookie = JSON.stringify(cookie);
 
-            if (data.turn !== previousTurn || !cookie.player) {
-                lastUpdateAction = -1;
-            }
+    if (data.state === "INITIAL") {
+        $('#start-game-button').show();
+    }
+    else {
+        $('#start-game-button').hide();
+    }
 
-            updatePlayerInfo();
+    if (data.turn !== previousTurn || !cookie.player) {
+        lastUpdateAction = -1;
+    }
 
-            if (isDeterminePage || previousState !== cookie.game.state) {
-                determinePage();
+    updatePlayerInfo();
+
+    if (isDeterminePage || previousState !== cookie.game.state) {
+        determinePage();
+    }
+}
+
+var gameEvents = null;
+var gameEventsId = null;
+function watchGameEvents() {
+    var id = cookie && cookie.game && cookie.game.state !== "END" ? cookie.game.id : null;
+    if (id === gameEventsId) {
+        return;
+    }
+
+    if (gameEvents) {
+        gameEvents.close();
+    }
+
+    gameEvents = null;
+    gameEventsId = id;
+    if (id) {
+        // The server sends the whole game first, on every (re)connect, and only the changes after that
+        gameEvents = new EventSource("/api/games/" + id + "/events");
+        gameEvents.addEventListener("game", function (e) {
+            applyGameInfo(JSON.parse(e.data), false);
+        });
+        gameEvents.addEventListener("update", function (e) {
+            var update = JSON.parse(e.data);
+            if (!cookie.game || cookie.game.id !== update.id) {
+                return;
             }
-        })
-        .fail(function( data ) {
-            console.log(data.responseJSON.message)
+
+            if (cookie.game.actions.length + update.actions.length !== update.actionCount) {
+                updateGameInfo(update.id, false);
+                return;
+            }
+
+            var game = $.extend({}, cookie.game);
+            game.state = update.state;
+            game.turn = update.turn;
+            game.cardDrawnThisTurn = update.cardDrawnThisTurn;
+            game.players = update.players;
+            game.actions = game.actions.concat(update.actions);
+            applyGameInfo(game, false);
         });
+    }
 }
 
 function updatePlayerInfo() {
@@ -400,9 +447,3 @@ function updatePlayerInfo() {
         }
     }
 }
-
-setInterval(function(){
-    if (cookie && cookie.game) {
-        updateGameInfo(cookie.game.id, false);
-    }
-}, 1000);
\ No newline at end of file
@@ -0,0 +1,41 @@
+package tcgserver;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// The projection queries of GameRepositoryCustomImpl on the reactive driver
+@Component
+@Profile("reactive & !memory")
+public class MongoReactiveGameQueries implements ReactiveGameQueries {
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Override
+    public Mono<Long> findRevisionById(String id) {
+        return mongoTemplate.findOne(GameRepositoryCustomImpl.revisionQuery(id), Document.class, collection())
+                .map(GameRepositoryCustomImpl::toRevision);
+    }
+
+    @Override
+    public Mono<List<Game.Action>> findActionsById(String id, int since, int limit) {
+        return mongoTemplate.findOne(GameRepositoryCustomImpl.actionsQuery(id, since, limit), Document.class, collection())
+                .map(document -> GameRepositoryCustomImpl.toActions(document, mongoTemplate.getConverter()));
+    }
+
+    @Override
+    public Flux<Game.GameSummary> findSummaries(Game.GameState state, String after, int limit) {
+        return mongoTemplate.find(GameRepositoryCustomImpl.summariesQuery(state, after, limit), Document.class, collection())
+                .map(GameRepositoryCustomImpl::toSummary);
+    }
+
+    private String collection() {
+        return mongoTemplate.getCollectionName(Game.class);
+    }
+}
@@ -0,0 +1,441 @@
+package tcgserver;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import tcgserver.APIController.APIException;
+
+/**
+ * The REST API of {@link APIController} for the {@code reactive} profile, served by WebFlux without blocking its event
+ * loop. Users, cards and stored game projections are read with the reactive repositories, games go through the
+ * asynchronous {@link GameStore} methods, and the few calls that are still blocking (revocations, past game states,
+ * game creation) run on the elastic scheduler. The store itself still loads and saves games with the blocking
+ * {@link GameRepository}, on its own workers, so a load of uncached games is bounded by those workers rather than the
+ * event loop. Game sockets are only served in the default servlet mode.
+ */
+@RestController
+@Profile("reactive")
+public class ReactiveAPIController {
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Autowired
+    private ReactiveGameQueries gameQueries;
+
+    @Autowired
+    private GameStore gameStore;
+
+    @Autowired
+    private GameEvents gameEvents;
+
+    @Autowired
+    private ReactiveCardRepository cardRepository;
+
+    @Autowired
+    private CardCatalogs cardCatalogs;
+
+    @Autowired
+    private ReactiveUserRepository userRepository;
+
+    @Autowired
+    private UserAuthenticator userAuthenticator;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private Matchmaker matchmaker;
+
+    @Autowired
+    private GameMetrics gameMetrics;
+
+    @Value("${tcg.games.actions.max-batch:100}")
+    private int maxActionBatch;
+
+    @Value("${tcg.games.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${tcg.matchmaking.timeout:30000}")
+    private long matchmakingTimeout;
+
+    @RequestMapping(value = "/api", produces = MediaType.APPLICATION_JSON_VALUE)
+    public String index() {
+        return "{\"version\":\"0.1\"}";
+    }
+
+    @ExceptionHandler(APIException.class)
+    public ResponseEntity handleException(APIException e) {
+        gameMetrics.recordRejection(e.getStatus(), e.getMessage());
+        return APIController.toErrorResponse(e);
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity handleRejectedExecution(RejectedExecutionException e) {
+        return handleException(new APIException(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, please retry"));
+    }
+
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    public ResponseEntity handleConcurrencyFailure(ConcurrencyFailureException e) {
+        return handleException(new APIException(HttpStatus.CONFLICT, "Game was modified concurrently, please retry"));
+    }
+
+    @RequestMapping(value = "/api/cards", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<List<Card.CardSimple>> cards() {
+        // In id order, which is the insertion order the servlet API returns in natural order
+        return cardRepository.findAll(Sort.by("_id")).map(Card::getSimple).collectList();
+    }
+
+    @RequestMapping(value = "/api/cards/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Card.CardSimple> card(@PathVariable("id") String id) {
+        return cardRepository.findById(id)
+                .map(Card::getSimple)
+                .switchIfEmpty(Mono.error(new APIException(HttpStatus.NOT_FOUND, "Card not found")));
+    }
+
+    @RequestMapping(value = "/api/games", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<List<Game.GameSummary>>> games(ServerWebExchange exchange) throws APIException {
+        MultiValueMap<String, String> params = exchange.getRequest().getQueryParams();
+        Game.GameState state = toEnum(Game.GameState.class, params, "state");
+        String after = params.getFirst("after");
+        Integer limit = toInteger(params, "limit");
+        if (limit != null && limit <= 0) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Invalid page size");
+        }
+
+        int pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+        return gameQueries.findSummaries(state, after, pageSize).collectList().flatMap(stored -> {
+            List<CompletableFuture<Optional<Game.GameSummary>>> cached = new ArrayList<>();
+            for (Game.GameSummary s : stored) {
+                // Cached games may not have been flushed yet
+                cached.add(gameStore.readIfCachedAsync(s.id, Game::getSummary));
+            }
+
+            return Mono.fromFuture(CompletableFuture.allOf(cached.toArray(new CompletableFuture[0]))).then(Mono.fromCallable(() -> {
+                List<Game.GameSummary> summaries = new ArrayList<>();
+                for (int i = 0; i < stored.size(); i++) {
+                    Game.GameSummary summary = cached.get(i).join().orElse(stored.get(i));
+                    if (state == null || summary.state == state) {
+                        summaries.add(summary);
+                    }
+                }
+
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                if (stored.size() == pageSize) {
+                    UriComponentsBuilder next = UriComponentsBuilder.fromPath("/api/games")
+                            .queryParam("after", stored.get(stored.size() - 1).id)
+                            .queryParam("limit", pageSize);
+                    if (state != null) {
+                        next.queryParam("state", state);
+                    }
+
+                    response.header(HttpHeaders.LINK, "<" + next.toUriString() + ">; rel=\"next\"");
+                }
+
+                return response.body(summaries);
+            }));
+        });
+    }
+
+    @RequestMapping(value = "/api/games", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> createGame(@RequestHeader(defaultValue = "") String Authorization) {
+        return getAuthorizedUser(Authorization).flatMap(user -> Mono.fromCallable(() -> {
+            Game game = new Game(cardCatalogs.getCurrent());
+            game.addPlayer(user);
+            gameStore.insert(game);
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create("/api/games/" + game.getId()))
+                    .<String>build();
+        }).subscribeOn(Schedulers.elastic()));
+    }
+
+    @RequestMapping(value = "/api/games/{id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<Game.GameSimple>> game(@PathVariable("id") String id, ServerWebExchange exchange) {
+        return readGame(id, exchange, Game::getSimple);
+    }
+
+    @RequestMapping(value = "/api/games/{id}/events", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> events(@PathVariable("id") String id) {
+        return orNotFound(gameStore.readAsync(id, gameEvents::subscribeEvents), "Game not found").flatMapMany(Function.identity());
+    }
+
+    @RequestMapping(value = "/api/games/{id}", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Game.GameSimple> updateGame(@PathVariable("id") String id, ServerWebExchange exchange, @RequestHeader(defaultValue = "") String Authorization) {
+        return getParams(exchange).flatMap(params -> {
+            Game.GameState state = toEnum(Game.GameState.class, params, "state");
+            return getAuthorizedUserOrNull(Authorization).flatMap(user ->
+                    orNotFound(gameStore.updateAsync(id, APIController.startGame(user.orElse(null), state, gameMetrics)), "Game not found"));
+        });
+    }
+
+    @RequestMapping(value = "/api/games/{id}/players", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<List<Player.PlayerSimple>>> players(@PathVariable("id") String id, ServerWebExchange exchange) {
+        return readGame(id, exchange, APIController::playersOf);
+    }
+
+    @RequestMapping(value = "/api/games/{id}/players", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> addPlayer(@PathVariable("id") String id, @RequestHeader(defaultValue = "") String Authorization) {
+        return getAuthorizedUserOrNull(Authorization).flatMap(user ->
+                orNotFound(gameStore.updateAsync(id, APIController.addPlayer(user.orElse(null))), "Game not found"));
+    }
+
+    @RequestMapping(value = "/api/games/{id}/players/{index}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Player> player(@PathVariable("id") String id, @PathVariable("index") int index, @RequestHeader(defaultValue = "") String Authorization) {
+        return getAuthorizedUserOrNull(Authorization).flatMap(user ->
+                orNotFound(gameStore.readAsync(id, APIController.readPlayer(user.orElse(null), index)), "User not found"));
+    }
+
+    @RequestMapping(value = "/api/games/{id}/actions", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<List<Game.Action>>> actions(@PathVariable("id") String id, ServerWebExchange exchange) throws APIException {
+        MultiValueMap<String, String> params = exchange.getRequest().getQueryParams();
+        Integer since = toInteger(params, "since");
+        Integer limit = toInteger(params, "limit");
+        if (since == null) {
+            return readGame(id, exchange, game -> new ArrayList<>(game.getActions()));
+        }
+
+        if (since < 0 || (limit != null && limit <= 0)) {
+            throw new APIException(HttpStatus.BAD_REQUEST, "Invalid action range");
+        }
+
+        return readActions(id, since, limit == null ? maxActionBatch : Math.min(limit, maxActionBatch))
+                .map(ResponseEntity::ok)
+                .switchIfEmpty(Mono.error(new APIException(HttpStatus.NOT_FOUND, "Game not found")));
+    }
+
+    @RequestMapping(value = "/api/games/{id}/states/{actionCount}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Game.GameSimple> gameAt(@PathVariable("id") String id, @PathVariable("actionCount") int actionCount) {
+        return Mono.fromCallable(() -> gameRepository.findByIdAt(id, actionCount))
+                .subscribeOn(Schedulers.elastic())
+                .flatMap(game -> game.isPresent()
+                        ? Mono.just(game.get().getSimple())
+                        : Mono.error(new APIException(HttpStatus.NOT_FOUND, "Game state not found")));
+    }
+
+    @RequestMapping(value = "/api/games/{id}/actions", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> addAction(@PathVariable("id") String id, ServerWebExchange exchange, @RequestHeader(defaultValue = "") String Authorization) {
+        return getParams(exchange).flatMap(params -> {
+            Game.ActionType type = toEnum(Game.ActionType.class, params, "type");
+            int player = toRequiredInt(params, "player");
+            int index = toRequiredInt(params, "index");
+            return getAuthorizedUserOrNull(Authorization).flatMap(user ->
+                    orNotFound(gameStore.updateAsync(id, APIController.addAction(user.orElse(null), type, player, index, gameMetrics)), "Game not found"));
+        });
+    }
+
+    @RequestMapping(value = "/api/games/{id}/actions/{index}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Game.Action> action(@PathVariable("id") String id, @PathVariable("index") int index) throws APIException {
+        if (index < 0) {
+            throw new APIException(HttpStatus.NOT_FOUND, "Action not found");
+        }
+
+        return readActions(id, index, 1)
+                .switchIfEmpty(Mono.error(new APIException(HttpStatus.NOT_FOUND, "Game not found")))
+                .flatMap(actions -> actions.size() > 0
+                        ? Mono.just(actions.get(0))
+                        : Mono.error(new APIException(HttpStatus.NOT_FOUND, "Action not found")));
+    }
+
+    @RequestMapping(value = "/api/matchmaking", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> enqueue(@RequestHeader(defaultValue = "") String Authorization) {
+        return getAuthorizedUser(Authorization).flatMap(user -> {
+            Matchmaker.Ticket ticket = matchmaker.enqueue(user);
+            Mono<Game> match = Mono.fromFuture(ticket.getMatch());
+            // A ticket matched right as it times out is not cancelled, and the request gets its game
+            return match.timeout(Duration.ofMillis(matchmakingTimeout), Mono.defer(() -> {
+                        matchmaker.cancel(ticket);
+                        return match;
+                    }))
+                    .onErrorResume(e -> Mono.empty())
+                    .then(Mono.fromCallable(() -> APIController.toMatchResponse(ticket)))
+                    .doOnCancel(() -> matchmaker.cancel(ticket));
+        });
+    }
+
+    @RequestMapping(value = "/api/matchmaking", method = RequestMethod.DELETE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> dequeue(@RequestHeader(defaultValue = "") String Authorization) {
+        return getAuthorizedUser(Authorization).flatMap(user -> matchmaker.cancel(user.getId())
+                ? Mono.just(ResponseEntity.noContent().<String>build())
+                : Mono.error(new APIException(HttpStatus.NOT_FOUND, "User is not waiting for a game")));
+    }
+
+    @RequestMapping(value = "/api/users", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<User.UserAuthorized> createUser(ServerWebExchange exchange) {
+        return getParams(exchange).flatMap(params -> {
+            String name = params.getFirst("name");
+            String password = params.getFirst("password");
+            if (password == null) {
+                return Mono.error(new APIException(HttpStatus.BAD_REQUEST, "Password is required"));
+            }
+
+            return Mono.fromFuture(passwordHasher.hash(password))
+                    .flatMap(hash -> userRepository.insert(new User(name, hash)))
+                    .onErrorMap(DuplicateKeyException.class, e -> new APIException(HttpStatus.BAD_REQUEST, "User with name already exist"))
+                    .flatMap(userAuthenticator::issueTokenReactive)
+                    .map(User::getAuthorized);
+        });
+    }
+
+    @RequestMapping(value = "/api/users/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<User.UserSimple> user(@PathVariable("id") String id) {
+        return userRepository.findById(id)
+                .map(User::getSimple)
+                .switchIfEmpty(Mono.error(new APIException(HttpStatus.NOT_FOUND, "User not found")));
+    }
+
+    @RequestMapping(value = "/api/users/auth", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<User.UserAuthorized> auth(ServerWebExchange exchange) {
+        return getParams(exchange).flatMap(params -> {
+            String name = params.getFirst("name");
+            String password = params.getFirst("password");
+            return userRepository.findByName(name).next()
+                    .switchIfEmpty(Mono.error(new APIException(HttpStatus.NOT_FOUND, "User not found")))
+                    .flatMap(user -> {
+                        if (password == null) {
+                            return Mono.error(new APIException(HttpStatus.BAD_REQUEST, "Invalid password"));
+                        }
+
+                        return Mono.fromFuture(passwordHasher.verify(password, user.getPassword())).flatMap(isValid -> {
+                            if (!isValid) {
+                                return Mono.error(new APIException(HttpStatus.BAD_REQUEST, "Invalid password"));
+                            }
+
+                            if (!passwordHasher.needsRehash(user.getPassword())) {
+                                return Mono.just(user);
+                            }
+
+                            // Upgrading an old hash is best effort, the login does not fail if the hasher is busy
+                            return Mono.fromFuture(passwordHasher.hash(password))
+                                    .flatMap(hash -> {
+                                        user.setPassword(hash);
+                                        return userRepository.save(user);
+                                    })
+                                    .onErrorResume(e -> Mono.just(user));
+                        });
+                    })
+                    .flatMap(userAuthenticator::issueTokenReactive)
+                    .map(User::getAuthorized);
+        });
+    }
+
+    @RequestMapping(value = "/api/users/auth", method = RequestMethod.DELETE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> revokeAuth(@RequestHeader(defaultValue = "") String Authorization, ServerWebExchange exchange) {
+        return getParams(exchange).zipWith(getAuthorizedUser(Authorization)).flatMap(request -> Mono.fromCallable(() -> {
+            User user = request.getT2();
+            boolean isEveryToken = Boolean.parseBoolean(request.getT1().getFirst("all"));
+            if (!userAuthenticator.revoke(user, isEveryToken)) {
+                throw new APIException(HttpStatus.SERVICE_UNAVAILABLE, "Could not revoke token");
+            }
+
+            return ResponseEntity.noContent().<String>build();
+        }).subscribeOn(Schedulers.elastic()));
+    }
+
+    // Same as APIController.readGame, checking the revision before the game is loaded or serialized
+    private <T> Mono<ResponseEntity<T>> readGame(String id, ServerWebExchange exchange, GameStore.GameOperation<T, APIException> operation) {
+        return readRevision(id)
+                .switchIfEmpty(Mono.error(new APIException(HttpStatus.NOT_FOUND, "Game not found")))
+                .flatMap(revision -> {
+                    if (exchange.checkNotModified(APIController.toETag(revision))) {
+                        return Mono.empty();
+                    }
+
+                    return orNotFound(gameStore.readAsync(id, game -> ResponseEntity.ok()
+                            .eTag(APIController.toETag(game.getRevision()))
+                            .body(operation.apply(game))), "Game not found");
+                });
+    }
+
+    private Mono<Long> readRevision(String id) {
+        return Mono.fromFuture(gameStore.readIfCachedAsync(id, Game::getRevision))
+                .flatMap(revision -> revision.isPresent() ? Mono.just(revision.get()) : gameQueries.findRevisionById(id));
+    }
+
+    private Mono<List<Game.Action>> readActions(String id, int since, int limit) {
+        return Mono.fromFuture(gameStore.readIfCachedAsync(id, game -> {
+            List<Game.Action> all = game.getActions();
+            return new ArrayList<>(all.subList(Math.min(since, all.size()), (int) Math.min((long) since + limit, all.size())));
+        })).flatMap(actions -> actions.isPresent() ? Mono.just(actions.get()) : gameQueries.findActionsById(id, since, limit));
+    }
+
+    private static <T> Mono<T> orNotFound(CompletableFuture<Optional<T>> result, String message) {
+        return Mono.fromFuture(result).flatMap(value -> value.isPresent()
+                ? Mono.just(value.get())
+                : Mono.error(new APIException(HttpStatus.NOT_FOUND, message)));
+    }
+
+    private Mono<User> getAuthorizedUser(String authHeader) {
+        return userAuthenticator.getAuthorizedUserReactive(authHeader)
+                .switchIfEmpty(Mono.error(new APIException(HttpStatus.UNAUTHORIZED, "User login is required")));
+    }
+
+    // The game operations decide what a missing login means
+    private Mono<Optional<User>> getAuthorizedUserOrNull(String authHeader) {
+        return userAuthenticator.getAuthorizedUserReactive(authHeader).map(Optional::of).defaultIfEmpty(Optional.empty());
+    }
+
+    // WebFlux keeps the query and the form apart, the servlet API merges them into request parameters
+    private static Mono<MultiValueMap<String, String>> getParams(ServerWebExchange exchange) {
+        return exchange.getFormData().map(form -> {
+            MultiValueMap<String, String> params = new LinkedMultiValueMap<>(exchange.getRequest().getQueryParams());
+            params.addAll(form);
+            return params;
+        });
+    }
+
+    // Invalid parameters are a bad request, as with the servlet API's conversions
+    private static <T extends Enum<T>> T toEnum(Class<T> type, MultiValueMap<String, String> params, String name) {
+        String value = params.getFirst(name);
+        try {
+            return value == null || value.isEmpty() ? null : Enum.valueOf(type, value);
+        }
+        catch (IllegalArgumentException e) {
+            throw new ServerWebInputException("Invalid parameter " + name);
+        }
+    }
+
+    private static Integer toInteger(MultiValueMap<String, String> params, String name) {
+        String value = params.getFirst(name);
+        try {
+            return value == null || value.isEmpty() ? null : Integer.valueOf(value);
+        }
+        catch (NumberFormatException e) {
+            throw new ServerWebInputException("Invalid parameter " + name);
+        }
+    }
+
+    private static int toRequiredInt(MultiValueMap<String, String> params, String name) {
+        Integer value = toInteger(params, name);
+        if (value == null) {
+            throw new ServerWebInputException("Missing parameter " + name);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,21 @@
+package tcgserver;
+
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * Runs every test of {@link APIControllerTest} against the {@code reactive} profile, so both modes keep the same REST
+ * contract. The servlet context of the other tests may still be cached on the defined port, so this one takes a random
+ * port and is closed afterwards.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = Main.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+        properties = {"spring.profiles.active=test,reactive", "spring.main.web-application-type=reactive"})
+@DirtiesContext
+public class ReactiveAPIControllerTest extends APIControllerTest {
+}
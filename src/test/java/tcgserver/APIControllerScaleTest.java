@@ -0,0 +1,191 @@
+package tcgserver;
+
+import static io.restassured.RestAssured.*;
+import io.restassured.RestAssured;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.restassured.response.ValidatableResponse;
+
+import com.mongodb.MongoCommandException;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = Main.class)
+@SpringBootTest(webEnvironment = WebEnvironment.DEFINED_PORT, properties = "spring.profiles.active=test")
+@Category(ScaleTests.class)
+public class APIControllerScaleTest {
+
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    // Only one of them exists, depending on the storage backend
+    @Autowired(required = false)
+    private MongoTemplate mongoTemplate;
+
+    @Autowired(required = false)
+    private MemoryStore memoryStore;
+
+    @LocalServerPort
+    private int port;
+
+    @Before
+    public void setUp() {
+        RestAssured.port = port;
+        RestAssured.baseURI = "http://localhost";
+        gameRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @After
+    public void tearDown() {
+        gameRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void getGames_100kStored_PagedByIdRange() {
+        // Arrange
+        int gameCount = 100_000;
+        List<Integer> deck = new ArrayList<>();
+        List<Document> actions = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            deck.add(i);
+            actions.add(new Document("player", i % 2).append("type", "SKIP").append("index", -1));
+        }
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < gameCount; i++) {
+            Document player = new Document("_id", "userId" + i).append("health", Player.START_HEALTH)
+                    .append("deck", deck).append("deckPosition", 5).append("hand", deck.subList(0, 5));
+            batch.add(new Document("state", Game.GameState.values()[i % 3].name()).append("turn", 15)
+                    .append("initialDeck", deck).append("players", Arrays.asList(player, player)).append("actions", actions));
+            if (batch.size() == 10_000) {
+                insertDocuments("games", batch);
+                batch = new ArrayList<>();
+            }
+        }
+
+        // Act
+        int listed = 0;
+        int pages = 0;
+        String previousId = "";
+        String firstPageEnd = null;
+        String next = "/api/games?limit=5000";
+        while (next != null) {
+            io.restassured.response.Response page = get(next);
+            List<String> ids = page.jsonPath().getList("id");
+            assertTrue(ids.size() <= 1000);
+            for (String id : ids) {
+                assertTrue(id.compareTo(previousId) > 0);
+                previousId = id;
+            }
+            listed += ids.size();
+            pages++;
+            if (firstPageEnd == null) {
+                firstPageEnd = previousId;
+            }
+            String link = page.getHeader("Link");
+            next = link == null ? null : link.substring(1, link.indexOf('>'));
+        }
+
+        // Assert
+        assertEquals(gameCount, listed);
+        assertEquals(gameCount / 1000 + 1, pages);
+        Query query = GameRepositoryCustomImpl.summariesQuery(null, firstPageEnd, 1000);
+        assertEquals(1000, query.getLimit());
+        assertEquals(new Document("_id", 1), query.getSortObject());
+        assertEquals(new Document("isDrawCardAtTurnStart", 1).append("state", 1).append("turn", 1).append("players._id", 1),
+                query.getFieldsObject());
+        Assume.assumeTrue("Only Mongo has query plans to check", mongoTemplate != null);
+        Document explain;
+        try {
+            explain = mongoTemplate.getDb().runCommand(new Document("explain", new Document("find", "games")
+                    .append("filter", query.getQueryObject())
+                    .append("sort", query.getSortObject()).append("limit", 1000).append("projection", query.getFieldsObject()))
+                    .append("verbosity", "executionStats"));
+        }
+        catch (MongoCommandException e) {
+            Assume.assumeNoException("The server cannot explain queries", e);
+            return;
+        }
+        String plan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson();
+        assertTrue(plan.contains("IXSCAN"), plan);
+        assertFalse(plan.contains("COLLSCAN"), plan);
+        assertFalse(plan.contains("\"SORT\""), plan);
+        assertTrue(((Number) explain.get("executionStats", Document.class).get("totalDocsExamined")).intValue() <= 1000);
+    }
+
+    @Test
+    public void getAuthToken_MillionUsers_LookupIndexBacked() {
+        // Arrange
+        int userCount = 1_000_000;
+        String password = User.passwordToHash("123");
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < userCount; i++) {
+            batch.add(new Document("name", "user" + i).append("password", password).append("authToken", "")
+                    .append("expiresIn", 0L));
+            if (batch.size() == 10_000) {
+                insertDocuments("users", batch);
+                batch = new ArrayList<>();
+            }
+        }
+
+        // Act
+        ValidatableResponse response = given().urlEncodingEnabled(true)
+                .param("name", "user" + (userCount - 1))
+                .param("password", "123")
+                .post("/api/users/auth").then();
+
+        // Assert
+        response.assertThat()
+                .statusCode(HttpStatus.OK.value())
+                .body("name", equalTo("user" + (userCount - 1)));
+        Assume.assumeTrue("Only Mongo has query plans to check", mongoTemplate != null);
+        assertTrue(mongoTemplate.indexOps(User.class).getIndexInfo().stream()
+                .anyMatch(index -> index.isUnique() && index.isIndexForFields(Collections.singletonList("name"))));
+        Document explain;
+        try {
+            explain = mongoTemplate.getDb().runCommand(new Document("explain", new Document("find", "users")
+                    .append("filter", new Document("name", "user" + (userCount - 1)))));
+        }
+        catch (MongoCommandException e) {
+            Assume.assumeNoException("The server cannot explain queries", e);
+            return;
+        }
+        String plan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson();
+        assertTrue(plan.contains("IXSCAN"), plan);
+        assertFalse(plan.contains("COLLSCAN"), plan);
+    }
+
+    private void insertDocuments(String collection, List<Document> documents) {
+        if (mongoTemplate != null) {
+            mongoTemplate.getCollection(collection).insertMany(documents);
+        }
+        else {
+            memoryStore.insertDocuments(collection, documents);
+        }
+    }
+}
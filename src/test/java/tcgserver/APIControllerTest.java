@@ -9,11 +9,14 @@ import static org.junit.jupiter.api.Assertions.*;
 import io.restassured.http.ContentType;
 import io.restassured.response.ValidatableResponse;
 import org.apache.commons.codec.binary.Base64;
+import org.bson.Document;
 import org.junit.After;
 import org.junit.Assume;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -22,9 +25,21 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = Main.class)
@@ -40,9 +55,19 @@ public class APIControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    // Only one of them exists, depending on the storage backend
+    @Autowired(required = false)
+    private MongoTemplate mongoTemplate;
+
+    @Autowired(required = false)
+    private MemoryStore memoryStore;
+
+    @LocalServerPort
+    private int port;
+
     @Before
     public void setUp () {
-        RestAssured.port = 8080;
+        RestAssured.port = port;
         RestAssured.baseURI = "http://localhost";
         gameRepository.deleteAll();
         cardRepository.deleteAll();
@@ -129,6 +154,44 @@ public class APIControllerTest {
                 .body("[1].id", equalTo(game2.getId()));
     }
 
+    @Test
+    public void getGames_StateFilteredAndPaged() {
+        // Arrange
+        List<String> lobbies = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Game game = new Game();
+            game.addPlayer(new Player("userId" + i, game.getInitialDeck(), Collections.emptyList()));
+            if (i % 2 == 1) {
+                game.addPlayer(new Player("other" + i, game.getInitialDeck(), Collections.emptyList()));
+                game.start();
+            }
+            else {
+                lobbies.add(gameRepository.save(game).getId());
+                continue;
+            }
+            gameRepository.save(game);
+        }
+
+        // Act
+        io.restassured.response.Response first = given().param("state", "INITIAL").param("limit", 2).get("/api/games");
+        String next = first.getHeader("Link");
+        io.restassured.response.Response second = get(next.substring(1, next.indexOf('>')));
+
+        // Assert
+        first.then().assertThat()
+                .body("size()", equalTo(2))
+                .body("[0].id", equalTo(lobbies.get(0)))
+                .body("[1].id", equalTo(lobbies.get(1)))
+                .body("[0].playerIds", equalTo(Collections.singletonList("userId0")))
+                .body("[0].actions", nullValue());
+        assertTrue(next.endsWith("; rel=\"next\""));
+        second.then().assertThat()
+                .body("size()", equalTo(1))
+                .body("[0].id", equalTo(lobbies.get(2)))
+                .body("[0].state", equalTo("INITIAL"));
+        assertNull(second.getHeader("Link"));
+    }
+
     @Test
     public void createGame() {
         // Arrange
@@ -151,6 +214,60 @@ public class APIControllerTest {
                 .header("Location", startsWith("/api/games/"));
     }
 
+    @Test
+    public void createGame_DeckStoredAsCatalogIndices() {
+        // Arrange
+        User user = createUserForTest();
+        ArrayList<Card> cards = new ArrayList<>();
+        for (int i = 0; i < Game.START_CARD_COUNT; i++) {
+            Card card = new Card(i);
+            cardRepository.save(card);
+            cards.add(card);
+        }
+        String token = new String(Base64.encodeBase64((user.getId() + ":" + user.getAuthToken()).getBytes()));
+
+        // Act
+        given().urlEncodingEnabled(true).redirects().follow(false)
+                .header("Accept", ContentType.JSON.getAcceptHeader())
+                .header("Authorization", "Bearer " + token)
+                .post("/api/games").then();
+
+        // Assert
+        Document stored = findFirstDocument("games");
+        assertNotNull(stored.getString("catalogVersion"));
+        assertEquals(Arrays.asList(0, 1, 2), stored.get("initialDeck"));
+        Game game = gameRepository.findById(stored.getObjectId("_id").toHexString()).get();
+        for (int i = 0; i < cards.size(); i++) {
+            assertEquals(cards.get(i).getId(), game.getInitialDeck().get(i).getId());
+            assertEquals(cards.get(i).getId(), game.getPlayers().get(0).getDeck().get(i).getId());
+        }
+    }
+
+    @Test
+    public void getGame_StoredWithEmbeddedCards_CardsResolved() {
+        // Arrange
+        Document card1 = new Document("mana", 1);
+        Document card2 = new Document("mana", 2);
+        Document player = new Document("_id", "userId1")
+                .append("health", Player.START_HEALTH)
+                .append("deck", Arrays.asList(card1))
+                .append("hand", Arrays.asList(card2));
+        Document legacy = new Document("state", Game.GameState.INITIAL.name())
+                .append("initialDeck", Arrays.asList(card1, card2, card1))
+                .append("players", Arrays.asList(player))
+                .append("actions", Collections.emptyList());
+        insertDocuments("games", Collections.singletonList(legacy));
+
+        // Act
+        Game game = gameRepository.findById(legacy.getObjectId("_id").toHexString()).get();
+
+        // Assert
+        assertEquals(3, game.getInitialDeck().size());
+        assertSame(game.getInitialDeck().get(0), game.getInitialDeck().get(2));
+        assertEquals(1, game.getPlayers().get(0).getDeck().get(0).getMana());
+        assertEquals(2, game.getPlayers().get(0).getHand().get(0).getMana());
+    }
+
     @Test
     public void createGame_UserNotFound() {
         // Arrange
@@ -190,6 +307,64 @@ public class APIControllerTest {
                 .body("players[1].userId", equalTo("userId2"));
     }
 
+    @Test
+    public void getGame_IfNoneMatchCurrent_NotModified() {
+        // Arrange
+        Game game = new Game();
+        game.addPlayer(new Player("userId1", game.getInitialDeck(), Collections.emptyList()));
+        gameRepository.save(game);
+        String eTag = get("/api/games/" + game.getId()).getHeader("ETag");
+
+        // Act
+        ValidatableResponse response = given().header("If-None-Match", eTag).get("/api/games/" + game.getId()).then();
+
+        // Assert
+        assertEquals("\"" + game.getRevision() + "\"", eTag);
+        response.assertThat()
+                .statusCode(HttpStatus.NOT_MODIFIED.value())
+                .header("ETag", eTag)
+                .body(isEmptyString());
+    }
+
+    @Test
+    public void getGame_PlayerAdded_ETagChanged() {
+        // Arrange
+        User user = createUserForTest();
+        Game game = new Game();
+        game.addPlayer(new Player("userId1", game.getInitialDeck(), Collections.emptyList()));
+        gameRepository.save(game);
+        String eTag = get("/api/games/" + game.getId()).getHeader("ETag");
+        String token = new String(Base64.encodeBase64((user.getId() + ":" + user.getAuthToken()).getBytes()));
+        given().redirects().follow(false).header("Authorization", "Bearer " + token)
+                .post("/api/games/" + game.getId() + "/players").then();
+
+        // Act
+        ValidatableResponse response = given().header("If-None-Match", eTag).get("/api/games/" + game.getId()).then();
+
+        // Assert
+        response.assertThat()
+                .statusCode(HttpStatus.OK.value())
+                .header("ETag", not(eTag))
+                .body("players.size()", equalTo(2));
+    }
+
+    @Test
+    public void getGamePlayersAndActions_IfNoneMatchCurrent_NotModified() {
+        // Arrange
+        Game game = new Game();
+        game.addPlayer(new Player("userId1", game.getInitialDeck(), Collections.emptyList()));
+        gameRepository.save(game);
+        String eTag = get("/api/games/" + game.getId() + "/players").getHeader("ETag");
+
+        // Act
+        ValidatableResponse players = given().header("If-None-Match", eTag).get("/api/games/" + game.getId() + "/players").then();
+        ValidatableResponse actions = given().header("If-None-Match", eTag).get("/api/games/" + game.getId() + "/actions").then();
+
+        // Assert
+        players.assertThat().statusCode(HttpStatus.NOT_MODIFIED.value());
+        actions.assertThat().statusCode(HttpStatus.NOT_MODIFIED.value());
+    }
+
     @Test
     public void getGame_NotFound() {
         // Arrange
@@ -205,6 +380,93 @@ public class APIControllerTest {
                 .body("message", notNullValue());
     }
 
+    @Test
+    public void getGameAt_NoSnapshot_ReplayedFromStart() {
+        // Arrange
+        Game game = new Game(null, false);
+        for (int i = 0; i < Game.MIN_PLAYERS; i++) {
+            game.addPlayer(createUserForTest());
+        }
+        Assume.assumeTrue(game.start());
+        int startActionCount = game.getActions().size();
+        assertTrue(game.addAction(new Game.Action(game.getActivePlayer())));
+        List<Integer> manaSlots = new ArrayList<>();
+        for (Player p : game.getPlayers()) {
+            manaSlots.add(p.getManaSlot());
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue(game.addAction(new Game.Action(game.getActivePlayer())));
+        }
+        gameRepository.save(game);
+
+        // Act
+        ValidatableResponse response = get("/api/games/" + game.getId() + "/states/" + (startActionCount + 1)).then();
+
+        // Assert
+        response.assertThat()
+                .statusCode(HttpStatus.OK.value())
+                .body("id", equalTo(game.getId()))
+                .body("turn", equalTo(1))
+                .body("actions.size()", equalTo(startActionCount + 1))
+                .body("players.manaSlot", equalTo(manaSlots));
+        get("/api/games/" + game.getId() + "/states/" + game.getActions().size()).then().assertThat()
+                .statusCode(HttpStatus.OK.value())
+                .body("turn", equalTo(game.getTurn()));
+        get("/api/games/" + game.getId() + "/states/" + (game.getActions().size() + 1)).then().assertThat()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void getGameEvents_ActionAdded_UpdatePushed() throws Exception {
+        // Arrange
+        ArrayList<User> users = new ArrayList<>();
+        Game game = new Game(null, false);
+        for (int i = 0; i < Game.MIN_PLAYERS; i++) {
+            User user = createUserForTest();
+            game.addPlayer(user);
+            users.add(user);
+        }
+        Assume.assumeTrue(game.start());
+        gameRepository.save(game);
+        int activePlayer = game.getActivePlayer();
+        String token = new String(Base64.encodeBase64((users.get(activePlayer).getId() + ":" + users.get(activePlayer).getAuthToken()).getBytes()));
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/api/games/" + game.getId() + "/events").openConnection();
+        connection.setRequestProperty("Accept", "text/event-stream");
+        connection.setReadTimeout(5000);
+        BufferedReader events = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        String initial = readEvent(events);
+
+        // Act
+        given().urlEncodingEnabled(true).redirects().follow(false)
+                .param("type", Game.ActionType.SKIP)
+                .param("player", activePlayer)
+                .param("index", 0)
+                .header("Authorization", "Bearer " + token)
+                .post("/api/games/" + game.getId() + "/actions").then();
+        String update = readEvent(events);
+        connection.disconnect();
+
+        // Assert
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(initial.startsWith("event:game\n"));
+        assertTrue(update.startsWith("event:update\n"));
+        assertTrue(update.contains("\"actionCount\":" + (game.getActions().size() + 1)));
+        assertTrue(update.contains("\"turn\":" + (game.getTurn() + 1)));
+    }
+
+    @Test
+    public void getGameEvents_NotFound() {
+        // Arrange
+        gameRepository.deleteAll();
+
+        // Act
+        ValidatableResponse response = given().header("Accept", "text/event-stream").get("/api/games/a/events").then();
+
+        // Assert
+        response.assertThat()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
     @Test
     public void startGame() {
         // Arrange
@@ -591,6 +853,54 @@ public class APIControllerTest {
                 .body("[0].type", equalTo("DRAW_CARD"));
     }
 
+    @Test
+    public void getActions_Since_LaterActionsReturnedStoredAndCached() {
+        // Arrange
+        Game game = new Game();
+        for (int i = 0; i < Game.MIN_PLAYERS; i++) {
+            game.addPlayer(new Player("userId" + i, game.getInitialDeck(), Collections.emptyList()));
+        }
+        Assume.assumeTrue(game.start());
+        for (int i = 0; i < 3; i++) {
+            Assume.assumeTrue(game.addAction(new Game.Action(game.getActivePlayer())));
+        }
+        gameRepository.save(game);
+
+        // Act
+        ValidatableResponse stored = get("/api/games/" + game.getId() + "/actions?since=2&limit=3").then();
+        get("/api/games/" + game.getId());
+        ValidatableResponse cached = get("/api/games/" + game.getId() + "/actions?since=2&limit=3").then();
+        ValidatableResponse caughtUp = get("/api/games/" + game.getId() + "/actions?since=" + game.getActions().size()).then();
+
+        // Assert
+        for (ValidatableResponse response : Arrays.asList(stored, cached)) {
+            response.assertThat()
+                    .statusCode(HttpStatus.OK.value())
+                    .body("size()", equalTo(3))
+                    .body("[0].type", equalTo(game.getActions().get(2).getType().name()))
+                    .body("[1].type", equalTo(game.getActions().get(3).getType().name()))
+                    .body("[2].player", equalTo(game.getActions().get(4).getPlayer()));
+        }
+        caughtUp.assertThat()
+                .statusCode(HttpStatus.OK.value())
+                .body("size()", equalTo(0));
+    }
+
+    @Test
+    public void getActions_SinceNegative_BadRequest() {
+        // Arrange
+        Game game = new Game();
+        gameRepository.save(game);
+
+        // Act
+        ValidatableResponse response = get("/api/games/" + game.getId() + "/actions?since=-1").then();
+
+        // Assert
+        response.assertThat()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .body("message", notNullValue());
+    }
+
     @Test
     public void getActions_GameNotFound() {
         // Arrange
@@ -637,6 +947,85 @@ public class APIControllerTest {
                 .header("Location", equalTo("/api/games/" + game.getId() + "/actions/" + currentActionCount));
     }
 
+    @Test
+    public void getPrometheus_RequestRepositoryAndEngineMetrics() {
+        // Arrange
+        userRepository.deleteAll();
+        ArrayList<User> users = new ArrayList<>();
+        Game game = new Game(null, false);
+        for (int i = 0; i < Game.MIN_PLAYERS; i++) {
+            User user = createUserForTest();
+            game.addPlayer(user);
+            users.add(user);
+        }
+        Assume.assumeTrue(game.start());
+        gameRepository.save(game);
+        int activePlayer = game.getActivePlayer();
+        String token = new String(Base64.encodeBase64((users.get(activePlayer).getId() + ":" + users.get(activePlayer).getAuthToken()).getBytes()));
+        given().urlEncodingEnabled(true).redirects().follow(false)
+                .param("type", Game.ActionType.SKIP)
+                .param("player", activePlayer)
+                .param("index", 0)
+                .header("Authorization", "Bearer " + token)
+                .post("/api/games/" + game.getId() + "/actions").then();
+        given().urlEncodingEnabled(true).redirects().follow(false)
+                .param("type", Game.ActionType.SKIP)
+                .param("player", 1 - activePlayer)
+                .param("index", 0)
+                .header("Authorization", "Bearer " + token)
+                .post("/api/games/" + game.getId() + "/actions").then();
+
+        // Act
+        ValidatableResponse response = get("/actuator/prometheus").then();
+
+        // Assert
+        response.assertThat()
+                .statusCode(HttpStatus.OK.value())
+                .body(containsString("http_server_requests_seconds_bucket{"))
+                .body(containsString("uri=\"/api/games/{id}/actions\""))
+                .body(containsString("quantile=\"0.999\""))
+                .body(containsString("repository=\"GameRepository\""))
+                .body(containsString("repository=\"UserRepository\""))
+                .body(containsString("tcg_games_actions_seconds_count{result=\"accepted\",type=\"SKIP\""))
+                .body(containsString("tcg_api_rejections_total{reason=\"Invalid player index\",status=\"400\""))
+                .body(containsString("tcg_games{state=\"ACTIVE\""));
+    }
+
+    @Test
+    public void addAction_Persisted() {
+        // Arrange
+        userRepository.deleteAll();
+        ArrayList<User> users = new ArrayList<>();
+        Game game = new Game(null, false);
+        for (int i = 0; i < Game.MIN_PLAYERS; i++) {
+            User user = createUserForTest();
+            game.addPlayer(user);
+            users.add(user);
+        }
+        Assume.assumeTrue(game.start());
+        gameRepository.save(game);
+        int activePlayer = game.getActivePlayer();
+        String token = new String(Base64.encodeBase64((users.get(activePlayer).getId() + ":" + users.get(activePlayer).getAuthToken()).getBytes()));
+        int currentActionCount = game.getActions().size();
+
+        // Act
+        given().urlEncodingEnabled(true).redirects().follow(false)
+                .param("type", Game.ActionType.SKIP)
+                .param("player", activePlayer)
+                .param("index", 0)
+                .header("Accept", ContentType.JSON.getAcceptHeader())
+                .header("Authorization", "Bearer " + token)
+                .post("/api/games/" + game.getId() + "/actions").then();
+
+        // Assert
+        Game stored = gameRepository.findCurrentById(game.getId()).get();
+        assertEquals(currentActionCount + 1, stored.getActions().size());
+        assertEquals(Game.ActionType.SKIP, stored.getActions().get(currentActionCount).getType());
+        assertEquals(game.getTurn() + 1, stored.getTurn());
+        assertEquals(game.getVersion() + 1, stored.getVersion().longValue());
+        assertEquals(Math.min(Player.MAX_MANA_SLOT, game.getPlayers().get(1 - activePlayer).getManaSlot() + 1), stored.getPlayers().get(1 - activePlayer).getManaSlot());
+    }
+
     @Test
     public void addAction_GameNotFound() {
         // Arrange
@@ -809,6 +1198,50 @@ public class APIControllerTest {
                 .body("message", notNullValue());
     }
 
+    @Test
+    public void matchmaking_TwoUsers_BothSentToSameStartedGame() throws Exception {
+        // Arrange
+        for (int i = 0; i < 2 * Game.START_CARD_COUNT; i++) {
+            cardRepository.save(new Card(1));
+        }
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < Game.MIN_PLAYERS; i++) {
+            User user = createUserForTest();
+            tokens.add(new String(Base64.encodeBase64((user.getId() + ":" + user.getAuthToken()).getBytes())));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(tokens.size());
+
+        // Act
+        List<Future<io.restassured.response.Response>> responses = new ArrayList<>();
+        for (String token : tokens) {
+            responses.add(executor.submit(() -> given().redirects().follow(false)
+                    .header("Authorization", "Bearer " + token)
+                    .post("/api/matchmaking")));
+        }
+        String location1 = responses.get(0).get(10, TimeUnit.SECONDS).then().statusCode(HttpStatus.FOUND.value()).extract().header("Location");
+        String location2 = responses.get(1).get(10, TimeUnit.SECONDS).then().statusCode(HttpStatus.FOUND.value()).extract().header("Location");
+        executor.shutdown();
+
+        // Assert
+        String players = location1.substring(0, location1.lastIndexOf('/'));
+        assertEquals(players, location2.substring(0, location2.lastIndexOf('/')));
+        assertNotEquals(location1, location2);
+        get(players.substring(0, players.lastIndexOf('/'))).then().assertThat()
+                .body("state", equalTo("ACTIVE"))
+                .body("players.size()", equalTo(2));
+    }
+
+    @Test
+    public void matchmaking_Unauthorized() {
+        // Act
+        ValidatableResponse response = post("/api/matchmaking").then();
+
+        // Assert
+        response.assertThat()
+                .statusCode(HttpStatus.UNAUTHORIZED.value())
+                .body("message", notNullValue());
+    }
+
     @Test
     public void getUser() {
         // Arrange
@@ -859,6 +1292,24 @@ public class APIControllerTest {
         assertEquals(1, userRepository.findByName("username").size());
     }
 
+    @Test
+    public void createUser_NameTaken_BadRequest() {
+        // Arrange
+        createUserForTest("username", "123");
+
+        // Act
+        ValidatableResponse response = given().urlEncodingEnabled(true)
+                .param("name", "username")
+                .param("password", "456")
+                .post("/api/users").then();
+
+        // Assert
+        response.assertThat()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .body("message", notNullValue());
+        assertEquals(1, userRepository.findByName("username").size());
+    }
+
     @Test
     public void getAuthToken() {
         // Arrange
@@ -880,8 +1331,100 @@ public class APIControllerTest {
                 .body("expiresIn", greaterThanOrEqualTo(System.currentTimeMillis()));
     }
 
+    @Test
+    public void getAuthToken_LegacyHash_Rehashed() {
+        // Arrange
+        User user = createUserForTest("username", "123");
+
+        // Act
+        ValidatableResponse response = given().urlEncodingEnabled(true)
+                .param("name", "username")
+                .param("password", "123")
+                .post("/api/users/auth").then();
+
+        // Assert
+        response.assertThat()
+                .statusCode(HttpStatus.OK.value())
+                .body("id", equalTo(user.getId()));
+        String password = userRepository.findById(user.getId()).get().getPassword();
+        assertTrue(password.startsWith("pbkdf2$"));
+        given().urlEncodingEnabled(true)
+                .param("name", "username")
+                .param("password", "123")
+                .post("/api/users/auth").then()
+                .statusCode(HttpStatus.OK.value());
+        given().urlEncodingEnabled(true)
+                .param("name", "username")
+                .param("password", "456")
+                .post("/api/users/auth").then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+        assertEquals(password, userRepository.findById(user.getId()).get().getPassword());
+    }
+
+    @Test
+    public void getAuthToken_PreviousTokenRejected() throws Exception {
+        // Arrange
+        userRepository.deleteAll();
+        User user = createUserForTest("username", "123");
+        String previous = "Bearer " + new String(Base64.encodeBase64((user.getId() + ":" + user.getAuthToken()).getBytes()));
+        given().header("Authorization", previous).delete("/api/matchmaking").then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+        Thread.sleep(2); // The token is derived from the time
+
+        // Act
+        String authToken = given().urlEncodingEnabled(true)
+                .param("name", "username")
+                .param("password", "123")
+                .post("/api/users/auth").then()
+                .extract().path("authToken");
+
+        // Assert
+        String current = "Bearer " + new String(Base64.encodeBase64((user.getId() + ":" + authToken).getBytes()));
+        given().header("Authorization", previous).delete("/api/matchmaking").then()
+                .statusCode(HttpStatus.UNAUTHORIZED.value());
+        given().header("Authorization", current).delete("/api/matchmaking").then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void revokeAuth_TokenRejected() {
+        // Arrange
+        User user = createUserForTest();
+        String token = "Bearer " + new String(Base64.encodeBase64((user.getId() + ":" + user.getAuthToken()).getBytes()));
+
+        // Act
+        ValidatableResponse response = given().header("Authorization", token).delete("/api/users/auth").then();
+
+        // Assert
+        response.assertThat().statusCode(HttpStatus.NO_CONTENT.value());
+        given().header("Authorization", token).delete("/api/users/auth").then()
+                .statusCode(HttpStatus.UNAUTHORIZED.value());
+    }
+
+    private void insertDocuments(String collection, List<Document> documents) {
+        if (mongoTemplate != null) {
+            mongoTemplate.getCollection(collection).insertMany(documents);
+        }
+        else {
+            memoryStore.insertDocuments(collection, documents);
+        }
+    }
+
+    private Document findFirstDocument(String collection) {
+        return mongoTemplate != null ? mongoTemplate.getCollection(collection).find().first() : memoryStore.findFirstDocument(collection).orElse(null);
+    }
+
+    private static String readEvent(BufferedReader events) throws IOException {
+        StringBuilder event = new StringBuilder();
+        for (String line = events.readLine(); line != null && !line.isEmpty(); line = events.readLine()) {
+            event.append(line).append('\n');
+        }
+
+        return event.toString();
+    }
+
     private User createUserForTest() {
-        return createUserForTest("", "");
+        return createUserForTest("user" + UUID.randomUUID(), "");
     }
 
     private User createUserForTest(String name, String password) {
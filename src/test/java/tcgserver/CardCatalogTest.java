@@ -0,0 +1,72 @@
+package tcgserver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CardCatalogTest {
+
+    @Before
+    public void setUp() throws Exception {
+    }
+
+    @After
+    public void tearDown() throws Exception {
+    }
+
+    @Test
+    public void of_DuplicateCards_CardsStoredOnce() {
+        // Arrange
+        Card card1 = new Card(1);
+        Card card2 = new Card(2);
+
+        // Act
+        CardCatalog catalog = CardCatalog.of(Arrays.asList(card1, card2, card1));
+
+        // Assert
+        assertEquals(2, catalog.size());
+        assertSame(card1, catalog.get(0));
+        assertSame(card2, catalog.get(1));
+    }
+
+    @Test
+    public void of_SameCardContent_SameVersion() {
+        // Arrange
+        List<Card> cards1 = Arrays.asList(new Card(1), new Card(2));
+        List<Card> cards2 = Arrays.asList(new Card(1), new Card(2));
+        List<Card> cards3 = Arrays.asList(new Card(2), new Card(1));
+
+        // Act
+        CardCatalog catalog1 = CardCatalog.of(cards1);
+        CardCatalog catalog2 = CardCatalog.of(cards2);
+        CardCatalog catalog3 = CardCatalog.of(cards3);
+
+        // Assert
+        assertEquals(catalog1.getVersion(), catalog2.getVersion());
+        assertNotEquals(catalog1.getVersion(), catalog3.getVersion());
+        assertSame(CardCatalog.EMPTY, CardCatalog.of(Collections.emptyList()));
+    }
+
+    @Test
+    public void indicesOf_CatalogCards_SameCardsResolved() {
+        // Arrange
+        Card card1 = new Card(1);
+        Card card2 = new Card(2);
+        CardCatalog catalog = CardCatalog.of(Arrays.asList(card1, card2));
+        List<Card> deck = Arrays.asList(card2, card1, card2);
+
+        // Act
+        int[] indices = catalog.indicesOf(deck);
+
+        // Assert
+        assertArrayEquals(new int[] {1, 0, 1}, indices);
+        assertEquals(deck, catalog.cardsAt(indices));
+        assertEquals(-1, catalog.indexOf(new Card(1)));
+    }
+}
@@ -0,0 +1,137 @@
+package tcgserver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class FlightEventsTest {
+    private Path file;
+    private Game game;
+    private UserAuthenticator userAuthenticator;
+    private CardRepository cardRepository;
+    private String header;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("tcg", ".jfr");
+        game = new Game(Arrays.asList(new Card(0), new Card(1), new Card(2), new Card(3), new Card(4)), false);
+        ReflectionTestUtils.setField(game, "id", "game1");
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) game.addPlayer(new Player("" + i, game.getInitialDeck(), Collections.emptyList()));
+
+        User user = new User("name", "");
+        ReflectionTestUtils.setField(user, "id", "user1");
+        user.refreshAuthToken();
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findById("user1")).thenReturn(Optional.of(user));
+        userAuthenticator = new UserAuthenticator();
+        ReflectionTestUtils.setField(userAuthenticator, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userAuthenticator, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(userAuthenticator, "cacheSize", 100);
+        userAuthenticator.init();
+        header = "Bearer " + new String(Base64.encodeBase64(("user1:" + user.getAuthToken()).getBytes()));
+
+        CardRepository repository = mock(CardRepository.class);
+        when(repository.findById("card1")).thenReturn(Optional.of(new Card(1)));
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", new SimpleMeterRegistry());
+        RepositoryMetrics repositoryMetrics = new RepositoryMetrics();
+        ReflectionTestUtils.setField(repositoryMetrics, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        cardRepository = (CardRepository) repositoryMetrics.postProcessAfterInitialization(repository, "cardRepository");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void recording_TcgSettings_EventsRecorded() throws Exception {
+        // Arrange
+        Configuration configuration;
+        try (Reader reader = new InputStreamReader(getClass().getResourceAsStream("/jfr/tcg.jfc"), StandardCharsets.UTF_8)) {
+            configuration = Configuration.create(reader);
+        }
+
+        // Act
+        List<RecordedEvent> events = record(configuration);
+
+        // Assert
+        RecordedEvent start = findEvent(events, "tcgserver.GameStart");
+        assertEquals("game1", start.getString("gameId"));
+        assertTrue(start.getBoolean("isStarted"));
+        RecordedEvent action = findEvent(events, "tcgserver.GameAction");
+        assertEquals("game1", action.getString("gameId"));
+        assertEquals("SKIP", action.getString("actionType"));
+        assertTrue(action.getBoolean("isAccepted"));
+        assertEquals(1, action.getInt("payloadSize"));
+        RecordedEvent serialization = findEvent(events, "tcgserver.GameSerialization");
+        assertEquals("game1", serialization.getString("gameId"));
+        assertEquals(6, serialization.getInt("payloadSize"));
+        RecordedEvent authorization = findEvent(events, "tcgserver.Authorization");
+        assertEquals("user1", authorization.getString("userId"));
+        assertEquals("database", authorization.getString("source"));
+        assertTrue(authorization.getBoolean("isAuthorized"));
+        RecordedEvent mongoCall = findEvent(events, "tcgserver.MongoCall");
+        assertEquals("CardRepository", mongoCall.getString("repository"));
+        assertEquals("findById", mongoCall.getString("method"));
+        assertEquals(1, mongoCall.getInt("payloadSize"));
+        assertEquals("none", mongoCall.getString("exception"));
+        assertFalse(mongoCall.getDuration().isNegative());
+    }
+
+    @Test
+    public void recording_DefaultSettings_NoEventsRecorded() throws Exception {
+        // Arrange
+        Configuration configuration = Configuration.getConfiguration("default");
+
+        // Act
+        List<RecordedEvent> events = record(configuration);
+
+        // Assert
+        assertEquals(0, events.stream().filter(e -> e.getEventType().getName().startsWith("tcgserver.")).count());
+    }
+
+    private List<RecordedEvent> record(Configuration configuration) throws Exception {
+        try (Recording recording = new Recording(configuration)) {
+            recording.start();
+            game.start();
+            game.addAction(new Game.Action(game.getActivePlayer()));
+            game.getSimple();
+            userAuthenticator.getAuthorizedUser(header);
+            cardRepository.findById("card1");
+            recording.stop();
+            recording.dump(file);
+        }
+
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static RecordedEvent findEvent(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> found = events.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList());
+        assertEquals(1, found.size(), name);
+        return found.get(0);
+    }
+}
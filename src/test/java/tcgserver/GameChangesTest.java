@@ -0,0 +1,117 @@
+package tcgserver;
+
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameChangesTest {
+
+    @Before
+    public void setUp() throws Exception {
+    }
+
+    @After
+    public void tearDown() throws Exception {
+    }
+
+    @Test
+    public void toUpdate_NoChanges_EmptyUpdate() {
+        // Arrange
+        Game game = createStartedGame();
+        GameChanges changes = GameChanges.since(game);
+
+        // Act
+        Document update = changes.toUpdate(game).getUpdateObject();
+
+        // Assert
+        assertTrue(update.isEmpty());
+    }
+
+    @Test
+    public void toUpdate_PlayCard_ActionPushedAndPlayerFieldsSet() {
+        // Arrange
+        Game game = createStartedGame();
+        GameChanges changes = GameChanges.since(game);
+        int activePlayer = game.getActivePlayer();
+
+        // Act
+        assertTrue(game.addAction(new Game.Action(activePlayer, Game.ActionType.PLAY_CARD, 0)));
+        Document update = changes.toUpdate(game).getUpdateObject();
+
+        // Assert
+        Document set = (Document) update.get("$set");
+        assertTrue(((Document) update.get("$push")).containsKey("actions"));
+        assertTrue(set.containsKey("players." + activePlayer + ".mana"));
+        assertTrue(set.containsKey("players." + activePlayer + ".hand"));
+        assertTrue(set.containsKey("players." + (1 - activePlayer) + ".health"));
+        assertFalse(set.containsKey("players." + activePlayer + ".deck"));
+        assertFalse(set.containsKey("players"));
+        assertFalse(set.containsKey("turn"));
+    }
+
+    @Test
+    public void toUpdate_Skip_TurnSetAndDrawPushed() {
+        // Arrange
+        Game game = createStartedGame();
+        GameChanges changes = GameChanges.since(game);
+
+        // Act
+        assertTrue(game.addAction(new Game.Action(game.getActivePlayer())));
+        Document update = changes.toUpdate(game).getUpdateObject();
+
+        // Assert
+        Document set = (Document) update.get("$set");
+        assertEquals(1, set.get("turn"));
+        assertEquals(game.getRevision(), set.get("revision"));
+        assertTrue(((Document) update.get("$push")).containsKey("actions"));
+        assertTrue(set.containsKey("players." + game.getActivePlayer() + ".deckPosition"));
+        assertFalse(set.containsKey("players." + game.getActivePlayer() + ".deck"));
+    }
+
+    @Test
+    public void toAppendUpdate_Skip_TurnSetWithoutPlayers() {
+        // Arrange
+        Game game = createStartedGame();
+        GameChanges changes = GameChanges.since(game);
+
+        // Act
+        assertTrue(game.addAction(new Game.Action(game.getActivePlayer())));
+        Document update = changes.toAppendUpdate(game).getUpdateObject();
+
+        // Assert
+        Document set = (Document) update.get("$set");
+        assertEquals(1, set.get("turn"));
+        assertTrue(((Document) update.get("$push")).containsKey("actions"));
+        assertFalse(set.containsKey("players." + game.getActivePlayer() + ".deckPosition"));
+    }
+
+    @Test
+    public void toUpdate_PlayerAdded_PlayersSet() {
+        // Arrange
+        Game game = new Game();
+        GameChanges changes = GameChanges.since(game);
+
+        // Act
+        game.addPlayer(new Player("userId", game.getInitialDeck(), Collections.emptyList()));
+        Document update = changes.toUpdate(game).getUpdateObject();
+
+        // Assert
+        assertTrue(((Document) update.get("$set")).containsKey("players"));
+    }
+
+    private Game createStartedGame() {
+        List<Card> deck = new ArrayList<>();
+        for (int i = 0; i < 10; i++) deck.add(new Card(1));
+        Game game = new Game(deck);
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) game.addPlayer(new Player("" + i, deck, Collections.emptyList()));
+        assertTrue(game.start());
+        return game;
+    }
+}
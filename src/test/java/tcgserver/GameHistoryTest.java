@@ -0,0 +1,107 @@
+package tcgserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = Main.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+        properties = {"spring.profiles.active=test", "tcg.games.event-sourced=true"})
+public class GameHistoryTest {
+
+    @Autowired
+    private GameStore gameStore;
+
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Autowired
+    private GameSnapshotRepository gameSnapshotRepository;
+
+    // Only one of them exists, depending on the storage backend
+    @Autowired(required = false)
+    private MongoTemplate mongoTemplate;
+
+    @Autowired(required = false)
+    private MemoryStore memoryStore;
+
+    @Before
+    public void setUp() {
+        gameRepository.deleteAll();
+        gameSnapshotRepository.deleteAll();
+    }
+
+    @After
+    public void tearDown() {
+        gameRepository.deleteAll();
+        gameSnapshotRepository.deleteAll();
+    }
+
+    @Test
+    public void update_GameEnded_StoredDocumentHasFinalPlayers() {
+        // Arrange
+        List<Card> deck = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            deck.add(new Card(1 + i % 5));
+        }
+        Game game = new Game(deck);
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) {
+            game.addPlayer(User.ofToken("user" + i, "", 0));
+        }
+        assertTrue(game.start());
+        gameStore.insert(game);
+
+        // Act
+        Game played = game;
+        for (int i = 0; i < 1000 && played.getState() == Game.GameState.ACTIVE; i++) {
+            played = gameStore.update(game.getId(), g -> {
+                int player = g.getActivePlayer();
+                if (!g.addAction(new Game.Action(player, Game.ActionType.PLAY_CARD, 0))) {
+                    g.addAction(new Game.Action(player));
+                }
+                return g;
+            }).get();
+        }
+        gameStore.flushAll();
+
+        // Assert
+        assertEquals(Game.GameState.END, played.getState());
+        Document stored = findFirstDocument("games");
+        assertEquals("END", stored.getString("state"));
+        assertEquals(played.getTurn(), stored.getInteger("turn").intValue());
+        assertEquals(played.getCardDrawnThisTurn(), stored.getInteger("cardDrawnThisTurn").intValue());
+        @SuppressWarnings("unchecked")
+        List<Document> players = (List<Document>) stored.get("players");
+        for (int i = 0; i < players.size(); i++) {
+            Player player = played.getPlayers().get(i);
+            Document storedPlayer = players.get(i);
+            assertEquals(player.getHealth(), storedPlayer.getInteger("health").intValue());
+            assertEquals(player.getManaSlot(), storedPlayer.getInteger("manaSlot").intValue());
+            assertEquals(player.getMana(), storedPlayer.getInteger("mana").intValue());
+            assertEquals(player.getDeckPosition(), storedPlayer.getInteger("deckPosition").intValue());
+            List<Integer> hand = new ArrayList<>();
+            for (int card : player.getHandIndices()) {
+                hand.add(card);
+            }
+            assertEquals(hand, storedPlayer.get("hand"));
+        }
+    }
+
+    private Document findFirstDocument(String collection) {
+        return mongoTemplate != null ? mongoTemplate.getCollection(collection).find().first() : memoryStore.findFirstDocument(collection).orElse(null);
+    }
+}
@@ -0,0 +1,83 @@
+package tcgserver;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the bytes sent to Mongo per action for a full document save and for the targeted update built by
+ * {@link GameChanges}. Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dstart-class=tcgserver.GamePersistenceBenchmark}.
+ */
+public class GamePersistenceBenchmark {
+    private static final int[] GAME_LENGTHS = {10, 100, 1000};
+    private static final int SAMPLED_ACTIONS = 30;
+
+    public static void main(String[] args) {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        UpdateMapper updateMapper = new UpdateMapper(converter);
+
+        System.out.printf("%-10s %15s %15s %10s%n", "actions", "full save (B)", "update (B)", "ratio");
+        for (int length : GAME_LENGTHS) {
+            Game game = createGame(length + SAMPLED_ACTIONS);
+            while (game.getActions().size() < length) {
+                playNextAction(game);
+            }
+
+            long fullBytes = 0;
+            long updateBytes = 0;
+            for (int i = 0; i < SAMPLED_ACTIONS; i++) {
+                GameChanges changes = GameChanges.since(game);
+                playNextAction(game);
+
+                Document full = new Document();
+                converter.write(game, full);
+                fullBytes += bsonSize(full);
+
+                Update update = changes.toUpdate(game);
+                update.inc("version", 1);
+                Document mapped = updateMapper.getMappedObject(update.getUpdateObject(), mappingContext.getPersistentEntity(Game.class));
+                updateBytes += bsonSize(mapped);
+            }
+
+            System.out.printf("%-10d %15d %15d %9.1fx%n", length, fullBytes / SAMPLED_ACTIONS, updateBytes / SAMPLED_ACTIONS, (double) fullBytes / updateBytes);
+        }
+    }
+
+    private static Game createGame(int length) {
+        List<Card> deck = new ArrayList<>();
+        for (int i = 0; i < length / 3 + Game.START_CARD_COUNT + 1; i++) {
+            deck.add(new Card(0));
+        }
+
+        Game game = new Game(deck);
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) {
+            game.addPlayer(new Player("player" + i, deck, Collections.emptyList()));
+        }
+        game.start();
+        return game;
+    }
+
+    private static void playNextAction(Game game) {
+        int player = game.getActivePlayer();
+        if (!game.addAction(new Game.Action(player, Game.ActionType.PLAY_CARD, 0))) {
+            game.addAction(new Game.Action(player));
+        }
+    }
+
+    private static int bsonSize(Document document) {
+        return new RawBsonDocument(document, new DocumentCodec()).getByteBuffer().remaining();
+    }
+}
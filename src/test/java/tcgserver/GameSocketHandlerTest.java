@@ -0,0 +1,205 @@
+package tcgserver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = Main.class)
+@SpringBootTest(webEnvironment = WebEnvironment.DEFINED_PORT, properties = "spring.profiles.active=test")
+public class GameSocketHandlerTest {
+
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<JsonNode> messages = new LinkedBlockingQueue<>();
+    private WebSocketSession session;
+
+    @Before
+    public void setUp() {
+        gameRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (session != null) {
+            session.close();
+        }
+
+        gameRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void connect_InvalidToken_Rejected() {
+        // Arrange
+        Game game = gameRepository.save(new Game(null, false));
+
+        // Act
+        ExecutionException e = assertThrows(ExecutionException.class, () -> connect(game.getId(), "invalid"));
+
+        // Assert
+        assertTrue(e.getCause().getMessage().contains("401"));
+    }
+
+    @Test
+    public void connect_TokenInQuery_Rejected() {
+        // Arrange
+        Game game = gameRepository.save(new Game(null, false));
+        User user = createUserForTest();
+
+        // Act
+        ExecutionException e = assertThrows(ExecutionException.class, () -> new StandardWebSocketClient()
+                .doHandshake(new TextWebSocketHandler(), "ws://localhost:8080/ws/games/" + game.getId() + "?token=" + token(user))
+                .get(5, TimeUnit.SECONDS));
+
+        // Assert
+        assertTrue(e.getCause().getMessage().contains("401"));
+    }
+
+    @Test
+    public void connect_GameNotFound_Rejected() {
+        // Arrange
+        User user = createUserForTest();
+
+        // Act
+        ExecutionException e = assertThrows(ExecutionException.class, () -> connect("a", token(user)));
+
+        // Assert
+        assertTrue(e.getCause().getMessage().contains("404"));
+    }
+
+    @Test
+    public void addAction_ActivePlayer_ResultAndUpdateReceived() throws Exception {
+        // Arrange
+        Game game = new Game(null, false);
+        User[] users = new User[Game.MIN_PLAYERS];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = createUserForTest();
+            game.addPlayer(users[i]);
+        }
+        Assume.assumeTrue(game.start());
+        gameRepository.save(game);
+        session = connect(game.getId(), token(users[game.getActivePlayer()]));
+        JsonNode initial = nextMessage();
+        assertEquals("tcg", session.getAcceptedProtocol());
+
+        // Act
+        session.sendMessage(new TextMessage("{\"id\": 7, \"type\": \"SKIP\", \"index\": 0}"));
+        JsonNode first = nextMessage();
+        JsonNode second = nextMessage();
+
+        // Assert
+        JsonNode result = first.get("event").asText().equals("result") ? first : second;
+        JsonNode update = first.get("event").asText().equals("update") ? first : second;
+        assertEquals("game", initial.get("event").asText());
+        assertEquals(game.getActions().size(), initial.get("data").get("actions").size());
+        assertEquals(7, result.get("data").get("id").asInt());
+        assertEquals(200, result.get("data").get("status").asInt());
+        assertEquals(game.getActions().size() + 1, result.get("data").get("actionCount").asInt());
+        assertEquals("update", update.get("event").asText());
+        assertEquals(game.getTurn() + 1, update.get("data").get("turn").asInt());
+        assertEquals("SKIP", update.get("data").get("actions").get(0).get("type").asText());
+    }
+
+    @Test
+    public void addAction_InactivePlayer_BadRequest() throws Exception {
+        // Arrange
+        Game game = new Game(null, false);
+        User[] users = new User[Game.MIN_PLAYERS];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = createUserForTest();
+            game.addPlayer(users[i]);
+        }
+        Assume.assumeTrue(game.start());
+        gameRepository.save(game);
+        session = connect(game.getId(), token(users[(game.getActivePlayer() + 1) % users.length]));
+        nextMessage();
+
+        // Act
+        session.sendMessage(new TextMessage("{\"id\": 1, \"type\": \"SKIP\", \"index\": 0}"));
+        JsonNode result = nextMessage();
+
+        // Assert
+        assertEquals("result", result.get("event").asText());
+        assertEquals(400, result.get("data").get("status").asInt());
+        assertEquals(game.getActions().size(), result.get("data").get("actionCount").asInt());
+        assertNull(messages.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void addAction_NotAPlayer_Forbidden() throws Exception {
+        // Arrange
+        Game game = new Game(null, false);
+        game.addPlayer(createUserForTest());
+        gameRepository.save(game);
+        session = connect(game.getId(), token(createUserForTest()));
+        nextMessage();
+
+        // Act
+        session.sendMessage(new TextMessage("{\"type\": \"SKIP\", \"index\": 0}"));
+        JsonNode result = nextMessage();
+
+        // Assert
+        assertEquals(403, result.get("data").get("status").asInt());
+    }
+
+    private WebSocketSession connect(String gameId, String token) throws Exception {
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setSecWebSocketProtocol(Arrays.asList("tcg", "tcg.token." + token));
+        return new StandardWebSocketClient().doHandshake(new TextWebSocketHandler() {
+            @Override
+            protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+                messages.add(objectMapper.readTree(message.getPayload()));
+            }
+        }, headers, URI.create("ws://localhost:8080/ws/games/" + gameId)).get(5, TimeUnit.SECONDS);
+    }
+
+    private JsonNode nextMessage() throws InterruptedException {
+        JsonNode message = messages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        return message;
+    }
+
+    private static String token(User user) {
+        return Base64.encodeBase64URLSafeString((user.getId() + ":" + user.getAuthToken()).getBytes());
+    }
+
+    private User createUserForTest() {
+        User user = new User("user" + UUID.randomUUID(), User.passwordToHash(""));
+        userRepository.save(user);
+        user.refreshAuthToken();
+        userRepository.save(user);
+        return user;
+    }
+}
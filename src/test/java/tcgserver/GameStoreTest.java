@@ -0,0 +1,341 @@
+package tcgserver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.*;
+
+public class GameStoreTest {
+    private GameRepository gameRepository;
+    private MeterRegistry meterRegistry;
+    private GameEvents gameEvents;
+    private GameStore gameStore;
+
+    @Before
+    public void setUp() throws Exception {
+        gameRepository = mock(GameRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        gameEvents = mock(GameEvents.class);
+        gameStore = new GameStore();
+        ReflectionTestUtils.setField(gameStore, "gameRepository", gameRepository);
+        ReflectionTestUtils.setField(gameStore, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(gameStore, "gameEvents", gameEvents);
+        ReflectionTestUtils.setField(gameStore, "maxRetries", 3);
+        ReflectionTestUtils.setField(gameStore, "cacheSize", 2);
+        ReflectionTestUtils.setField(gameStore, "flushDelay", 60000L);
+        gameStore.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        gameStore.close();
+    }
+
+    @Test
+    public void read_GameNotCached_LoadedOnce() {
+        // Arrange
+        Game game = new Game();
+        when(gameRepository.findCurrentById("a")).thenReturn(Optional.of(game));
+
+        // Act
+        Optional<Game.GameState> first = gameStore.read("a", Game::getState);
+        Optional<Game.GameState> second = gameStore.read("a", Game::getState);
+
+        // Assert
+        assertEquals(Game.GameState.INITIAL, first.get());
+        assertEquals(Game.GameState.INITIAL, second.get());
+        verify(gameRepository, times(1)).findCurrentById("a");
+    }
+
+    @Test
+    public void update_GameChanged_ChangePublished() {
+        // Arrange
+        Game game = new Game();
+        when(gameRepository.findCurrentById("a")).thenReturn(Optional.of(game));
+
+        // Act
+        gameStore.update("a", g -> g.addPlayer(new Player("userId", g.getInitialDeck(), Collections.emptyList())));
+        gameStore.update("a", g -> g.addPlayer(new Player("userId", g.getInitialDeck(), Collections.emptyList())));
+        gameStore.read("a", Game::getState);
+
+        // Assert
+        verify(gameEvents, times(1)).publish(same(game), eq(0));
+    }
+
+    @Test
+    public void readRevision_GameNotCached_GameNotLoaded() {
+        // Arrange
+        Game game = new Game();
+        game.addPlayer(new Player("userId", game.getInitialDeck(), Collections.emptyList()));
+        when(gameRepository.findRevisionById("a")).thenReturn(Optional.of(4L));
+        when(gameRepository.findCurrentById("b")).thenReturn(Optional.of(game));
+        gameStore.read("b", Game::getState);
+
+        // Act
+        Optional<Long> notCached = gameStore.readRevision("a");
+        Optional<Long> cached = gameStore.readRevision("b");
+
+        // Assert
+        assertEquals(4L, (long) notCached.get());
+        assertEquals(1L, (long) cached.get());
+        verify(gameRepository, never()).findCurrentById("a");
+        verify(gameRepository, never()).findRevisionById("b");
+    }
+
+    @Test
+    public void read_GameNotFound_EmptyReturned() {
+        // Arrange
+        when(gameRepository.findCurrentById("a")).thenReturn(Optional.empty());
+
+        // Act
+        Optional<Game.GameState> state = gameStore.read("a", Game::getState);
+
+        // Assert
+        assertEquals(false, state.isPresent());
+    }
+
+    @Test
+    public void update_LiveGame_SavedOnFlush() {
+        // Arrange
+        Game game = new Game();
+        when(gameRepository.findCurrentById("a")).thenReturn(Optional.of(game));
+
+        // Act
+        gameStore.update("a", g -> g.addPlayer(new Player("userId", g.getInitialDeck(), Collections.emptyList())));
+
+        // Assert
+        verify(gameRepository, never()).update(any(), any());
+        gameStore.flushAll();
+        verify(gameRepository, times(1)).update(same(game), any());
+    }
+
+    @Test
+    public void update_GameEnded_SavedImmediately() {
+        // Arrange
+        List<Card> deck = Arrays.asList(new Card(100), new Card(100), new Card(100), new Card(100), new Card(100));
+        Game game = new Game(deck);
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) game.addPlayer(new Player("" + i, deck, Collections.emptyList(), 1, 100, 100));
+        Assume.assumeTrue(game.start());
+        when(gameRepository.findCurrentById("a")).thenReturn(Optional.of(game));
+
+        // Act
+        gameStore.update("a", g -> g.addAction(new Game.Action(g.getActivePlayer(), Game.ActionType.PLAY_CARD, 0)));
+
+        // Assert
+        assertEquals(Game.GameState.END, game.getState());
+        verify(gameRepository, times(1)).update(same(game), any());
+    }
+
+    @Test
+    public void update_OperationFailed_NotSaved() {
+        // Arrange
+        when(gameRepository.findCurrentById("a")).thenReturn(Optional.of(new Game()));
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> {
+            gameStore.update("a", g -> {
+                throw new IllegalStateException();
+            });
+        });
+
+        // Assert
+        gameStore.flushAll();
+        verify(gameRepository, never()).update(any(), any());
+    }
+
+    @Test
+    public void update_VersionConflict_ReloadedAndReapplied() {
+        // Arrange
+        ReflectionTestUtils.setField(gameStore, "flushDelay", 0L);
+        Game cached = new Game();
+        Game stored = new Game();
+        stored.addPlayer(new Player("otherUserId", stored.getInitialDeck(), Collections.emptyList()));
+        when(gameRepository.findCurrentById("a")).thenReturn(Optional.of(cached)).thenReturn(Optional.of(stored));
+        doThrow(new OptimisticLockingFailureException("conflict")).when(gameRepository).update(same(cached), any());
+
+        // Act
+        Optional<Integer> index = gameStore.update("a", g -> g.addPlayer(new Player("userId", g.getInitialDeck(), Collections.emptyList())));
+
+        // Assert
+        assertEquals(1, index.get().intValue());
+        assertEquals(2, stored.getPlayers().size());
+        verify(gameRepository, times(1)).update(same(stored), any());
+        assertEquals(1.0, meterRegistry.counter("tcg.games.save.conflicts").count());
+        assertEquals(1.0, meterRegistry.counter("tcg.games.save.retries").count());
+    }
+
+    @Test
+    public void update_VersionConflictRetriesExhausted_ExceptionThrown() {
+        // Arrange
+        ReflectionTestUtils.setField(gameStore, "flushDelay", 0L);
+        when(gameRepository.findCurrentById("a")).thenAnswer(invocation -> Optional.of(new Game()));
+        doThrow(new OptimisticLockingFailureException("conflict")).when(gameRepository).update(any(), any());
+
+        // Act
+        // Assert
+        assertThrows(OptimisticLockingFailureException.class, () -> {
+            gameStore.update("a", g -> g.addPlayer(new Player("userId", g.getInitialDeck(), Collections.emptyList())));
+        });
+        assertEquals(4.0, meterRegistry.counter("tcg.games.save.conflicts").count());
+        assertEquals(1.0, meterRegistry.counter("tcg.games.save.failures").count());
+    }
+
+    @Test
+    public void flushAll_AcknowledgedUpdateConflictsUntilRetriesExhausted_SubscribersSentStoredGame() {
+        // Arrange
+        Game stored = new Game();
+        when(gameRepository.findCurrentById("a")).thenReturn(Optional.of(new Game())).thenReturn(Optional.of(new Game()))
+                .thenReturn(Optional.of(new Game())).thenReturn(Optional.of(new Game())).thenReturn(Optional.of(stored));
+        doThrow(new OptimisticLockingFailureException("conflict")).when(gameRepository).update(any(), any());
+        when(gameEvents.getSubscriberCount("a")).thenReturn(1);
+        gameStore.update("a", g -> g.addPlayer(new Player("userId", g.getInitialDeck(), Collections.emptyList())));
+
+        // Act
+        gameStore.flushAll();
+
+        // Assert
+        verify(gameEvents, timeout(5000)).reset(same(stored));
+        assertEquals(1.0, meterRegistry.counter("tcg.games.save.failures").count());
+        assertTrue(stored.getPlayers().isEmpty());
+    }
+
+    @Test
+    public void update_ReadSameGameFromOperation_RunsInline() {
+        // Arrange
+        when(gameRepository.findCurrentById("a")).thenReturn(Optional.of(new Game()));
+        gameStore.read("a", Game::getRevision);
+
+        // Act
+        Optional<Long> revision = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> gameStore.update("a", g -> gameStore.read("a", Game::getRevision).get()));
+
+        // Assert
+        assertEquals(0L, revision.get().longValue());
+    }
+
+    @Test
+    public void update_ReadOtherGameFromOperation_Throws() {
+        // Arrange
+        when(gameRepository.findCurrentById("a")).thenReturn(Optional.of(new Game()));
+        when(gameRepository.findCurrentById("b")).thenReturn(Optional.of(new Game()));
+        gameStore.read("b", Game::getRevision);
+
+        // Act
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> gameStore.update("a", g -> gameStore.read("b", Game::getRevision)));
+
+        // Assert
+        assertTrue(e.getMessage().contains("asynchronous"));
+    }
+
+    @Test
+    public void update_ConcurrentActions_AppliedInOrderPerGame() throws Exception {
+        // Arrange
+        int gameCount = 200;
+        int actionCount = 20000;
+        ReflectionTestUtils.setField(gameStore, "cacheSize", gameCount);
+        List<Card> deck = new ArrayList<>();
+        for (int i = 0; i < 20; i++) deck.add(new Card(i % 4));
+        Map<String, Game> games = new HashMap<>();
+        Map<String, AtomicInteger> accepted = new HashMap<>();
+        Map<String, AtomicInteger> acceptedSkips = new HashMap<>();
+        for (int i = 0; i < gameCount; i++) {
+            String id = "game" + i;
+            Game game = new Game(deck);
+            games.put(id, game);
+            accepted.put(id, new AtomicInteger());
+            acceptedSkips.put(id, new AtomicInteger());
+            when(gameRepository.findCurrentById(id)).thenReturn(Optional.of(game));
+        }
+
+        // Act
+        ExecutorService clients = Executors.newFixedThreadPool(32);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < actionCount; i++) {
+            String id = "game" + (i % gameCount);
+            int request = i;
+            results.add(clients.submit(() -> {
+                gameStore.update(id, game -> {
+                    if (game.getState() == Game.GameState.INITIAL) {
+                        if (game.getPlayers().size() < Game.MIN_PLAYERS) {
+                            return game.addPlayer(new Player("" + game.getPlayers().size(), game.getInitialDeck(), Collections.emptyList())) >= 0;
+                        }
+
+                        return game.start();
+                    }
+                    else if (game.getState() == Game.GameState.ACTIVE) {
+                        Game.ActionType type = Game.ActionType.values()[request % Game.ActionType.values().length];
+                        if (game.addAction(new Game.Action(game.getActivePlayer(), type, 0))) {
+                            accepted.get(id).incrementAndGet();
+                            if (type == Game.ActionType.SKIP) {
+                                acceptedSkips.get(id).incrementAndGet();
+                            }
+                            return true;
+                        }
+                    }
+
+                    return false;
+                });
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        clients.shutdown();
+
+        // Assert
+        for (Map.Entry<String, Game> entry : games.entrySet()) {
+            Game game = entry.getValue();
+            assertEquals(Game.MIN_PLAYERS, game.getPlayers().size());
+            assertNotEquals(Game.GameState.INITIAL, game.getState());
+            int autoDraws = game.isDrawCardAtTurnStart() ? 1 + acceptedSkips.get(entry.getKey()).get() : 0;
+            assertEquals(accepted.get(entry.getKey()).get() + autoDraws, game.getActions().size());
+
+            int turn = 0;
+            int drawsThisTurn = 0;
+            for (Game.Action action : game.getActions()) {
+                assertEquals(turn % game.getPlayers().size(), action.getPlayer());
+                if (action.getType() == Game.ActionType.DRAW_CARD) {
+                    drawsThisTurn++;
+                    assertTrue(drawsThisTurn <= Game.MAX_CARD_DRAW_PER_TURN);
+                }
+                else if (action.getType() == Game.ActionType.SKIP) {
+                    turn++;
+                    drawsThisTurn = 0;
+                }
+            }
+            assertEquals(turn, game.getTurn());
+
+            for (Player player : game.getPlayers()) {
+                assertTrue(player.getHealth() <= Player.START_HEALTH);
+                assertTrue(player.getManaSlot() <= Player.MAX_MANA_SLOT);
+                assertTrue(player.getMana() >= 0 && player.getMana() <= player.getManaSlot());
+                assertTrue(player.getHand().size() <= Player.MAX_HAND_SIZE);
+            }
+        }
+    }
+}
@@ -313,4 +313,57 @@ public class GameTest {
             game.addAction(new Game.Action(0));
         });
     }
+
+    @Test
+    public void start_SameSeed_SameHandsDrawn() {
+        // Arrange
+        ArrayList<Card> initialDeck = new ArrayList<>();
+        for (int i = 0; i < 2 * Game.START_CARD_COUNT; i++) initialDeck.add(new Card(i));
+        Game first = createGame(initialDeck, 42);
+        Game second = createGame(initialDeck, 42);
+
+        // Act
+        first.start();
+        second.start();
+
+        // Assert
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) {
+            assertEquals(first.getPlayers().get(i).getHand(), second.getPlayers().get(i).getHand());
+        }
+    }
+
+    @Test
+    public void replay_ActionLog_SameStateReached() {
+        // Arrange
+        ArrayList<Card> initialDeck = new ArrayList<>();
+        for (int i = 0; i < 4 * Game.START_CARD_COUNT; i++) initialDeck.add(new Card(0));
+        Game game = createGame(initialDeck, 7);
+        game.start();
+        for (int i = 0; i < 10; i++) {
+            int player = game.getActivePlayer();
+            game.addAction(new Game.Action(player, Game.ActionType.PLAY_CARD, 0));
+            game.addAction(new Game.Action(player));
+        }
+        Game replayed = createGame(initialDeck, 7);
+        replayed.start();
+
+        // Act
+        boolean isReplayed = replayed.replay(game.getActions(), game.getActions().size());
+
+        // Assert
+        assertTrue(isReplayed);
+        assertEquals(game.getActions().size(), replayed.getActions().size());
+        assertEquals(game.getTurn(), replayed.getTurn());
+        assertEquals(game.getRevision(), replayed.getRevision());
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) {
+            assertEquals(game.getPlayers().get(i).getHand(), replayed.getPlayers().get(i).getHand());
+            assertEquals(game.getPlayers().get(i).getDeck().size(), replayed.getPlayers().get(i).getDeck().size());
+        }
+    }
+
+    private static Game createGame(ArrayList<Card> initialDeck, long seed) {
+        Game game = new Game(initialDeck, true, seed);
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) game.addPlayer(new Player("" + i, initialDeck, Collections.emptyList()));
+        return game;
+    }
 }
\ No newline at end of file
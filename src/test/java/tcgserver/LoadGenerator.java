@@ -0,0 +1,419 @@
+package tcgserver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.codec.binary.Base64;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Finds the throughput ceiling of the REST API by playing complete matches the way its clients do. It registers
+ * {@code users} users and pairs them, and each pair plays one match after another: the first user creates the game,
+ * the second joins it, the first starts it, and then the active player reads the game and its hand and plays its most
+ * expensive affordable card, or skips. Throughput, p50/p99/p999 latency and errors are reported per endpoint for the
+ * requests sent after {@code warmup} seconds.
+ * <p>
+ * In the closed loop ({@code mode=closed}, the default) a pair waits for each response, and for an exponential think
+ * time of mean {@code think} milliseconds before each action, so the load slows down with the server. In the open loop
+ * ({@code mode=open}) requests are due at a fixed {@code rate} per second whatever the server does, each taken by the
+ * next idle match. Their latency counts from when they were due, so a saturated server shows as queueing in the
+ * latency instead of as a lower rate.
+ * <p>
+ * Without {@code url} it starts the server itself, passing on the arguments that start with {@code --}, on a
+ * {@code tcg-benchmark} database that is dropped afterwards. Run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dstart-class=tcgserver.LoadGenerator
+ * -Dexec.args="mode=open rate=500"}.
+ */
+public class LoadGenerator {
+    private static final String CREATE_USER = "POST /api/users";
+    private static final String CREATE_GAME = "POST /api/games";
+    private static final String JOIN_GAME = "POST /api/games/{id}/players";
+    private static final String START_GAME = "POST /api/games/{id}";
+    private static final String READ_GAME = "GET /api/games/{id}";
+    private static final String READ_PLAYER = "GET /api/games/{id}/players/{index}";
+    private static final String ADD_ACTION = "POST /api/games/{id}/actions";
+    private static final int REGISTRATION_CONCURRENCY = 16;
+    private static final long MAX_LATENCY_NANOS = Duration.ofMinutes(10).toNanos();
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private enum Step {
+        CREATE,
+        JOIN,
+        START,
+        READ_GAME,
+        READ_PLAYER,
+        ACT
+    }
+
+    private static class Response {
+        private final URI location;
+        private final String body;
+
+        private Response(URI location, String body) {
+            this.location = location;
+            this.body = body;
+        }
+    }
+
+    private static class EndpointStats {
+        private final Histogram nanos = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+        private final LongAdder errors = new LongAdder();
+    }
+
+    // Latency is recorded for the requests due from the start of the measurement
+    private static class Stats {
+        private final Map<String, EndpointStats> endpoints = new LinkedHashMap<>();
+        private volatile long measuredFrom = Long.MAX_VALUE;
+
+        private Stats(String... endpoints) {
+            for (String endpoint : endpoints) {
+                this.endpoints.put(endpoint, new EndpointStats());
+            }
+        }
+
+        private void record(String endpoint, long due, boolean isError) {
+            if (due >= measuredFrom) {
+                EndpointStats stats = endpoints.get(endpoint);
+                stats.nanos.recordValue(Math.min(System.nanoTime() - due, MAX_LATENCY_NANOS));
+                if (isError) {
+                    stats.errors.increment();
+                }
+            }
+        }
+
+        private void print(double seconds) {
+            System.out.printf("%-36s %9s %10s %9s %9s %9s %9s %7s%n", "endpoint", "requests", "requests/s", "p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)", "errors");
+            long requests = 0;
+            long errors = 0;
+            for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+                Histogram nanos = entry.getValue().nanos;
+                if (nanos.getTotalCount() == 0) {
+                    continue;
+                }
+
+                System.out.printf("%-36s %9d %10.0f %9.2f %9.2f %9.2f %9.2f %7d%n", entry.getKey(), nanos.getTotalCount(), nanos.getTotalCount() / seconds,
+                        nanos.getValueAtPercentile(50) / 1e6, nanos.getValueAtPercentile(99) / 1e6, nanos.getValueAtPercentile(99.9) / 1e6,
+                        nanos.getMaxValue() / 1e6, entry.getValue().errors.sum());
+                requests += nanos.getTotalCount();
+                errors += entry.getValue().errors.sum();
+            }
+
+            System.out.printf("%-36s %9d %10.0f %49d%n", "total", requests, requests / seconds, errors);
+        }
+    }
+
+    // One pair of users playing matches in turn, one request at a time
+    private class Match {
+        private final String[] tokens;
+        private Step step = Step.CREATE;
+        private String gameId;
+        private int player;
+        private String action;
+
+        private Match(String[] tokens) {
+            this.tokens = tokens;
+        }
+
+        private Mono<Void> next(long due) {
+            Mono<Response> response;
+            switch (step) {
+                case CREATE:
+                    response = send(CREATE_GAME, HttpMethod.POST, "/api/games", tokens[0], "", due);
+                    break;
+                case JOIN:
+                    response = send(JOIN_GAME, HttpMethod.POST, "/api/games/" + gameId + "/players", tokens[1], "", due);
+                    break;
+                case START:
+                    response = send(START_GAME, HttpMethod.POST, "/api/games/" + gameId, tokens[0], "state=ACTIVE", due);
+                    break;
+                case READ_GAME:
+                    response = send(READ_GAME, HttpMethod.GET, "/api/games/" + gameId, null, null, due);
+                    break;
+                case READ_PLAYER:
+                    response = send(READ_PLAYER, HttpMethod.GET, "/api/games/" + gameId + "/players/" + player, tokens[player], null, due);
+                    break;
+                default:
+                    response = send(ADD_ACTION, HttpMethod.POST, "/api/games/" + gameId + "/actions", tokens[player], action, due);
+                    break;
+            }
+
+            // A match that fails is abandoned and the pair starts a new one
+            return response.doOnNext(this::onResponse)
+                    .onErrorResume(e -> {
+                        step = Step.CREATE;
+                        return Mono.empty();
+                    })
+                    .then();
+        }
+
+        private void onResponse(Response response) {
+            switch (step) {
+                case CREATE:
+                    String location = response.location.getPath();
+                    gameId = location.substring(location.lastIndexOf('/') + 1);
+                    step = Step.JOIN;
+                    break;
+                case JOIN:
+                    step = Step.START;
+                    break;
+                case START:
+                    step = Step.READ_GAME;
+                    break;
+                case READ_GAME:
+                    JsonNode game = readTree(response.body);
+                    if (game.get("state").asText().equals("ACTIVE")) {
+                        player = game.get("turn").asInt() % tokens.length;
+                        step = Step.READ_PLAYER;
+                    }
+                    else {
+                        matches.incrementAndGet();
+                        step = Step.CREATE;
+                    }
+                    break;
+                case READ_PLAYER:
+                    action = chooseAction(readTree(response.body));
+                    step = Step.ACT;
+                    break;
+                default:
+                    step = Step.READ_GAME;
+                    break;
+            }
+        }
+
+        private String chooseAction(JsonNode p) {
+            int mana = p.get("mana").asInt();
+            int best = -1;
+            int bestMana = -1;
+            JsonNode hand = p.get("hand");
+            for (int i = 0; i < hand.size(); i++) {
+                int cardMana = hand.get(i).get("mana").asInt();
+                if (cardMana <= mana && cardMana > bestMana) {
+                    best = i;
+                    bestMana = cardMana;
+                }
+            }
+
+            return best < 0
+                    ? "type=SKIP&index=0&player=" + player
+                    : "type=PLAY_CARD&index=" + best + "&player=" + player;
+        }
+    }
+
+    private final WebClient client;
+    private final Stats stats = new Stats(CREATE_GAME, JOIN_GAME, START_GAME, READ_GAME, READ_PLAYER, ADD_ACTION);
+    private final AtomicLong matches = new AtomicLong();
+    private final ConcurrentLinkedQueue<Match> idle = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Long> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+    private int maxBacklog;
+    private volatile Stats requestStats;
+
+    private LoadGenerator(String url) {
+        HttpClient httpClient = HttpClient.create(ConnectionProvider.elastic("load"));
+        client = WebClient.builder()
+                .baseUrl(url)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> serverArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                serverArgs.add(arg);
+            }
+            else if (arg.contains("=")) {
+                options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+
+        String url = options.get("url");
+        ConfigurableApplicationContext context = null;
+        if (url == null) {
+            serverArgs.add(0, "--server.port=0");
+            serverArgs.add(0, "--spring.data.mongodb.database=tcg-benchmark");
+            context = SpringApplication.run(Main.class, serverArgs.toArray(new String[0]));
+            CardRepository cardRepository = context.getBean(CardRepository.class);
+            for (int i = 0; i < 30; i++) {
+                cardRepository.save(new Card(i % 10));
+            }
+
+            url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+
+        try {
+            new LoadGenerator(url).run(options);
+        }
+        finally {
+            if (context != null) {
+                context.getBean(GameStore.class).flushAll();
+                context.getBeanProvider(MongoTemplate.class).ifAvailable(mongoTemplate -> mongoTemplate.getDb().drop());
+                context.close();
+            }
+        }
+    }
+
+    private void run(Map<String, String> options) {
+        int users = Integer.parseInt(options.getOrDefault("users", "200"));
+        boolean isOpen = options.getOrDefault("mode", "closed").equals("open");
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        long think = Long.parseLong(options.getOrDefault("think", "500"));
+        long warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10"))).toNanos();
+        long duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "60"))).toNanos();
+
+        long start = System.nanoTime();
+        requestStats = new Stats(CREATE_USER);
+        requestStats.measuredFrom = start;
+        List<String> tokens = Flux.range(0, users - users % 2)
+                .flatMap(i -> createUser().onErrorResume(e -> Mono.empty()), REGISTRATION_CONCURRENCY)
+                .collectList()
+                .block();
+        System.out.printf("Registered %d users%n", tokens.size());
+        requestStats.print((System.nanoTime() - start) / 1e9);
+
+        List<Match> pairs = new ArrayList<>();
+        for (int i = 0; i + 1 < tokens.size(); i += 2) {
+            pairs.add(new Match(new String[] {tokens.get(i), tokens.get(i + 1)}));
+        }
+
+        requestStats = stats;
+        start = System.nanoTime();
+        stats.measuredFrom = start + warmup;
+        long end = start + warmup + duration;
+        if (isOpen) {
+            runOpen(pairs, rate, start, end);
+        }
+        else {
+            runClosed(pairs, think, end);
+        }
+
+        System.out.printf("%n%s loop, %d matches of 2 users, %d matches completed%s%n", isOpen ? "Open" : "Closed", pairs.size(), matches.get(),
+                isOpen ? String.format(", at most %d requests waiting for an idle match", maxBacklog) : "");
+        stats.print(duration / 1e9);
+    }
+
+    private void runClosed(List<Match> pairs, long think, long end) {
+        Flux.fromIterable(pairs)
+                .flatMap(match -> Mono.defer(() -> match.next(System.nanoTime()))
+                        .then(Mono.defer(() -> match.step == Step.ACT && think > 0
+                                ? Mono.delay(Duration.ofNanos((long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * think * 1e6))).then()
+                                : Mono.<Void>empty()))
+                        .repeat(() -> System.nanoTime() < end), pairs.size())
+                .blockLast();
+    }
+
+    // Requests are due at a fixed interval, and whichever match is idle sends the oldest one that is due
+    private void runOpen(List<Match> pairs, double rate, long start, long end) {
+        idle.addAll(pairs);
+        long due = start;
+        for (long i = 1; due < end; i++) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            pending.add(due);
+            maxBacklog = Math.max(maxBacklog, backlog.incrementAndGet());
+            drain();
+            due = start + (long) (i * 1e9 / rate);
+        }
+
+        while (idle.size() < pairs.size()) {
+            LockSupport.parkNanos(Duration.ofMillis(10).toNanos());
+        }
+    }
+
+    // Called after every change to either queue, so a due request is never left waiting while a match is idle
+    private void drain() {
+        while (!pending.isEmpty()) {
+            Match match = idle.poll();
+            if (match == null) {
+                return;
+            }
+
+            Long due = pending.poll();
+            if (due == null) {
+                idle.add(match);
+                return;
+            }
+
+            backlog.decrementAndGet();
+            match.next(due).doFinally(signal -> {
+                idle.add(match);
+                drain();
+            }).subscribe();
+        }
+    }
+
+    private Mono<String> createUser() {
+        String form = "name=load-" + UUID.randomUUID() + "&password=load";
+        return send(CREATE_USER, HttpMethod.POST, "/api/users", null, form, System.nanoTime())
+                .map(response -> {
+                    JsonNode user = readTree(response.body);
+                    return new String(Base64.encodeBase64((user.get("id").asText() + ":" + user.get("authToken").asText()).getBytes()));
+                });
+    }
+
+    private Mono<Response> send(String endpoint, HttpMethod method, String uri, String token, String form, long due) {
+        WebClient.RequestBodySpec request = client.method(method).uri(uri);
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+
+        if (form != null) {
+            request.contentType(MediaType.APPLICATION_FORM_URLENCODED).syncBody(form);
+        }
+
+        Stats recorded = requestStats;
+        return request.exchange()
+                .flatMap(response -> response.bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .map(body -> {
+                            if (response.statusCode().isError()) {
+                                throw new IllegalStateException(endpoint + " failed with " + response.statusCode());
+                            }
+
+                            return new Response(response.headers().asHttpHeaders().getLocation(), body);
+                        }))
+                .doOnSuccess(response -> recorded.record(endpoint, due, false))
+                .doOnError(e -> recorded.record(endpoint, due, true));
+    }
+
+    private static JsonNode readTree(String body) {
+        try {
+            return objectMapper.readTree(body);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
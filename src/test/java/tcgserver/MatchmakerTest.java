@@ -0,0 +1,185 @@
+package tcgserver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class MatchmakerTest {
+    private GameStore gameStore;
+    private Matchmaker matchmaker;
+
+    @Before
+    public void setUp() throws Exception {
+        List<Card> cards = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            cards.add(new Card(i));
+        }
+        CardCatalogs cardCatalogs = mock(CardCatalogs.class);
+        when(cardCatalogs.getCurrent()).thenReturn(CardCatalog.of(cards));
+        gameStore = mock(GameStore.class);
+        when(gameStore.insert(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        matchmaker = new Matchmaker();
+        ReflectionTestUtils.setField(matchmaker, "gameStore", gameStore);
+        ReflectionTestUtils.setField(matchmaker, "cardCatalogs", cardCatalogs);
+        ReflectionTestUtils.setField(matchmaker, "workerCount", 2);
+        matchmaker.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        matchmaker.close();
+    }
+
+    @Test
+    public void enqueue_TwoUsers_PairedIntoStartedGame() throws Exception {
+        // Arrange
+        User user1 = createUser("user1");
+        User user2 = createUser("user2");
+
+        // Act
+        Matchmaker.Ticket ticket1 = matchmaker.enqueue(user1);
+        Matchmaker.Ticket ticket2 = matchmaker.enqueue(user2);
+        Game game = ticket1.getMatch().get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertSame(game, ticket2.getMatch().get(5, TimeUnit.SECONDS));
+        assertEquals(Game.GameState.ACTIVE, game.getState());
+        assertEquals(0, game.getPlayerIndex("user1"));
+        assertEquals(1, game.getPlayerIndex("user2"));
+        assertEquals(0, matchmaker.getWaitingCount());
+        verify(gameStore, times(1)).insert(game);
+    }
+
+    @Test
+    public void cancel_WaitingUser_NotPaired() throws Exception {
+        // Arrange
+        Matchmaker.Ticket ticket1 = matchmaker.enqueue(createUser("user1"));
+
+        // Act
+        boolean isCancelled = matchmaker.cancel("user1");
+        Matchmaker.Ticket ticket2 = matchmaker.enqueue(createUser("user2"));
+        Matchmaker.Ticket ticket3 = matchmaker.enqueue(createUser("user3"));
+
+        // Assert
+        assertTrue(isCancelled);
+        assertTrue(ticket1.getMatch().isCancelled());
+        Game game = ticket2.getMatch().get(5, TimeUnit.SECONDS);
+        assertSame(game, ticket3.getMatch().get(5, TimeUnit.SECONDS));
+        assertEquals(-1, game.getPlayerIndex("user1"));
+        assertFalse(matchmaker.cancel("user1"));
+    }
+
+    @Test
+    public void enqueue_CatalogTooSmall_MatchFailedWithoutGame() throws Exception {
+        // Arrange
+        List<Card> cards = new ArrayList<>();
+        for (int i = 0; i < Game.START_CARD_COUNT - 1; i++) {
+            cards.add(new Card(i));
+        }
+        CardCatalogs cardCatalogs = mock(CardCatalogs.class);
+        when(cardCatalogs.getCurrent()).thenReturn(CardCatalog.of(cards));
+        ReflectionTestUtils.setField(matchmaker, "cardCatalogs", cardCatalogs);
+
+        // Act
+        Matchmaker.Ticket ticket1 = matchmaker.enqueue(createUser("user1"));
+        Matchmaker.Ticket ticket2 = matchmaker.enqueue(createUser("user2"));
+
+        // Assert
+        assertThrows(ExecutionException.class, () -> ticket1.getMatch().get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> ticket2.getMatch().get(5, TimeUnit.SECONDS));
+        verify(gameStore, never()).insert(any());
+    }
+
+    @Test
+    public void enqueue_SameUserTwice_PreviousTicketCancelled() {
+        // Arrange
+        User user = createUser("user1");
+        Matchmaker.Ticket first = matchmaker.enqueue(user);
+
+        // Act
+        Matchmaker.Ticket second = matchmaker.enqueue(user);
+
+        // Assert
+        assertTrue(first.getMatch().isCancelled());
+        assertFalse(second.getMatch().isDone());
+        assertEquals(1, matchmaker.getWaitingCount());
+    }
+
+    @Test
+    public void enqueue_SameUserWhilePreviousTicketClaimed_PreviousTicketKept() {
+        // Arrange
+        User user = createUser("user1");
+        Matchmaker.Ticket first = matchmaker.enqueue(user);
+        assertTrue((Boolean) ReflectionTestUtils.invokeMethod(first, "claim"));
+
+        // Act
+        Matchmaker.Ticket second = matchmaker.enqueue(user);
+
+        // Assert
+        assertSame(first, second);
+        assertFalse(first.getMatch().isCancelled());
+        assertEquals(1, matchmaker.getWaitingCount());
+    }
+
+    @Test
+    public void enqueue_ManyUsersConcurrently_EachPairedOnce() throws Exception {
+        // Arrange
+        int threads = 4;
+        int usersPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<Matchmaker.Ticket>>> futures = new ArrayList<>();
+
+        // Act
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                List<Matchmaker.Ticket> tickets = new ArrayList<>();
+                for (int i = 0; i < usersPerThread; i++) {
+                    tickets.add(matchmaker.enqueue(createUser(thread + "-" + i)));
+                }
+                return tickets;
+            }));
+        }
+        List<Matchmaker.Ticket> tickets = new ArrayList<>();
+        for (Future<List<Matchmaker.Ticket>> future : futures) {
+            tickets.addAll(future.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // Assert
+        Set<Game> games = new HashSet<>();
+        Set<String> players = new HashSet<>();
+        for (Matchmaker.Ticket ticket : tickets) {
+            Game game = ticket.getMatch().get(10, TimeUnit.SECONDS);
+            assertTrue(game.getPlayerIndex(ticket.getUser().getId()) >= 0);
+            if (games.add(game)) {
+                for (Player p : game.getPlayers()) {
+                    assertTrue(players.add(p.getUserId()));
+                }
+            }
+        }
+        assertEquals(threads * usersPerThread / Game.MAX_PLAYERS, games.size());
+        assertEquals(0, matchmaker.getWaitingCount());
+    }
+
+    private static User createUser(String id) {
+        User user = new User(id, "");
+        ReflectionTestUtils.setField(user, "id", id);
+        return user;
+    }
+}
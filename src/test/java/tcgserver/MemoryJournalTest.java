@@ -0,0 +1,234 @@
+package tcgserver;
+
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MemoryJournalTest {
+    private Path directory;
+    private MappingMongoConverter converter;
+    private List<MemoryStore> stores;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("tcg");
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        stores = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (MemoryStore store : stores) {
+            store.close();
+        }
+
+        for (File file : directory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+
+        Files.delete(directory);
+    }
+
+    @Test
+    public void init_WritesAfterSnapshot_Replayed() throws Exception {
+        // Arrange
+        MemoryStore store = createStore(4096, 0);
+        User user = store.insert(new User("name", "password"));
+        User deleted = store.insert(new User("deleted", "password"));
+        store.deleteById(User.class, deleted.getId());
+        Game game = createGame();
+        store.save(game);
+        for (int i = 0; i < 20; i++) {
+            playNextAction(game);
+            store.save(game);
+        }
+
+        // Act
+        MemoryStore recovered = createStore(4096, 0);
+
+        // Assert
+        assertEquals("name", recovered.findById(User.class, user.getId()).get().getName());
+        assertFalse(recovered.findById(User.class, deleted.getId()).isPresent());
+        assertEquals(store.findStored(Game.class, game.getId()), recovered.findStored(Game.class, game.getId()));
+        assertTrue(listSegments().size() > 1);
+    }
+
+    @Test
+    public void close_SnapshotWritten_CoveredSegmentsDeleted() throws Exception {
+        // Arrange
+        MemoryStore store = createStore(1024, 100);
+        Game game = createGame();
+        store.save(game);
+        for (int i = 0; i < 20; i++) {
+            playNextAction(game);
+            store.save(game);
+        }
+        Document stored = store.findStored(Game.class, game.getId());
+
+        // Act
+        store.close();
+        stores.remove(store);
+        MemoryStore recovered = createStore(1024, 100);
+
+        // Assert
+        assertEquals(stored, recovered.findStored(Game.class, game.getId()));
+        assertEquals(1, listSegments().size());
+    }
+
+    @Test
+    public void written_GameEnded_EarlierRecordsCompacted() throws Exception {
+        // Arrange
+        MemoryStore store = createStore(1024, 100);
+        Game game = createGame();
+        store.save(game);
+        int segmentCount = 0;
+
+        // Act
+        while (game.getState() != Game.GameState.END && game.getActions().size() < 1000) {
+            playNextAction(game);
+            store.save(game);
+            segmentCount = Math.max(segmentCount, listSegments().size());
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (listSegments().size() > 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Assert
+        assertEquals(Game.GameState.END, game.getState());
+        assertTrue(segmentCount > 2);
+        assertTrue(listSegments().size() <= 2);
+        MemoryStore recovered = createStore(1024, 100);
+        assertEquals(store.findStored(Game.class, game.getId()), recovered.findStored(Game.class, game.getId()));
+    }
+
+    @Test
+    public void init_SnapshotBeforeGameEnded_CompactedRecordsSkipped() throws Exception {
+        // Arrange
+        MemoryStore store = createStore(4096, 100);
+        Game game = createGame();
+        store.save(game);
+        for (int i = 0; i < 5; i++) {
+            playNextAction(game);
+            store.save(game);
+        }
+        ReflectionTestUtils.invokeMethod(store, "writeSnapshot", directory.resolve("snapshot.json"));
+        for (int i = 0; i < 20; i++) {
+            playNextAction(game);
+            store.save(game);
+        }
+        // Only the game writes to these, so they are compacted away once it ends
+        List<Path> compacted = listSegments();
+        compacted.sort(null);
+        compacted.remove(compacted.size() - 1);
+        int userCount = 0;
+        while (game.getState() != Game.GameState.END && game.getActions().size() < 1000) {
+            playNextAction(game);
+            store.save(game);
+            store.insert(new User("user" + userCount++, "password"));
+            store.insert(new User("user" + userCount++, "password"));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (compacted.stream().anyMatch(Files::exists) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Act
+        MemoryStore recovered = createStore(4096, 100);
+
+        // Assert
+        assertEquals(Game.GameState.END, game.getState());
+        assertFalse(compacted.stream().anyMatch(Files::exists));
+        assertEquals(store.findStored(Game.class, game.getId()), recovered.findStored(Game.class, game.getId()));
+        assertEquals(userCount, recovered.count(User.class));
+    }
+
+    @Test
+    public void init_CorruptRecordBeforeLastSegment_Throws() throws Exception {
+        // Arrange
+        MemoryStore store = createStore(1024, 0);
+        for (int i = 0; i < 20; i++) {
+            store.insert(new User("user" + i, "password"));
+        }
+        List<Path> segments = listSegments();
+        segments.sort(null);
+        Path corrupt = segments.get(segments.size() / 2);
+        byte[] bytes = Files.readAllBytes(corrupt);
+        bytes[bytes.length / 4]++;
+        Files.write(corrupt, bytes);
+
+        // Act
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> createStore(1024, 0));
+
+        // Assert
+        assertTrue(e.getMessage().contains(corrupt.toString()));
+    }
+
+    private MemoryStore createStore(int segmentSize, long syncInterval) throws Exception {
+        MemoryStore store = new MemoryStore();
+        ReflectionTestUtils.setField(store, "mongoConverter", converter);
+        ReflectionTestUtils.setField(store, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(store, "snapshotPath", directory.resolve("snapshot.json").toString());
+        ReflectionTestUtils.setField(store, "snapshotInterval", 60000L);
+        store.init();
+        MemoryJournal journal = new MemoryJournal();
+        ReflectionTestUtils.setField(journal, "store", store);
+        ReflectionTestUtils.setField(journal, "path", directory.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", segmentSize);
+        ReflectionTestUtils.setField(journal, "syncInterval", syncInterval);
+        journal.init();
+        stores.add(store);
+        return store;
+    }
+
+    private List<Path> listSegments() {
+        List<Path> segments = new ArrayList<>();
+        for (File file : directory.toFile().listFiles()) {
+            if (file.getName().endsWith(".log")) {
+                segments.add(file.toPath());
+            }
+        }
+
+        return segments;
+    }
+
+    private static Game createGame() {
+        List<Card> deck = new ArrayList<>();
+        for (int i = 0; i < Game.START_CARD_COUNT + 10; i++) {
+            deck.add(new Card(1 + i % 3));
+        }
+
+        Game game = new Game(deck);
+        for (int i = 0; i < Game.MAX_PLAYERS; i++) {
+            game.addPlayer(new Player("player" + i, deck, Collections.emptyList()));
+        }
+        game.start();
+        return game;
+    }
+
+    private static void playNextAction(Game game) {
+        int player = game.getActivePlayer();
+        if (!game.addAction(new Game.Action(player, Game.ActionType.PLAY_CARD, 0))) {
+            game.addAction(new Game.Action(player));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package tcgserver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MemoryStoreTest {
+    private Path snapshot;
+    private MappingMongoConverter converter;
+    private MemoryStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        snapshot = Files.createTempFile("tcg", ".json");
+        Files.delete(snapshot);
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        store = createStore("");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Test
+    public void save_StaleVersion_OptimisticLockingFailure() {
+        // Arrange
+        Game game = new Game(Arrays.asList(new Card(0), new Card(1), new Card(2), new Card(3), new Card(4)), false);
+        store.save(game);
+        Game stale = store.findById(Game.class, game.getId()).get();
+        store.save(game);
+
+        // Act
+        OptimisticLockingFailureException e = assertThrows(OptimisticLockingFailureException.class, () -> store.save(stale));
+
+        // Assert
+        assertNotNull(e.getMessage());
+        assertEquals(0L, (long) stale.getVersion());
+        assertEquals(1L, (long) store.findById(Game.class, game.getId()).get().getVersion());
+    }
+
+    @Test
+    public void insert_NameTaken_DuplicateKey() {
+        // Arrange
+        store.createIndex(User.class, "name", true);
+        store.insert(new User("name", "password1"));
+
+        // Act
+        assertThrows(DuplicateKeyException.class, () -> store.insert(new User("name", "password2")));
+
+        // Assert
+        assertEquals(1, store.count(User.class));
+        assertEquals("password1", store.findByIndex(User.class, "name", "name").get(0).getPassword());
+    }
+
+    @Test
+    public void close_SnapshotPath_LoadedOnInit() throws Exception {
+        // Arrange
+        MemoryStore snapshotted = createStore(snapshot.toString());
+        User user = snapshotted.insert(new User("name", "password"));
+        snapshotted.close();
+
+        // Act
+        MemoryStore loaded = createStore(snapshot.toString());
+        loaded.createIndex(User.class, "name", true);
+
+        // Assert
+        assertEquals("name", loaded.findById(User.class, user.getId()).get().getName());
+        assertEquals(user.getId(), loaded.findByIndex(User.class, "name", "name").get(0).getId());
+        assertThrows(DuplicateKeyException.class, () -> loaded.insert(new User("name", "password")));
+        loaded.close();
+    }
+
+    private MemoryStore createStore(String snapshotPath) throws Exception {
+        MemoryStore memoryStore = new MemoryStore();
+        ReflectionTestUtils.setField(memoryStore, "mongoConverter", converter);
+        ReflectionTestUtils.setField(memoryStore, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(memoryStore, "snapshotPath", snapshotPath);
+        ReflectionTestUtils.setField(memoryStore, "snapshotInterval", 60000L);
+        memoryStore.init();
+        return memoryStore;
+    }
+}
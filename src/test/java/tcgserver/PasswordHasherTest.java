@@ -0,0 +1,130 @@
+package tcgserver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordHasherTest {
+    private MeterRegistry meterRegistry;
+    private PasswordHasher passwordHasher;
+
+    @Before
+    public void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        passwordHasher = createHasher(1000, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        passwordHasher.close();
+    }
+
+    @Test
+    public void hash_SamePassword_VerifiedWithDifferentSalt() throws Exception {
+        // Act
+        String hash1 = passwordHasher.hash("password").get(5, TimeUnit.SECONDS);
+        String hash2 = passwordHasher.hash("password").get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertNotEquals(hash1, hash2);
+        assertTrue(hash1.startsWith("pbkdf2$1000$"));
+        assertTrue(passwordHasher.verify("password", hash1).get(5, TimeUnit.SECONDS));
+        assertFalse(passwordHasher.verify("other", hash1).get(5, TimeUnit.SECONDS));
+        assertFalse(passwordHasher.needsRehash(hash1));
+        assertEquals(4, meterRegistry.timer("tcg.users.password.hashing").count());
+        assertEquals(1000, meterRegistry.get("tcg.users.password.iterations").gauge().value());
+    }
+
+    @Test
+    public void verify_LegacyHash_VerifiedAndRehashNeeded() throws Exception {
+        // Arrange
+        String legacy = User.passwordToHash("password");
+
+        // Act
+        boolean isValid = passwordHasher.verify("password", legacy).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertTrue(isValid);
+        assertFalse(passwordHasher.verify("other", legacy).get(5, TimeUnit.SECONDS));
+        assertTrue(passwordHasher.needsRehash(legacy));
+    }
+
+    @Test
+    public void needsRehash_MoreIterationsConfigured_RehashNeeded() throws Exception {
+        // Arrange
+        String hash = passwordHasher.hash("password").get(5, TimeUnit.SECONDS);
+        PasswordHasher stronger = createHasher(2000, 1);
+
+        // Act
+        boolean needsRehash = stronger.needsRehash(hash);
+
+        // Assert
+        assertTrue(needsRehash);
+        assertTrue(stronger.verify("password", hash).get(5, TimeUnit.SECONDS));
+        stronger.close();
+    }
+
+    @Test
+    public void verify_MalformedHash_FailedAndRehashNeeded() throws Exception {
+        // Arrange
+        String hash = "pbkdf2$many$c2FsdA==$aGFzaA==";
+
+        // Act
+        boolean isValid = passwordHasher.verify("password", hash).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertFalse(isValid);
+        assertTrue(passwordHasher.needsRehash(hash));
+        assertFalse(passwordHasher.verify("password", "pbkdf2$1000$$aGFzaA==").get(5, TimeUnit.SECONDS));
+        assertFalse(passwordHasher.verify("password", "pbkdf2$-1$c2FsdA==$aGFzaA==").get(5, TimeUnit.SECONDS));
+        assertTrue(passwordHasher.needsRehash("pbkdf2$"));
+    }
+
+    @Test
+    public void hash_QueueFull_Rejected() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService workers = (ExecutorService) ReflectionTestUtils.getField(passwordHasher, "workers");
+        workers.execute(() -> {
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CompletableFuture<String> queued = passwordHasher.hash("password");
+
+        // Act
+        CompletableFuture<String> rejected = passwordHasher.hash("password");
+
+        // Assert
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(1, meterRegistry.counter("tcg.users.password.rejected").count());
+        release.countDown();
+        assertNotNull(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    private PasswordHasher createHasher(int iterations, int queueSize) {
+        PasswordHasher result = new PasswordHasher();
+        ReflectionTestUtils.setField(result, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(result, "iterations", iterations);
+        ReflectionTestUtils.setField(result, "workerCount", 1);
+        ReflectionTestUtils.setField(result, "queueSize", queueSize);
+        result.init();
+        return result;
+    }
+}
@@ -4,9 +4,11 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -235,4 +237,23 @@ public class PlayerTest {
             player.fillMana();
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shuffleDeck_SameSeed_SameOrderSameCards() {
+        // Arrange
+        List<Card> deck = new ArrayList<>();
+        for (int i = 0; i < 20; i++) deck.add(new Card(i));
+        Player player1 = new Player(deck, Collections.emptyList());
+        Player player2 = new Player(deck, Collections.emptyList());
+
+        // Act
+        player1.shuffleDeck(new SplittableRandom(1));
+        player2.shuffleDeck(new SplittableRandom(1));
+
+        // Assert
+        assertEquals(player1.getDeck(), player2.getDeck());
+        assertNotEquals(deck, player1.getDeck());
+        assertTrue(player1.getDeck().containsAll(deck));
+        assertEquals(deck.size(), player1.getDeck().size());
+    }
+}
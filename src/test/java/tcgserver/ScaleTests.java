@@ -0,0 +1,8 @@
+package tcgserver;
+
+/**
+ * Category of the tests that fill the storage with production-sized data. They are left out of the default test run,
+ * run them with mvn -Pscale test
+ */
+public interface ScaleTests {
+}
@@ -0,0 +1,248 @@
+package tcgserver;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class UserAuthenticatorTest {
+    private UserRepository userRepository;
+    private RevocationRepository revocationRepository;
+    private MeterRegistry meterRegistry;
+    private UserAuthenticator userAuthenticator;
+
+    @Before
+    public void setUp() throws Exception {
+        userRepository = mock(UserRepository.class);
+        revocationRepository = mock(RevocationRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        userAuthenticator = new UserAuthenticator();
+        ReflectionTestUtils.setField(userAuthenticator, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userAuthenticator, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(userAuthenticator, "cacheSize", 100);
+        ReflectionTestUtils.setField(userAuthenticator, "cacheTtl", 60000L);
+        userAuthenticator.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+    }
+
+    @Test
+    public void getAuthorizedUser_SameToken_UserReadOnce() {
+        // Arrange
+        User user = createUser("user1");
+        String header = "Bearer  " + toToken(user.getId(), user.getAuthToken());
+
+        // Act
+        User first = userAuthenticator.getAuthorizedUser(header);
+        User second = userAuthenticator.getAuthorizedUser(header);
+
+        // Assert
+        assertSame(user, first);
+        assertSame(user, second);
+        verify(userRepository, times(1)).findById("user1");
+        assertEquals(1, meterRegistry.counter("tcg.users.auth.cache.hits").count());
+        assertEquals(1, meterRegistry.counter("tcg.users.auth.cache.misses").count());
+    }
+
+    @Test
+    public void getAuthorizedUser_Invalidated_NewTokenOnly() throws Exception {
+        // Arrange
+        User user = createUser("user1");
+        String previous = "Bearer " + toToken(user.getId(), user.getAuthToken());
+        userAuthenticator.getAuthorizedUser(previous);
+        User refreshed = createUser("user1");
+        Thread.sleep(2); // The token is derived from the time
+        refreshed.refreshAuthToken();
+        when(userRepository.findById("user1")).thenReturn(Optional.of(refreshed));
+
+        // Act
+        userAuthenticator.invalidate("user1");
+
+        // Assert
+        assertNull(userAuthenticator.getAuthorizedUser(previous));
+        assertSame(refreshed, userAuthenticator.getAuthorizedUser("Bearer " + toToken("user1", refreshed.getAuthToken())));
+    }
+
+    @Test
+    public void getAuthorizedUser_RevokedOnOtherServer_RejectedAfterTtl() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(userAuthenticator, "cacheTtl", 50L);
+        User user = createUser("user1");
+        String header = "Bearer " + toToken(user.getId(), user.getAuthToken());
+        userAuthenticator.getAuthorizedUser(header);
+        User revoked = new User("name", "");
+        ReflectionTestUtils.setField(revoked, "id", "user1");
+        when(userRepository.findById("user1")).thenReturn(Optional.of(revoked));
+
+        // Act
+        User cached = userAuthenticator.getAuthorizedUser(header);
+        Thread.sleep(60);
+        User expired = userAuthenticator.getAuthorizedUser(header);
+
+        // Assert
+        assertSame(user, cached);
+        assertNull(expired);
+        verify(userRepository, times(2)).findById("user1");
+    }
+
+    @Test
+    public void getAuthorizedUser_MalformedHeader_NotAuthorized() {
+        // Arrange
+        User user = createUser("user1");
+
+        // Act & Assert
+        assertNull(userAuthenticator.getAuthorizedUser(null));
+        assertNull(userAuthenticator.getAuthorizedUser(""));
+        assertNull(userAuthenticator.getAuthorizedUser("Bearer"));
+        assertNull(userAuthenticator.getAuthorizedUser("Bearer "));
+        assertNull(userAuthenticator.getAuthorizedUser("Bearer " + toToken(user.getId(), "")));
+        assertNull(userAuthenticator.getAuthorizedUser("Bearer " + toToken("", user.getAuthToken())));
+        assertNull(userAuthenticator.getAuthorizedUser("Bearer " + toToken(user.getId(), user.getAuthToken() + ":a")));
+        assertNull(userAuthenticator.getAuthorizedUser("Bearer " + toToken(user.getId(), "wrong")));
+        assertSame(user, userAuthenticator.getAuthorizedUser("Bearer\t" + toToken(user.getId(), user.getAuthToken()) + " "));
+    }
+
+    @Test
+    public void issueToken_Signed_AuthorizedWithoutRead() {
+        // Arrange
+        UserAuthenticator signing = createSigningAuthenticator("c2VjcmV0", 100);
+        User user = createUser("user1");
+
+        // Act
+        signing.issueToken(user);
+        User authorized = signing.getAuthorizedUser("Bearer " + toToken("user1", user.getAuthToken()));
+
+        // Assert
+        assertEquals("user1", authorized.getId());
+        assertEquals(user.getExpiresIn(), authorized.getExpiresIn());
+        assertTrue(user.getExpiresIn() > System.currentTimeMillis());
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    public void issueToken_SignedTokenChanged_NotAuthorized() {
+        // Arrange
+        UserAuthenticator signing = createSigningAuthenticator("c2VjcmV0", 100);
+        UserAuthenticator otherSecret = createSigningAuthenticator("b3RoZXI=", 100);
+        User user = createUser("user1");
+        signing.issueToken(user);
+        String authToken = user.getAuthToken();
+        String signature = authToken.substring(authToken.indexOf('.'));
+
+        // Act & Assert
+        assertNull(signing.getAuthorizedUser("Bearer " + toToken("user2", authToken)));
+        assertNull(signing.getAuthorizedUser("Bearer " + toToken("user1", (user.getExpiresIn() + 1) + signature)));
+        assertNull(signing.getAuthorizedUser("Bearer " + toToken("user1", "1" + signature)));
+        assertNull(otherSecret.getAuthorizedUser("Bearer " + toToken("user1", authToken)));
+        assertNotNull(signing.getAuthorizedUser("Bearer " + toToken("user1", authToken)));
+    }
+
+    @Test
+    public void revoke_SignedTokens_RejectedUntilExpiry() throws Exception {
+        // Arrange
+        UserAuthenticator signing = createSigningAuthenticator("c2VjcmV0", 100);
+        User user = createUser("user1");
+        signing.issueToken(user);
+        String token1 = "Bearer " + toToken("user1", user.getAuthToken());
+        Thread.sleep(2); // The expiry is part of the token
+        signing.issueToken(user);
+        String token2 = "Bearer " + toToken("user1", user.getAuthToken());
+
+        // Act
+        boolean isRevoked = signing.revoke(signing.getAuthorizedUser(token1), false);
+
+        // Assert
+        assertTrue(isRevoked);
+        assertNull(signing.getAuthorizedUser(token1));
+        assertNotNull(signing.getAuthorizedUser(token2));
+        assertTrue(signing.revoke(signing.getAuthorizedUser(token2), true));
+        assertNull(signing.getAuthorizedUser(token2));
+        Thread.sleep(2);
+        signing.issueToken(user);
+        assertNotNull(signing.getAuthorizedUser("Bearer " + toToken("user1", user.getAuthToken())));
+    }
+
+    @Test
+    public void revoke_SignedTokenOnOtherServer_RejectedAfterRefresh() {
+        // Arrange
+        UserAuthenticator signing = createSigningAuthenticator("c2VjcmV0", 100);
+        UserAuthenticator other = createSigningAuthenticator("c2VjcmV0", 100);
+        User user = createUser("user1");
+        signing.issueToken(user);
+        String header = "Bearer " + toToken("user1", user.getAuthToken());
+        signing.revoke(signing.getAuthorizedUser(header), false);
+        ArgumentCaptor<Revocation> saved = ArgumentCaptor.forClass(Revocation.class);
+        verify(revocationRepository).save(saved.capture());
+        when(revocationRepository.findByRevokedAtGreaterThanEqual(anyLong())).thenReturn(Collections.singletonList(saved.getValue()));
+        User beforeRefresh = other.getAuthorizedUser(header);
+
+        // Act
+        ReflectionTestUtils.invokeMethod(other, "refreshRevocations");
+
+        // Assert
+        assertNotNull(beforeRefresh);
+        assertNull(other.getAuthorizedUser(header));
+        assertEquals("user1:" + user.getExpiresIn(), saved.getValue().getId());
+        assertEquals(user.getExpiresIn(), saved.getValue().getUntil());
+        verify(revocationRepository, atLeastOnce()).deleteByUntilLessThanEqual(anyLong());
+    }
+
+    @Test
+    public void revoke_RevocationListFull_NotRevoked() throws Exception {
+        // Arrange
+        UserAuthenticator signing = createSigningAuthenticator("c2VjcmV0", 1);
+        User user1 = createUser("user1");
+        User user2 = createUser("user2");
+        signing.issueToken(user1);
+        signing.issueToken(user2);
+        signing.revoke(user1, false);
+
+        // Act
+        boolean isRevoked = signing.revoke(user2, false);
+
+        // Assert
+        assertFalse(isRevoked);
+        assertNotNull(signing.getAuthorizedUser("Bearer " + toToken("user2", user2.getAuthToken())));
+    }
+
+    private UserAuthenticator createSigningAuthenticator(String secret, int revocationListSize) {
+        UserAuthenticator result = new UserAuthenticator();
+        ReflectionTestUtils.setField(result, "userRepository", userRepository);
+        ReflectionTestUtils.setField(result, "revocationRepository", revocationRepository);
+        ReflectionTestUtils.setField(result, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(result, "cacheSize", 100);
+        ReflectionTestUtils.setField(result, "cacheTtl", 60000L);
+        ReflectionTestUtils.setField(result, "isSigningTokens", true);
+        ReflectionTestUtils.setField(result, "tokenSecret", secret);
+        ReflectionTestUtils.setField(result, "revocationListSize", revocationListSize);
+        result.init();
+        return result;
+    }
+
+    private User createUser(String id) {
+        User user = new User("name", "");
+        ReflectionTestUtils.setField(user, "id", id);
+        user.refreshAuthToken();
+        when(userRepository.findById(id)).thenReturn(Optional.of(user));
+        return user;
+    }
+
+    private static String toToken(String userId, String authToken) {
+        return new String(Base64.encodeBase64((userId + ":" + authToken).getBytes()));
+    }
+}
@@ -0,0 +1,67 @@
+package tcgserver.simulation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import tcgserver.Card;
+import tcgserver.CardCatalog;
+import tcgserver.Game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimulatorTest {
+    private ForkJoinPool singleThreadPool;
+    private ForkJoinPool pool;
+    private CardCatalog catalog;
+    private int[] deck;
+
+    @Before
+    public void setUp() throws Exception {
+        singleThreadPool = new ForkJoinPool(1);
+        pool = new ForkJoinPool(4);
+        List<Card> cards = new ArrayList<>();
+        for (int i = 0; i < 20; i++) cards.add(new Card(i % 8));
+        catalog = CardCatalog.of(cards);
+        deck = catalog.indicesOf(cards);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        singleThreadPool.shutdown();
+        pool.shutdown();
+    }
+
+    @Test
+    public void run_SameSeed_SameStatsForAnyParallelism() {
+        // Arrange
+        Simulator simulator = new Simulator(catalog, deck, Arrays.asList(new RandomPolicy(), new GreedyPolicy()), 1000, 7);
+
+        // Act
+        SimulationStats sequential = simulator.run(2000, singleThreadPool);
+        SimulationStats parallel = simulator.run(2000, pool);
+
+        // Assert
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void run_AllGamesRecorded() {
+        // Arrange
+        Simulator simulator = new Simulator(catalog, deck, Arrays.asList(new GreedyPolicy(), new GreedyPolicy()), 1000, 1);
+
+        // Act
+        SimulationStats stats = simulator.run(1000, pool);
+
+        // Assert
+        long wins = 0;
+        for (int seat = 0; seat < Game.MAX_PLAYERS; seat++) wins += stats.getWins(seat);
+        assertEquals(1000, stats.getGames());
+        assertEquals(stats.getGames(), wins + stats.getUnfinished());
+        assertTrue(stats.getTotalCardPlays() > 0);
+    }
+}